@@ -2,85 +2,154 @@
 package com.citybusapp.service;
 
 import com.citybusapp.model.Bus;
-import com.citybusapp.repository.BusRepository;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 @Service
 public class BusService {
     
     @Autowired
-    private BusRepository busRepository;
+    private LocationIngestPipeline locationIngestPipeline;
     
-    private final DatabaseReference firebaseRef;
+    @Autowired
+    private LiveBusStore liveBusStore;
     
-    public BusService() {
-        this.firebaseRef = FirebaseDatabase.getInstance().getReference("buses");
-    }
+    @Autowired
+    private BusStreamBroadcaster busStreamBroadcaster;
+    
+    @Autowired
+    private FirebasePublisher firebasePublisher;
+    
+    @Autowired
+    private SearchIndex searchIndex;
+    
+    @Autowired
+    private StopGeofenceDetector stopGeofenceDetector;
+    
+    @Autowired
+    private GpsTrackFilter gpsTrackFilter;
+    
+    @Autowired
+    private PositionHistoryStore positionHistoryStore;
+    
+    @Autowired
+    private TripReplayService tripReplayService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
     
+    @Value("${history.max-query-hours:48}")
+    private long maxHistoryQueryHours;
+    
+    // Reads are served from the live store; the database is only a write-behind copy
     public List<Bus> getAllBuses() {
-        return busRepository.findAll();
+        return liveBusStore.getAll();
     }
     
     public List<Bus> searchByNumber(String number) {
-        return busRepository.findByNumberContainingIgnoreCase(number);
+        return searchIndex.searchBusNumbers(number);
     }
     
     public Bus getBusById(String id) {
-        return busRepository.findById(id).orElse(null);
+        return liveBusStore.get(id);
     }
     
-    public void updateBusLocation(String busId, Double latitude, Double longitude, Double speed) {
-        Bus bus = busRepository.findById(busId).orElse(null);
-        if (bus != null) {
-            bus.setLatitude(latitude);
-            bus.setLongitude(longitude);
-            bus.setSpeed(speed);
-            bus.setLastUpdated(LocalDateTime.now());
-            
-            // Save to PostgreSQL
-            busRepository.save(bus);
-            
-            // Update Firebase for real-time tracking
-            updateFirebaseLocation(bus);
+    // Queues the ping for the next batched write; false if the ingest queue is full.
+    // Known buses are filtered first: outliers are acknowledged but dropped.
+    public boolean updateBusLocation(String busId, Double latitude, Double longitude, Double speed) {
+        if (busId == null || latitude == null || longitude == null) {
+            return false;
+        }
+        Bus current = liveBusStore.get(busId);
+        LocationPing ping = current != null
+                ? gpsTrackFilter.filter(busId, current.getNumber(), latitude, longitude, speed)
+                : new LocationPing(busId, latitude, longitude, speed, LocalDateTime.now());
+        if (ping == null) {
+            return true;
+        }
+        if (!locationIngestPipeline.accept(ping)) {
+            // Not stored: the client retries and the retry must pass the same check
+            return false;
+        }
+        if (current != null) {
+            gpsTrackFilter.commit(ping);
+        }
+        Bus updated = liveBusStore.applyPing(ping);
+        if (updated != null) {
+            busStreamBroadcaster.publish(updated);
+            stopGeofenceDetector.observe(updated);
         }
+        return true;
+    }
+    
+    public SseEmitter streamBuses(BusStreamFilter filter) {
+        return busStreamBroadcaster.subscribe(filter);
+    }
+    
+    // Positions of one bus in [from, to) as a JSON array written row by row from the
+    // database cursor, so long windows never sit in memory
+    public StreamingResponseBody streamPositionHistory(String busId, LocalDateTime from, LocalDateTime to) {
+        if (!to.isAfter(from)) {
+            throw new IllegalArgumentException("to must be after from");
+        }
+        if (Duration.between(from, to).toHours() >= maxHistoryQueryHours) {
+            throw new IllegalArgumentException("window longer than " + maxHistoryQueryHours + " hours");
+        }
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.writeStartArray();
+            try {
+                positionHistoryStore.streamPositions(busId, from, to, ping -> {
+                    try {
+                        generator.writeObject(ping);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+            generator.close();
+        };
+    }
+    
+    public SseEmitter replayBuses(LocalDateTime from, LocalDateTime to, BusStreamFilter filter, double speed) {
+        return tripReplayService.replay(from, to, filter, speed);
+    }
+    
+    public PositionHistoryStore.HistoryStats getHistoryStats() {
+        return positionHistoryStore.getStats();
+    }
+    
+    public StopGeofenceDetector.GeofenceStats getGeofenceStats() {
+        return stopGeofenceDetector.getStats();
     }
     
-    private void updateFirebaseLocation(Bus bus) {
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("id", bus.getId());
-        updates.put("number", bus.getNumber());
-        updates.put("routeName", bus.getRouteName());
-        updates.put("latitude", bus.getLatitude());
-        updates.put("longitude", bus.getLongitude());
-        updates.put("speed", bus.getSpeed());
-        updates.put("occupancy", bus.getOccupancy());
-        updates.put("lastUpdated", bus.getLastUpdated().toString());
-        
-        firebaseRef.child(bus.getId()).setValueAsync(updates);
+    public LocationIngestPipeline.IngestStats getIngestStats() {
+        return locationIngestPipeline.getStats();
     }
     
-    // Simulate bus movement for demo purposes
-    @Scheduled(fixedRate = 10000) // Every 10 seconds
-    public void simulateBusMovement() {
-        List<Bus> buses = getAllBuses();
-        for (Bus bus : buses) {
-            // Simple random movement for demo
-            double latOffset = (Math.random() - 0.5) * 0.001;
-            double lngOffset = (Math.random() - 0.5) * 0.001;
-            
-            updateBusLocation(bus.getId(), 
-                            bus.getLatitude() + latOffset,
-                            bus.getLongitude() + lngOffset,
-                            20 + Math.random() * 40);
+    @EventListener
+    public void onLocationsFlushed(BusLocationsFlushedEvent event) {
+        // Update Firebase for real-time tracking from the live store, without a database read
+        for (LocationPing ping : event.getPings()) {
+            Bus bus = liveBusStore.get(ping.getBusId());
+            if (bus != null) {
+                firebasePublisher.publish(bus);
+            }
         }
     }
 }
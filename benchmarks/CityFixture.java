@@ -0,0 +1,277 @@
+// benchmark/CityFixture.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusStop;
+import com.citybusapp.model.TouristSpot;
+import com.citybusapp.repository.BusRepository;
+import com.citybusapp.repository.TouristSpotRepository;
+import com.citybusapp.service.BusDetailsChangedEvent;
+import com.citybusapp.service.BusService;
+import com.citybusapp.service.BusStreamBroadcaster;
+import com.citybusapp.service.EtaEngine;
+import com.citybusapp.service.GpsTrackFilter;
+import com.citybusapp.service.JourneyPlanner;
+import com.citybusapp.service.LiveBusStore;
+import com.citybusapp.service.LocationIngestPipeline;
+import com.citybusapp.service.NetworkSnapshotFile;
+import com.citybusapp.service.NetworkTopologyChangedEvent;
+import com.citybusapp.service.RoutePlanCache;
+import com.citybusapp.service.RouteService;
+import com.citybusapp.service.SearchIndex;
+import com.citybusapp.service.SpotAccessIndex;
+import com.citybusapp.service.StopGeofenceDetector;
+import com.citybusapp.service.StopSpatialIndex;
+import com.citybusapp.service.StopVisitEvent;
+import com.citybusapp.service.TouristSpotIndex;
+import com.citybusapp.service.TouristSpotService;
+import com.citybusapp.service.TransitNetwork;
+import com.citybusapp.service.TransitNetworkLoader;
+import com.citybusapp.service.WalkingTransferIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// Wires the real services by hand against a SyntheticCity, the way Spring would, but with
+// in-memory repositories and a JDBC layer that acknowledges every write. Events are dropped,
+// except stop visits, which are handed to the ETA engine.
+public final class CityFixture {
+    
+    private static final ApplicationEventPublisher NO_EVENTS = event -> { };
+    
+    private final SyntheticCity city;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StopSpatialIndex stopSpatialIndex = new StopSpatialIndex();
+    private final JourneyPlanner journeyPlanner = new JourneyPlanner();
+    private final RoutePlanCache routePlanCache = new RoutePlanCache();
+    private final EtaEngine etaEngine = new EtaEngine();
+    private final StopGeofenceDetector stopGeofenceDetector = new StopGeofenceDetector();
+    private final GpsTrackFilter gpsTrackFilter = new GpsTrackFilter();
+    private final WalkingTransferIndex walkingTransferIndex = new WalkingTransferIndex();
+    private final RouteService routeService = new RouteService();
+    private final TouristSpotIndex touristSpotIndex = new TouristSpotIndex();
+    private final TouristSpotService touristSpotService = new TouristSpotService();
+    private final SpotAccessIndex spotAccessIndex = new SpotAccessIndex();
+    private final LiveBusStore liveBusStore = new LiveBusStore();
+    private final BusStreamBroadcaster busStreamBroadcaster = new BusStreamBroadcaster();
+    private final LocationIngestPipeline locationIngestPipeline = new LocationIngestPipeline();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final BusService busService = new BusService();
+    
+    public CityFixture(SyntheticCity city, boolean cachePlans) {
+        this.city = city;
+        TouristSpotRepository touristSpotRepository =
+                InMemoryRepositories.create(TouristSpotRepository.class, city.getTouristSpots(), TouristSpot::getId);
+        BusRepository busRepository =
+                InMemoryRepositories.create(BusRepository.class, city.getBuses(), Bus::getId);
+        
+        inject(journeyPlanner, "transitNetworkLoader", new CityNetworkLoader(city));
+        inject(journeyPlanner, "networkSnapshotFile", new NetworkSnapshotFile());
+        inject(journeyPlanner, "eventPublisher", NO_EVENTS);
+        inject(journeyPlanner, "meterRegistry", meterRegistry);
+        journeyPlanner.registerMeters();
+        inject(journeyPlanner, "maxTransfers", 3);
+        journeyPlanner.reload();
+        
+        // Events are dropped, so the stop index is rebuilt the way its listener would
+        inject(stopSpatialIndex, "journeyPlanner", journeyPlanner);
+        inject(stopSpatialIndex, "eventPublisher", NO_EVENTS);
+        stopSpatialIndex.rebuild();
+        inject(walkingTransferIndex, "journeyPlanner", journeyPlanner);
+        inject(walkingTransferIndex, "stopSpatialIndex", stopSpatialIndex);
+        inject(walkingTransferIndex, "radiusKm", 0.4);
+        inject(walkingTransferIndex, "maxPerStop", 20);
+        walkingTransferIndex.rebuild();
+        
+        inject(etaEngine, "journeyPlanner", journeyPlanner);
+        inject(etaEngine, "alpha", 0.2);
+        inject(etaEngine, "dwellSeconds", 20);
+        inject(etaEngine, "defaultWaitMinutes", 5);
+        inject(etaEngine, "trackTimeoutMinutes", 15);
+        inject(etaEngine, "refreshMs", 1000L);
+        inject(etaEngine, "maxBuses", Math.max(1, city.getBuses().size()));
+        etaEngine.start();
+        
+        inject(stopGeofenceDetector, "journeyPlanner", journeyPlanner);
+        // Stop visits go to their one listener, so the ETA engine learns from the pings
+        inject(stopGeofenceDetector, "eventPublisher",
+               (ApplicationEventPublisher) event -> etaEngine.onStopVisit((StopVisitEvent) event));
+        inject(stopGeofenceDetector, "radiusMeters", 35.0);
+        inject(stopGeofenceDetector, "exitRadiusMeters", 50.0);
+        inject(stopGeofenceDetector, "visitTimeoutSeconds", 300L);
+        inject(stopGeofenceDetector, "maxBuses", Math.max(1, city.getBuses().size()));
+        
+        inject(gpsTrackFilter, "journeyPlanner", journeyPlanner);
+        inject(gpsTrackFilter, "maxSpeedKmh", 110.0);
+        inject(gpsTrackFilter, "errorMeters", 30.0);
+        inject(gpsTrackFilter, "maxRejectsInRow", 3);
+        inject(gpsTrackFilter, "resetAfterSeconds", 300L);
+        inject(gpsTrackFilter, "snapMeters", 40.0);
+        inject(gpsTrackFilter, "cellMeters", 250.0);
+        inject(gpsTrackFilter, "maxBuses", Math.max(1, city.getBuses().size()));
+        gpsTrackFilter.start();
+        
+        // With caching off every lookup is a miss that is evicted straight away
+        inject(routePlanCache, "maxEntries", cachePlans ? 10000 : 0);
+        inject(routePlanCache, "ttlSeconds", cachePlans ? 300L : 0L);
+        inject(routePlanCache, "cellMeters", 100.0);
+        
+        inject(routeService, "stopSpatialIndex", stopSpatialIndex);
+        inject(routeService, "journeyPlanner", journeyPlanner);
+        inject(routeService, "routePlanCache", routePlanCache);
+        inject(routeService, "etaEngine", etaEngine);
+        inject(routeService, "meterRegistry", meterRegistry);
+        inject(routeService, "directParallelThreshold", 2000);
+        inject(routeService, "reachableMaxMinutes", 120);
+        routeService.registerMeters();
+        
+        inject(touristSpotIndex, "touristSpotRepository", touristSpotRepository);
+        touristSpotIndex.rebuild();
+        inject(touristSpotService, "touristSpotRepository", touristSpotRepository);
+        inject(touristSpotService, "touristSpotIndex", touristSpotIndex);
+        
+        inject(spotAccessIndex, "journeyPlanner", journeyPlanner);
+        inject(spotAccessIndex, "touristSpotIndex", touristSpotIndex);
+        inject(spotAccessIndex, "radiusKm", 0.8);
+        inject(spotAccessIndex, "maxSpotsPerStop", 50);
+        inject(routeService, "spotAccessIndex", spotAccessIndex);
+        inject(routeService, "touristSpotIndex", touristSpotIndex);
+        
+        inject(liveBusStore, "busRepository", busRepository);
+        inject(liveBusStore, "eventPublisher", NO_EVENTS);
+        liveBusStore.reload();
+        
+        // Events are dropped, so the search index is filled the way its listeners would
+        inject(searchIndex, "liveBusStore", liveBusStore);
+        inject(searchIndex, "journeyPlanner", journeyPlanner);
+        searchIndex.onTopologyChanged(new NetworkTopologyChangedEvent("fixture"));
+        for (Bus bus : city.getBuses()) {
+            searchIndex.onBusDetailsChanged(new BusDetailsChangedEvent(bus.getId()));
+        }
+        
+        inject(busStreamBroadcaster, "liveBusStore", liveBusStore);
+        inject(busStreamBroadcaster, "tickMs", 500L);
+        inject(busStreamBroadcaster, "heartbeatMs", 15000L);
+        inject(busStreamBroadcaster, "senderThreads", 1);
+        inject(busStreamBroadcaster, "sendTimeoutMs", 5000L);
+        inject(busStreamBroadcaster, "maxStalledSenders", 64);
+        inject(busStreamBroadcaster, "emitterTimeoutMs", 1800000L);
+        busStreamBroadcaster.start();
+        
+        inject(locationIngestPipeline, "jdbcTemplate", new AcknowledgingJdbcTemplate());
+        inject(locationIngestPipeline, "transactionTemplate", new TransactionTemplate(new NoOpTransactionManager()));
+        inject(locationIngestPipeline, "eventPublisher", NO_EVENTS);
+        inject(locationIngestPipeline, "queueCapacity", 1_000_000);
+        inject(locationIngestPipeline, "flushIntervalMs", 100L);
+        inject(locationIngestPipeline, "flushBatchSize", 2000);
+        locationIngestPipeline.start();
+        
+        inject(busService, "locationIngestPipeline", locationIngestPipeline);
+        inject(busService, "liveBusStore", liveBusStore);
+        inject(busService, "busStreamBroadcaster", busStreamBroadcaster);
+        inject(busService, "stopGeofenceDetector", stopGeofenceDetector);
+        inject(busService, "gpsTrackFilter", gpsTrackFilter);
+        inject(busService, "searchIndex", searchIndex);
+    }
+    
+    public SyntheticCity getCity() { return city; }
+    
+    public StopSpatialIndex getStopSpatialIndex() { return stopSpatialIndex; }
+    
+    public RouteService getRouteService() { return routeService; }
+    
+    public EtaEngine getEtaEngine() { return etaEngine; }
+    
+    public TouristSpotService getTouristSpotService() { return touristSpotService; }
+    
+    public SearchIndex getSearchIndex() { return searchIndex; }
+    
+    public BusService getBusService() { return busService; }
+    
+    public LocationIngestPipeline getLocationIngestPipeline() { return locationIngestPipeline; }
+    
+    public void close() throws InterruptedException {
+        locationIngestPipeline.stop();
+        busStreamBroadcaster.stop();
+        etaEngine.stop();
+    }
+    
+    static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + target.getClass().getSimpleName() + "." + fieldName, e);
+        }
+    }
+    
+    // Serves the city's network the way the database queries would: stops in id order, as
+    // fresh copies, and a fixed fingerprint since the city never changes
+    private static final class CityNetworkLoader extends TransitNetworkLoader {
+        private final SyntheticCity city;
+        
+        private CityNetworkLoader(SyntheticCity city) {
+            this.city = city;
+        }
+        
+        @Override
+        public List<BusStop> loadStops() {
+            List<BusStop> stops = new ArrayList<>();
+            for (BusStop stop : city.getStops()) {
+                stops.add(new BusStop(stop.getId(), stop.getName(), stop.getLatitude(), stop.getLongitude(),
+                                      new ArrayList<>(stop.getBusRoutes())));
+            }
+            stops.sort(Comparator.comparing(BusStop::getId));
+            return stops;
+        }
+        
+        @Override
+        public Map<String, TransitNetwork.RouteInfo> loadRoutes() {
+            return city.getRoutes();
+        }
+        
+        @Override
+        public String fingerprint() {
+            return "synthetic-city";
+        }
+    }
+    
+    // Reports every row as updated without touching a database
+    private static final class AcknowledgingJdbcTemplate extends JdbcTemplate {
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            int[] counts = new int[batchArgs.size()];
+            Arrays.fill(counts, 1);
+            return new int[][] {counts};
+        }
+    }
+    
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+        
+        @Override
+        public void commit(TransactionStatus status) { }
+        
+        @Override
+        public void rollback(TransactionStatus status) { }
+    }
+}
@@ -0,0 +1,53 @@
+// benchmark/InMemoryRepositories.java
+package com.citybusapp.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Map-backed stand-ins for the Spring Data repositories, so benchmarks run without a
+// database. Only the CRUD methods the services call are supported.
+public final class InMemoryRepositories {
+    
+    private InMemoryRepositories() {}
+    
+    @SuppressWarnings("unchecked")
+    public static <R, T> R create(Class<R> repositoryType, Iterable<T> entities, Function<T, String> idOf) {
+        Map<String, T> store = new LinkedHashMap<>();
+        for (T entity : entities) {
+            store.put(idOf.apply(entity), entity);
+        }
+        return (R) Proxy.newProxyInstance(repositoryType.getClassLoader(), new Class<?>[] {repositoryType},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "findAll":
+                        return new ArrayList<>(store.values());
+                    case "findById":
+                        return Optional.ofNullable(store.get((String) args[0]));
+                    case "existsById":
+                        return store.containsKey((String) args[0]);
+                    case "count":
+                        return (long) store.size();
+                    case "save": {
+                        T entity = (T) args[0];
+                        store.put(idOf.apply(entity), entity);
+                        return entity;
+                    }
+                    case "deleteById":
+                        store.remove((String) args[0]);
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "InMemory" + repositoryType.getSimpleName();
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
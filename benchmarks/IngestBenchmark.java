@@ -0,0 +1,77 @@
+// benchmark/IngestBenchmark.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.service.BusService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// BusService.updateBusLocation throughput: live store update, stream conflation and the
+// ingest queue, with the flusher draining into a JDBC layer that acknowledges every row.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class IngestBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"1000", "10000"})
+        public int buses;
+        
+        private CityFixture fixture;
+        private BusService busService;
+        private String[] busIds;
+        private double[][] positions;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            SyntheticCity city = new SyntheticCity(2000, 100, 30, buses, 0, 42L);
+            fixture = new CityFixture(city, false);
+            busService = fixture.getBusService();
+            busIds = new String[buses];
+            positions = new double[buses][];
+            for (int i = 0; i < buses; i++) {
+                busIds[i] = city.getBuses().get(i).getId();
+                positions[i] = new double[] {city.getBuses().get(i).getLatitude(),
+                                             city.getBuses().get(i).getLongitude()};
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            fixture.close();
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Sender {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+    }
+    
+    @Benchmark
+    public boolean updateBusLocation(Fleet fleet, Sender sender) {
+        int i = sender.random.nextInt(fleet.busIds.length);
+        double[] position = fleet.positions[i];
+        return fleet.busService.updateBusLocation(fleet.busIds[i],
+                                                  position[0] + sender.random.nextDouble(-0.0005, 0.0005),
+                                                  position[1] + sender.random.nextDouble(-0.0005, 0.0005),
+                                                  20 + sender.random.nextDouble(40));
+    }
+}
@@ -0,0 +1,75 @@
+// benchmark/NetworkSnapshotBenchmark.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.service.NetworkSnapshotFile;
+import com.citybusapp.service.TransitNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Startup cost of the routing network: building it from loaded rows (stop ordering and
+// index construction, without the database reads) against reading the snapshot file.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkSnapshotBenchmark {
+    
+    @Param({"20000", "100000"})
+    public int stops;
+    
+    @Param({"600"})
+    public int routes;
+    
+    @Param({"30"})
+    public int stopsPerRoute;
+    
+    private SyntheticCity city;
+    private Path directory;
+    private NetworkSnapshotFile snapshotFile;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        city = new SyntheticCity(stops, routes, stopsPerRoute, 0, 0, 42L);
+        directory = Files.createTempDirectory("network-snapshot");
+        snapshotFile = new NetworkSnapshotFile();
+        CityFixture.inject(snapshotFile, "path", directory.resolve("network.snapshot").toString());
+        snapshotFile.write(TransitNetwork.build(city.getStops(), city.getRoutes(), 1, "benchmark"));
+        if (snapshotFile.getWrites() != 1) {
+            throw new IllegalStateException("snapshot was not written");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("network.snapshot"));
+        Files.deleteIfExists(directory);
+    }
+    
+    @Benchmark
+    public TransitNetwork buildFromRows() {
+        return TransitNetwork.build(city.getStops(), city.getRoutes(), 1, "benchmark");
+    }
+    
+    @Benchmark
+    public TransitNetwork readSnapshot() {
+        return snapshotFile.read();
+    }
+}
@@ -0,0 +1,101 @@
+// benchmark/ProximityBenchmark.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.model.BusStop;
+import com.citybusapp.service.GeoUtils;
+import com.citybusapp.service.RouteService;
+import com.citybusapp.service.TouristSpotService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Nearby/nearest stop lookups, nearby/nearest tourist spots and raw haversine throughput.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProximityBenchmark {
+    
+    private static final int QUERY_COUNT = 1024;
+    
+    @Param({"2000", "20000"})
+    public int stops;
+    
+    @Param({"1000"})
+    public int touristSpots;
+    
+    @Param({"0.5"})
+    public double radiusKm;
+    
+    private CityFixture fixture;
+    private RouteService routeService;
+    private TouristSpotService touristSpotService;
+    private double[][] points;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCity city = new SyntheticCity(stops, 10, 20, 0, touristSpots, 42L);
+        fixture = new CityFixture(city, false);
+        routeService = fixture.getRouteService();
+        touristSpotService = fixture.getTouristSpotService();
+        points = city.queryPoints(QUERY_COUNT, 7L);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        fixture.close();
+    }
+    
+    @Benchmark
+    public List<BusStop> nearbyStops() {
+        double[] point = points[next++ & (QUERY_COUNT - 1)];
+        return routeService.findNearbyBusStops(point[0], point[1], radiusKm);
+    }
+    
+    @Benchmark
+    public List<BusStop> nearestStops() {
+        double[] point = points[next++ & (QUERY_COUNT - 1)];
+        return routeService.findNearestBusStops(point[0], point[1], 5);
+    }
+    
+    @Benchmark
+    public TouristSpotService.SpotPage nearbyTouristSpots() {
+        double[] point = points[next++ & (QUERY_COUNT - 1)];
+        return touristSpotService.findNearbySpots(point[0], point[1], radiusKm * 10, null,
+                                                  null, null, 50, null);
+    }
+    
+    @Benchmark
+    public TouristSpotService.SpotPage nearestTouristSpots() {
+        double[] point = points[next++ & (QUERY_COUNT - 1)];
+        return touristSpotService.findNearbySpots(point[0], point[1], 0, 10, null, null, 10, null);
+    }
+    
+    // One haversine per point pair; reported per call
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT - 1)
+    public double haversine() {
+        double sum = 0;
+        for (int i = 1; i < QUERY_COUNT; i++) {
+            sum += GeoUtils.distanceKm(points[i - 1][0], points[i - 1][1], points[i][0], points[i][1]);
+        }
+        return sum;
+    }
+}
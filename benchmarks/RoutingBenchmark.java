@@ -0,0 +1,91 @@
+// benchmark/RoutingBenchmark.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.model.RoutePlan;
+import com.citybusapp.service.RouteService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// RouteService.findDirectRoutes / findTransferRoutes over a synthetic city.
+// Queries cycle through a fixed set of origin/destination pairs; with cached=false
+// every call plans from scratch.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    
+    private static final int QUERY_COUNT = 1024;
+    
+    @Param({"2000", "20000"})
+    public int stops;
+    
+    @Param({"100", "600"})
+    public int routes;
+    
+    @Param({"30"})
+    public int stopsPerRoute;
+    
+    @Param({"false"})
+    public boolean cached;
+    
+    @Param({"500"})
+    public int touristSpots;
+    
+    private CityFixture fixture;
+    private RouteService routeService;
+    private double[][] origins;
+    private double[][] destinations;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCity city = new SyntheticCity(stops, routes, stopsPerRoute, 0, touristSpots, 42L);
+        fixture = new CityFixture(city, cached);
+        routeService = fixture.getRouteService();
+        origins = city.queryPoints(QUERY_COUNT, 7L);
+        destinations = city.queryPoints(QUERY_COUNT, 11L);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        fixture.close();
+    }
+    
+    @Benchmark
+    public List<RoutePlan> directRoutes() {
+        int i = next++ & (QUERY_COUNT - 1);
+        return routeService.findDirectRoutes(origins[i][0], origins[i][1],
+                                             destinations[i][0], destinations[i][1]);
+    }
+    
+    @Benchmark
+    public List<RoutePlan> transferRoutes() {
+        int i = next++ & (QUERY_COUNT - 1);
+        return routeService.findTransferRoutes(origins[i][0], origins[i][1],
+                                               destinations[i][0], destinations[i][1]);
+    }
+    
+    // One-to-many search from the origin to every tourist spot
+    @Benchmark
+    public List<RouteService.TouristSpotPlan> touristSpotPlans() {
+        int i = next++ & (QUERY_COUNT - 1);
+        return routeService.findTouristSpotPlans(origins[i][0], origins[i][1], null, null, 10);
+    }
+}
@@ -0,0 +1,78 @@
+// benchmark/SearchBenchmark.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.service.SearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Typeahead: every prefix of a stop name as it is typed, plus substring bus number lookups.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    
+    private static final int QUERY_COUNT = 1024;
+    
+    @Param({"20000"})
+    public int stops;
+    
+    @Param({"5000"})
+    public int buses;
+    
+    private CityFixture fixture;
+    private SearchIndex searchIndex;
+    private String[] keystrokes;
+    private String[] busNumbers;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCity city = new SyntheticCity(stops, 200, 20, buses, 0, 42L);
+        fixture = new CityFixture(city, false);
+        searchIndex = fixture.getSearchIndex();
+        
+        Random random = new Random(7L);
+        keystrokes = new String[QUERY_COUNT];
+        busNumbers = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            String name = city.getStops().get(random.nextInt(stops)).getName();
+            keystrokes[i] = name.substring(0, 1 + random.nextInt(name.length()));
+            String number = city.getBuses().get(random.nextInt(buses)).getNumber();
+            busNumbers[i] = number.substring(1);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        fixture.close();
+    }
+    
+    @Benchmark
+    public SearchIndex.SearchResults typeahead() {
+        return searchIndex.search(keystrokes[next++ & (QUERY_COUNT - 1)], 10);
+    }
+    
+    @Benchmark
+    public List<Bus> busNumberSubstring() {
+        return searchIndex.searchBusNumbers(busNumbers[next++ & (QUERY_COUNT - 1)]);
+    }
+}
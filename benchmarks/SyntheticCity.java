@@ -0,0 +1,146 @@
+// benchmark/SyntheticCity.java
+package com.citybusapp.benchmark;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusStop;
+import com.citybusapp.model.TouristSpot;
+import com.citybusapp.service.GeoUtils;
+import com.citybusapp.service.TransitNetwork;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Reproducible city for benchmarks: stops scattered around the sample data's city centre
+// at a realistic density, routes running along straight corridors through the city, buses
+// parked on their route's stops and tourist spots spread over the same area.
+public final class SyntheticCity {
+    
+    private static final double CENTER_LAT = 16.5062;
+    private static final double CENTER_LNG = 80.6480;
+    // Roughly one stop per 0.1 km², as in a dense Indian city
+    private static final double KM2_PER_STOP = 0.1;
+    private static final double CORRIDOR_KM = 0.4;
+    private static final String[] CATEGORIES = {"Heritage", "Historical", "Nature", "Religious", "Shopping"};
+    
+    private final List<BusStop> stops = new ArrayList<>();
+    private final Map<String, TransitNetwork.RouteInfo> routes = new LinkedHashMap<>();
+    private final Map<String, List<BusStop>> routeStops = new LinkedHashMap<>();
+    private final List<Bus> buses = new ArrayList<>();
+    private final List<TouristSpot> touristSpots = new ArrayList<>();
+    private final double halfSideKm;
+    private final Random random;
+    
+    public SyntheticCity(int stopCount, int routeCount, int stopsPerRoute, int busCount, int spotCount, long seed) {
+        this.random = new Random(seed);
+        this.halfSideKm = Math.sqrt(stopCount * KM2_PER_STOP) / 2;
+        
+        for (int i = 0; i < stopCount; i++) {
+            double[] point = randomPoint();
+            stops.add(new BusStop(String.format("stop_%06d", i), "Stop " + i, point[0], point[1], new ArrayList<>()));
+        }
+        for (int r = 0; r < routeCount; r++) {
+            String routeNumber = "R" + (100 + r);
+            List<BusStop> sequence = corridor(stopsPerRoute);
+            for (BusStop stop : sequence) {
+                stop.getBusRoutes().add(routeNumber);
+            }
+            routeStops.put(routeNumber, sequence);
+            routes.put(routeNumber, new TransitNetwork.RouteInfo(
+                    "Route " + routeNumber,
+                    sequence.get(0).getName(),
+                    sequence.get(sequence.size() - 1).getName()));
+        }
+        List<String> routeNumbers = new ArrayList<>(routeStops.keySet());
+        for (int b = 0; b < busCount && !routeNumbers.isEmpty(); b++) {
+            String routeNumber = routeNumbers.get(b % routeNumbers.size());
+            List<BusStop> sequence = routeStops.get(routeNumber);
+            BusStop at = sequence.get(random.nextInt(sequence.size()));
+            buses.add(new Bus(String.format("bus_%06d", b), routeNumber, "Route " + routeNumber,
+                              at.getLatitude(), at.getLongitude(), 0.0, 0, LocalDateTime.now()));
+        }
+        for (int s = 0; s < spotCount; s++) {
+            double[] point = randomPoint();
+            touristSpots.add(new TouristSpot(String.format("spot_%06d", s), "Spot " + s, "Synthetic spot " + s,
+                                             point[0], point[1], CATEGORIES[s % CATEGORIES.length],
+                                             3.0 + random.nextInt(21) / 10.0, "https://example.com/" + s + ".jpg"));
+        }
+    }
+    
+    public List<BusStop> getStops() { return stops; }
+    
+    public Map<String, TransitNetwork.RouteInfo> getRoutes() { return routes; }
+    
+    public Map<String, List<BusStop>> getRouteStops() { return routeStops; }
+    
+    public List<Bus> getBuses() { return buses; }
+    
+    public List<TouristSpot> getTouristSpots() { return touristSpots; }
+    
+    // Points within walking distance of a random stop, so queries always find nearby stops
+    public double[][] queryPoints(int count, long seed) {
+        Random queries = new Random(seed);
+        double[][] points = new double[count][];
+        for (int i = 0; i < count; i++) {
+            BusStop stop = stops.get(queries.nextInt(stops.size()));
+            double jitter = GeoUtils.latitudeSpanDegrees(0.2);
+            points[i] = new double[] {
+                stop.getLatitude() + (queries.nextDouble() - 0.5) * jitter,
+                stop.getLongitude() + (queries.nextDouble() - 0.5) * jitter
+            };
+        }
+        return points;
+    }
+    
+    private double[] randomPoint() {
+        double northKm = (random.nextDouble() * 2 - 1) * halfSideKm;
+        double eastKm = (random.nextDouble() * 2 - 1) * halfSideKm;
+        return offset(CENTER_LAT, CENTER_LNG, northKm, eastKm);
+    }
+    
+    private static double[] offset(double lat, double lng, double northKm, double eastKm) {
+        double newLat = lat + northKm / GeoUtils.KM_PER_DEGREE;
+        double newLng = lng + eastKm / (GeoUtils.KM_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+        return new double[] {newLat, newLng};
+    }
+    
+    // Stops near a random straight line through the city, ordered along it and thinned out
+    private List<BusStop> corridor(int stopsPerRoute) {
+        double angle = random.nextDouble() * Math.PI;
+        double[] through = randomPoint();
+        double kmPerLng = GeoUtils.KM_PER_DEGREE * Math.cos(Math.toRadians(CENTER_LAT));
+        double dirNorth = Math.sin(angle);
+        double dirEast = Math.cos(angle);
+        
+        List<double[]> candidates = new ArrayList<>();
+        for (int i = 0; i < stops.size(); i++) {
+            BusStop stop = stops.get(i);
+            double northKm = (stop.getLatitude() - through[0]) * GeoUtils.KM_PER_DEGREE;
+            double eastKm = (stop.getLongitude() - through[1]) * kmPerLng;
+            double along = northKm * dirNorth + eastKm * dirEast;
+            double across = Math.abs(northKm * dirEast - eastKm * dirNorth);
+            if (across <= CORRIDOR_KM) {
+                candidates.add(new double[] {along, i});
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(c -> c[0]));
+        
+        List<BusStop> sequence = new ArrayList<>();
+        int count = Math.max(2, Math.min(stopsPerRoute, candidates.size()));
+        for (int k = 0; k < count && !candidates.isEmpty(); k++) {
+            int pick = (int) ((long) k * (candidates.size() - 1) / Math.max(1, count - 1));
+            BusStop stop = stops.get((int) candidates.get(pick)[1]);
+            if (sequence.isEmpty() || sequence.get(sequence.size() - 1) != stop) {
+                sequence.add(stop);
+            }
+        }
+        while (sequence.size() < 2) {
+            sequence.add(stops.get(random.nextInt(stops.size())));
+        }
+        return sequence;
+    }
+}
@@ -54,20 +54,44 @@ class BusService extends ChangeNotifier {
     notifyListeners();
   }
 
+  // The list endpoint is paged; follow nextCursor until the last page
   Future<void> loadTouristSpots() async {
+    try {
+      final List<TouristSpot> spots = [];
+      String? cursor;
+      do {
+        final query = cursor == null ? '?limit=200' : '?limit=200&cursor=$cursor';
+        final response = await http.get(
+          Uri.parse('$API_BASE_URL/tourist-spots$query'),
+        );
+        if (response.statusCode != 200) {
+          return;
+        }
+        final Map<String, dynamic> page = json.decode(response.body);
+        final List<dynamic> items = page['items'];
+        spots.addAll(items.map((json) => TouristSpot.fromJson(json)));
+        cursor = page['nextCursor'];
+      } while (cursor != null);
+      _touristSpots = spots;
+      notifyListeners();
+    } catch (e) {
+      print('Error loading tourist spots: $e');
+    }
+  }
+
+  // Description and image are not part of the list response
+  Future<TouristSpot?> loadTouristSpotDetails(String id) async {
     try {
       final response = await http.get(
-        Uri.parse('$API_BASE_URL/tourist-spots'),
+        Uri.parse('$API_BASE_URL/tourist-spots/$id'),
       );
-      
       if (response.statusCode == 200) {
-        final List<dynamic> data = json.decode(response.body);
-        _touristSpots = data.map((json) => TouristSpot.fromJson(json)).toList();
-        notifyListeners();
+        return TouristSpot.fromJson(json.decode(response.body));
       }
     } catch (e) {
-      print('Error loading tourist spots: $e');
+      print('Error loading tourist spot $id: $e');
     }
+    return null;
   }
 
   Future<List<Map<String, dynamic>>> getRouteToDestination(
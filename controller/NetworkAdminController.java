@@ -0,0 +1,44 @@
+// controller/NetworkAdminController.java
+package com.citybusapp.controller;
+
+import com.citybusapp.service.JourneyPlanner;
+import com.citybusapp.service.WalkingTransferIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+// Operator view of the in-memory network snapshot. A reload reads stops and routes
+// again and swaps the snapshot in; planners keep serving from the old one meanwhile.
+@RestController
+@RequestMapping("/api/admin/network")
+public class NetworkAdminController {
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private WalkingTransferIndex walkingTransferIndex;
+    
+    @GetMapping
+    public ResponseEntity<JourneyPlanner.NetworkStatus> getStatus() {
+        return ResponseEntity.ok(journeyPlanner.getStatus());
+    }
+    
+    // force=false only reloads when the source tables changed since the last load
+    @PostMapping("/reload")
+    public ResponseEntity<JourneyPlanner.NetworkStatus> reload(
+            @RequestParam(defaultValue = "true") boolean force) {
+        if (force) {
+            journeyPlanner.reload();
+        } else {
+            journeyPlanner.reloadIfChanged();
+        }
+        return ResponseEntity.ok(journeyPlanner.getStatus());
+    }
+    
+    // Size of the walking transfer table and how many stops its last rebuild searched
+    @GetMapping("/transfers")
+    public ResponseEntity<WalkingTransferIndex.TransferStats> getTransferStats() {
+        return ResponseEntity.ok(walkingTransferIndex.getStats());
+    }
+}
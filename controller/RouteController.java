@@ -1,11 +1,17 @@
 // controller/RouteController.java
 package com.citybusapp.controller;
 
+import com.citybusapp.model.BusStop;
 import com.citybusapp.model.RoutePlan;
+import com.citybusapp.service.EtaEngine;
+import com.citybusapp.service.RoutePlanCache;
 import com.citybusapp.service.RouteService;
+import com.citybusapp.service.TravelTimeMatrixService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -17,14 +23,26 @@ public class RouteController {
     @Autowired
     private RouteService routeService;
     
+    @Autowired
+    private TravelTimeMatrixService travelTimeMatrixService;
+    
+    // criteria: fastest (default), least-walking or cheapest; fares are flat per ride, so
+    // cheapest is an alias of fastest
     @GetMapping("/direct")
     public ResponseEntity<List<RoutePlan>> findDirectRoutes(
             @RequestParam Double fromLat,
             @RequestParam Double fromLng,
             @RequestParam Double toLat,
-            @RequestParam Double toLng) {
+            @RequestParam Double toLng,
+            @RequestParam(defaultValue = "fastest") String criteria) {
         
-        List<RoutePlan> routes = routeService.findDirectRoutes(fromLat, fromLng, toLat, toLng);
+        RouteService.DirectCriterion criterion;
+        try {
+            criterion = RouteService.DirectCriterion.parse(criteria);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<RoutePlan> routes = routeService.findDirectRoutes(fromLat, fromLng, toLat, toLng, criterion);
         return ResponseEntity.ok(routes);
     }
     
@@ -39,6 +57,72 @@ public class RouteController {
         return ResponseEntity.ok(routes);
     }
     
+    @GetMapping("/arrivals/next")
+    public ResponseEntity<EtaEngine.ArrivalPrediction> getNextArrival(
+            @RequestParam String route,
+            @RequestParam String stopId) {
+        return ResponseEntity.ok(routeService.getNextArrival(route, stopId));
+    }
+    
+    // Best plan to each of the top tourist spots from one origin, fastest first
+    @GetMapping("/tourist-spots")
+    public ResponseEntity<List<RouteService.TouristSpotPlan>> findTouristSpotPlans(
+            @RequestParam Double fromLat,
+            @RequestParam Double fromLng,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(routeService.findTouristSpotPlans(fromLat, fromLng, category, minRating, limit));
+    }
+    
+    // Stops and tourist spots reachable within maxMinutes by walking and bus, earliest first
+    @GetMapping(value = "/reachable", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> findReachable(
+            @RequestParam Double fromLat,
+            @RequestParam Double fromLng,
+            @RequestParam(defaultValue = "30") int maxMinutes) {
+        try {
+            return ResponseEntity.ok(routeService.streamReachable(fromLat, fromLng, maxMinutes));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // Duration and transfers from every origin to every destination, one row per origin
+    @PostMapping(value = "/matrix", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getTravelTimeMatrix(@RequestBody MatrixRequest request) {
+        double[][] origins = toPoints(request.getOrigins());
+        double[][] destinations = toPoints(request.getDestinations());
+        if (origins == null || destinations == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(travelTimeMatrixService.streamMatrix(origins, destinations));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    private static double[][] toPoints(List<MatrixPoint> points) {
+        if (points == null) {
+            return null;
+        }
+        double[][] coordinates = new double[points.size()][];
+        for (int i = 0; i < coordinates.length; i++) {
+            MatrixPoint point = points.get(i);
+            if (point == null || point.getLatitude() == null || point.getLongitude() == null) {
+                return null;
+            }
+            coordinates[i] = new double[] {point.getLatitude(), point.getLongitude()};
+        }
+        return coordinates;
+    }
+    
+    @GetMapping("/cache/stats")
+    public ResponseEntity<RoutePlanCache.CacheStats> getCacheStats() {
+        return ResponseEntity.ok(routeService.getCacheStats());
+    }
+    
     @GetMapping("/stops/nearby")
     public ResponseEntity<List<BusStop>> findNearbyStops(
             @RequestParam Double latitude,
@@ -48,206 +132,649 @@ public class RouteController {
         List<BusStop> stops = routeService.findNearbyBusStops(latitude, longitude, radiusKm);
         return ResponseEntity.ok(stops);
     }
+    
+    @GetMapping("/stops/nearest")
+    public ResponseEntity<List<BusStop>> findNearestStops(
+            @RequestParam Double latitude,
+            @RequestParam Double longitude,
+            @RequestParam(defaultValue = "5") Integer limit) {
+        
+        List<BusStop> stops = routeService.findNearestBusStops(latitude, longitude, limit);
+        return ResponseEntity.ok(stops);
+    }
+    
+    public static class MatrixRequest {
+        private List<MatrixPoint> origins;
+        private List<MatrixPoint> destinations;
+        
+        public List<MatrixPoint> getOrigins() { return origins; }
+        public void setOrigins(List<MatrixPoint> origins) { this.origins = origins; }
+        
+        public List<MatrixPoint> getDestinations() { return destinations; }
+        public void setDestinations(List<MatrixPoint> destinations) { this.destinations = destinations; }
+    }
+    
+    public static class MatrixPoint {
+        private Double latitude;
+        private Double longitude;
+        
+        public Double getLatitude() { return latitude; }
+        public void setLatitude(Double latitude) { this.latitude = latitude; }
+        
+        public Double getLongitude() { return longitude; }
+        public void setLongitude(Double longitude) { this.longitude = longitude; }
+    }
 }
 
 // service/RouteService.java
 package com.citybusapp.service;
 
 import com.citybusapp.model.*;
-import com.citybusapp.repository.BusStopRepository;
-import com.citybusapp.repository.RouteRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class RouteService {
     
     @Autowired
-    private BusStopRepository busStopRepository;
+    private StopSpatialIndex stopSpatialIndex;
     
     @Autowired
-    private RouteRepository routeRepository;
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private RoutePlanCache routePlanCache;
+    
+    @Autowired
+    private EtaEngine etaEngine;
+    
+    @Autowired
+    private SpotAccessIndex spotAccessIndex;
+    
+    @Autowired
+    private TouristSpotIndex touristSpotIndex;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${routing.direct.parallel-threshold:2000}")
+    private int directParallelThreshold;
     
-    public List<RoutePlan> findDirectRoutes(Double fromLat, Double fromLng, 
+    @Value("${routing.reachable.max-minutes:120}")
+    private int reachableMaxMinutes;
+    
+    private Timer directPlanTimer;
+    private Timer transferPlanTimer;
+    private Timer touristSpotPlanTimer;
+    private Timer reachablePlanTimer;
+    private Timer nearbyScanTimer;
+    private DistributionSummary nearbyStopsSummary;
+    private DistributionSummary candidatePairsSummary;
+    private Counter directPlansBuilt;
+    private Counter transferPlansBuilt;
+    
+    private static final int TRANSFER_WALK_MINUTES = JourneyPlanner.TRANSFER_SECONDS / 60;
+    private static final int MAX_SPOT_PLANS = 50;
+    private static final int MAX_DIRECT_PLANS = 3;
+    private static final int MAX_NEAREST_STOPS = 500;
+    private static final int DIRECT_FARE_CENTS = 1500;
+    private static final long SPOT_FLAG = 1L << 31;
+    
+    @PostConstruct
+    public void registerMeters() {
+        directPlanTimer = planTimer("direct");
+        transferPlanTimer = planTimer("transfer");
+        touristSpotPlanTimer = planTimer("tourist_spots");
+        reachablePlanTimer = planTimer("reachable");
+        nearbyScanTimer = Timer.builder("citybus.route.stage")
+                .description("Time spent in one stage of route planning")
+                .tag("stage", "nearby_scan")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(meterRegistry);
+        nearbyStopsSummary = DistributionSummary.builder("citybus.route.nearby.stops")
+                .description("Stops found by one nearby-stop scan")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(1000.0)
+                .register(meterRegistry);
+        candidatePairsSummary = DistributionSummary.builder("citybus.route.candidate.pairs")
+                .description("Origin/destination stop pairs examined by one direct search")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(100000.0)
+                .register(meterRegistry);
+        directPlansBuilt = plansBuiltCounter("direct");
+        transferPlansBuilt = plansBuiltCounter("transfer");
+    }
+    
+    public List<RoutePlan> findDirectRoutes(Double fromLat, Double fromLng,
                                           Double toLat, Double toLng) {
-        List<RoutePlan> directRoutes = new ArrayList<>();
+        return findDirectRoutes(fromLat, fromLng, toLat, toLng, DirectCriterion.FASTEST);
+    }
+    
+    // Plans are cached per ~100 m origin/destination cell until stops or routes change
+    public List<RoutePlan> findDirectRoutes(Double fromLat, Double fromLng, Double toLat, Double toLng,
+                                            DirectCriterion criterion) {
+        return routePlanCache.get(criterion.queryType, fromLat, fromLng, toLat, toLng,
+                                  () -> directPlanTimer.record(() -> planDirectRoutes(fromLat, fromLng, toLat, toLng,
+                                                                                      criterion)));
+    }
+    
+    public List<RoutePlan> findTransferRoutes(Double fromLat, Double fromLng, 
+                                            Double toLat, Double toLng) {
+        return routePlanCache.get(RoutePlanCache.QueryType.TRANSFER, fromLat, fromLng, toLat, toLng,
+                                  () -> transferPlanTimer.record(() -> planTransferRoutes(fromLat, fromLng, toLat, toLng)));
+    }
+    
+    // One journey search from the origin reaches every spot in the stop-to-spot access
+    // table; spots close enough to walk to compete with their bus plans
+    public List<TouristSpotPlan> findTouristSpotPlans(Double fromLat, Double fromLng,
+                                                      String category, Double minRating, int limit) {
+        return touristSpotPlanTimer.record(() -> planTouristSpots(fromLat, fromLng, category, minRating,
+                                                                  Math.max(1, Math.min(limit, MAX_SPOT_PLANS))));
+    }
+    
+    // Every stop and tourist spot reachable from the origin within maxMinutes, earliest
+    // first. The search runs before the response starts, so a bad request is still
+    // rejected; places are then written one at a time from the sorted arrival table
+    public StreamingResponseBody streamReachable(double fromLat, double fromLng, int maxMinutes) {
+        if (maxMinutes <= 0 || maxMinutes > reachableMaxMinutes) {
+            throw new IllegalArgumentException("maxMinutes must be between 1 and " + reachableMaxMinutes);
+        }
+        ReachableSet reachable = reachablePlanTimer.record(() -> planReachable(fromLat, fromLng, maxMinutes * 60));
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.writeStartArray();
+            for (long entry : reachable.order) {
+                generator.writeObject(reachable.place(entry));
+            }
+            generator.writeEndArray();
+            generator.close();
+        };
+    }
+    
+    public RoutePlanCache.CacheStats getCacheStats() {
+        return routePlanCache.getStats();
+    }
+    
+    public EtaEngine.ArrivalPrediction getNextArrival(String routeNumber, String stopId) {
+        return etaEngine.nextArrival(routeNumber, stopId);
+    }
+    
+    // Candidates are scored with primitives and only the best one per route is kept, so
+    // plan objects are built for the final top-K alone
+    private List<RoutePlan> planDirectRoutes(Double fromLat, Double fromLng,
+                                             Double toLat, Double toLng, DirectCriterion criterion) {
+        TransitNetwork network = journeyPlanner.getNetwork();
         
         // Find nearby stops for origin and destination
         List<BusStop> originStops = findNearbyBusStops(fromLat, fromLng, 0.5);
         List<BusStop> destStops = findNearbyBusStops(toLat, toLng, 0.5);
+        int[] egressSeconds = new int[destStops.size()];
+        for (int d = 0; d < egressSeconds.length; d++) {
+            BusStop destStop = destStops.get(d);
+            egressSeconds[d] = SpotAccessIndex.walkSeconds(
+                    calculateDistance(destStop.getLatitude(), destStop.getLongitude(), toLat, toLng));
+        }
         
-        // Check for common routes between origin and destination stops
-        for (BusStop originStop : originStops) {
-            for (BusStop destStop : destStops) {
-                List<String> commonRoutes = findCommonRoutes(originStop, destStop);
-                
-                for (String routeNumber : commonRoutes) {
-                    RoutePlan plan = createDirectRoutePlan(originStop, destStop, routeNumber);
-                    if (plan != null) {
-                        directRoutes.add(plan);
-                    }
-                }
-            }
+        long pairs = (long) originStops.size() * destStops.size();
+        candidatePairsSummary.record((double) pairs);
+        IntStream origins = IntStream.range(0, originStops.size());
+        if (pairs >= directParallelThreshold) {
+            origins = origins.parallel();
         }
+        Map<String, DirectCandidate> bestPerRoute = origins.collect(
+                HashMap::new,
+                (best, o) -> scanDirectCandidates(network, criterion, originStops.get(o),
+                        SpotAccessIndex.walkSeconds(calculateDistance(fromLat, fromLng,
+                                originStops.get(o).getLatitude(), originStops.get(o).getLongitude())),
+                        destStops, egressSeconds, best),
+                (best, other) -> other.values().forEach(candidate -> keepBetter(best, candidate)));
         
-        return directRoutes.stream()
-                .sorted((r1, r2) -> Integer.compare(r1.getTotalDurationMinutes(), r2.getTotalDurationMinutes()))
-                .limit(3)
+        // Bounded max-heap: the worst of the current top-K is evicted first
+        PriorityQueue<DirectCandidate> top = new PriorityQueue<>(MAX_DIRECT_PLANS + 1,
+                                                                 DirectCandidate.ORDER.reversed());
+        for (DirectCandidate candidate : bestPerRoute.values()) {
+            top.offer(candidate);
+            if (top.size() > MAX_DIRECT_PLANS) {
+                top.poll();
+            }
+        }
+        List<DirectCandidate> chosen = new ArrayList<>(top);
+        chosen.sort(DirectCandidate.ORDER);
+        return chosen.stream()
+                .map(candidate -> createDirectRoutePlan(network, candidate))
                 .collect(Collectors.toList());
     }
     
-    public List<RoutePlan> findTransferRoutes(Double fromLat, Double fromLng, 
-                                            Double toLat, Double toLng) {
-        List<RoutePlan> transferRoutes = new ArrayList<>();
+    // Walking time and fare are known before a ride is timed, so a candidate whose bound
+    // is already beaten by the best plan on the same route is never timed
+    private void scanDirectCandidates(TransitNetwork network, DirectCriterion criterion, BusStop originStop,
+                                      int accessSeconds, List<BusStop> destStops, int[] egressSeconds,
+                                      Map<String, DirectCandidate> best) {
+        int from = network.indexOfStop(originStop.getId());
+        int evaluated = 0;
+        for (int d = 0; d < destStops.size(); d++) {
+            BusStop destStop = destStops.get(d);
+            int walkSeconds = accessSeconds + egressSeconds[d];
+            for (String routeNumber : findCommonRoutes(originStop, destStop)) {
+                DirectCandidate current = best.get(routeNumber);
+                if (current != null && criterion.lowerBound(walkSeconds) > current.primary) {
+                    continue;
+                }
+                keepBetter(best, timeDirectCandidate(network, criterion, originStop, from, destStop,
+                                                     routeNumber, accessSeconds, egressSeconds[d]));
+                evaluated++;
+            }
+        }
+        directPlansBuilt.increment(evaluated);
+    }
+    
+    private DirectCandidate timeDirectCandidate(TransitNetwork network, DirectCriterion criterion,
+                                                BusStop originStop, int from, BusStop destStop,
+                                                String routeNumber, int accessSeconds, int egressSeconds) {
+        // Timed from live predictions when the route is in the network
+        int route = network.indexOfRoute(routeNumber);
+        int to = network.indexOfStop(destStop.getId());
+        int pattern = route >= 0 && from >= 0 && to >= 0 ? etaEngine.findPattern(network, route, from, to) : -1;
+        int rideSeconds;
+        int waitSeconds;
+        if (pattern >= 0) {
+            int boardPosition = network.positionInPattern(pattern, from);
+            int alightPosition = network.positionInPattern(pattern, to);
+            rideSeconds = Math.max(60, etaEngine.rideSeconds(network, pattern, boardPosition, alightPosition));
+            waitSeconds = etaEngine.waitSeconds(network, pattern, boardPosition, accessSeconds);
+        } else {
+            rideSeconds = calculateBusTravelTime(originStop, destStop) * 60;
+            waitSeconds = 0;
+        }
+        return new DirectCandidate(criterion, routeNumber, originStop, destStop,
+                                   accessSeconds, waitSeconds, rideSeconds, egressSeconds);
+    }
+    
+    private static void keepBetter(Map<String, DirectCandidate> best, DirectCandidate candidate) {
+        best.merge(candidate.routeNumber, candidate,
+                   (current, offered) -> DirectCandidate.ORDER.compare(offered, current) < 0 ? offered : current);
+    }
+    
+    private List<RoutePlan> planTransferRoutes(Double fromLat, Double fromLng, 
+                                               Double toLat, Double toLng) {
+        TransitNetwork network = journeyPlanner.getNetwork();
         
         // Find nearby stops
         List<BusStop> originStops = findNearbyBusStops(fromLat, fromLng, 0.5);
         List<BusStop> destStops = findNearbyBusStops(toLat, toLng, 0.5);
         
-        // Find intermediate transfer points
-        for (BusStop originStop : originStops) {
-            for (BusStop destStop : destStops) {
-                List<RoutePlan> routes = findTransferRoutesWithOneTransfer(originStop, destStop);
-                transferRoutes.addAll(routes);
-            }
-        }
+        int[] accessStops = new int[originStops.size()];
+        int[] accessSeconds = new int[originStops.size()];
+        int accessCount = walkToStops(network, originStops, fromLat, fromLng, accessStops, accessSeconds);
+        int[] egressStops = new int[destStops.size()];
+        int[] egressSeconds = new int[destStops.size()];
+        int egressCount = walkToStops(network, destStops, toLat, toLng, egressStops, egressSeconds);
+        
+        // One RAPTOR search covers every origin/destination stop and any number of transfers
+        List<Journey> journeys = journeyPlanner.plan(network,
+                Arrays.copyOf(accessStops, accessCount), Arrays.copyOf(accessSeconds, accessCount),
+                Arrays.copyOf(egressStops, egressCount), Arrays.copyOf(egressSeconds, egressCount));
         
-        return transferRoutes.stream()
+        transferPlansBuilt.increment(journeys.size());
+        return journeys.stream()
+                .map(journey -> createJourneyRoutePlan(network, journey,
+                                                       walkKm(journey.getAccessSeconds()),
+                                                       walkKm(journey.getEgressSeconds())))
                 .sorted((r1, r2) -> Integer.compare(r1.getTotalDurationMinutes(), r2.getTotalDurationMinutes()))
                 .limit(5)
                 .collect(Collectors.toList());
     }
     
+    private List<TouristSpotPlan> planTouristSpots(double fromLat, double fromLng,
+                                                   String category, Double minRating, int limit) {
+        SpotAccessIndex.Table access = spotAccessIndex.current();
+        TransitNetwork network = access.network();
+        
+        List<BusStop> originStops = findNearbyBusStops(fromLat, fromLng, 0.5);
+        int[] accessStops = new int[originStops.size()];
+        int[] accessSeconds = new int[originStops.size()];
+        int accessCount = walkToStops(network, originStops, fromLat, fromLng, accessStops, accessSeconds);
+        
+        // Targets are the spots passing the filters, each left from any stop near it
+        int[] targetSpots = new int[access.spotCount()];
+        int[] targetOffsets = new int[access.spotCount() + 1];
+        int targetCount = 0;
+        int slots = 0;
+        for (int spot = 0; spot < access.spotCount(); spot++) {
+            if (matches(access.spot(spot), category, minRating)) {
+                targetSpots[targetCount++] = spot;
+                slots += access.endStopSlot(spot) - access.firstStopSlot(spot);
+            }
+        }
+        int[] targetStops = new int[slots];
+        int[] targetEgressSeconds = new int[slots];
+        int at = 0;
+        for (int t = 0; t < targetCount; t++) {
+            targetOffsets[t] = at;
+            for (int slot = access.firstStopSlot(targetSpots[t]); slot < access.endStopSlot(targetSpots[t]); slot++) {
+                targetStops[at] = access.slotStop(slot);
+                targetEgressSeconds[at++] = access.slotStopWalkSeconds(slot);
+            }
+        }
+        targetOffsets[targetCount] = at;
+        
+        Journey[] journeys = journeyPlanner.planToMany(network,
+                Arrays.copyOf(accessStops, accessCount), Arrays.copyOf(accessSeconds, accessCount),
+                Arrays.copyOf(targetOffsets, targetCount + 1), targetStops, targetEgressSeconds);
+        
+        // Fastest option per spot by scheduled time: walking there, or its bus journey
+        Map<String, SpotOption> options = new HashMap<>();
+        for (int t = 0; t < targetCount; t++) {
+            if (journeys[t] != null) {
+                TouristSpotSummary spot = access.spot(targetSpots[t]);
+                options.put(spot.getId(), new SpotOption(spot, journeys[t], journeys[t].getArrivalSeconds()));
+            }
+        }
+        for (TouristSpotSummary spot : touristSpotIndex.findWithinRadius(fromLat, fromLng, spotAccessIndex.getRadiusKm(),
+                                                                         category, minRating, -1, null, MAX_SPOT_PLANS)) {
+            int walkSeconds = SpotAccessIndex.walkSeconds(spot.getDistanceKm());
+            SpotOption option = options.get(spot.getId());
+            if (option == null || walkSeconds <= option.scheduledSeconds) {
+                options.put(spot.getId(), new SpotOption(spot, null, walkSeconds));
+            }
+        }
+        
+        // Live waits can reorder plans, so a few more than needed are built before ranking
+        List<SpotOption> shortlist = new ArrayList<>(options.values());
+        shortlist.sort(Comparator.comparingInt((SpotOption option) -> option.scheduledSeconds)
+                                 .thenComparing(option -> option.spot.getId()));
+        List<TouristSpotPlan> plans = new ArrayList<>();
+        for (SpotOption option : shortlist.subList(0, Math.min(shortlist.size(), limit * 2))) {
+            TouristSpotSummary spot = option.spot;
+            TouristSpotSummary located = new TouristSpotSummary(spot.getId(), spot.getName(),
+                    spot.getLatitude(), spot.getLongitude(), spot.getCategory(), spot.getRating(),
+                    calculateDistance(fromLat, fromLng, spot.getLatitude(), spot.getLongitude()));
+            RoutePlan plan = option.journey != null
+                    ? createJourneyRoutePlan(network, option.journey,
+                                             walkKm(option.journey.getAccessSeconds()),
+                                             walkKm(option.journey.getEgressSeconds()))
+                    : createWalkRoutePlan(spot.getId(), option.scheduledSeconds, located.getDistanceKm());
+            plans.add(new TouristSpotPlan(located, plan));
+        }
+        plans.sort(Comparator.comparingInt((TouristSpotPlan plan) -> plan.getPlan().getTotalDurationMinutes())
+                             .thenComparing(plan -> plan.getSpot().getId()));
+        return new ArrayList<>(plans.subList(0, Math.min(plans.size(), limit)));
+    }
+    
+    // One search from the origin's stops to the whole network, pruned at the budget. Spots
+    // are reached from any stop in the stop-to-spot access table or on foot from the origin
+    private ReachableSet planReachable(double fromLat, double fromLng, int budgetSeconds) {
+        SpotAccessIndex.Table access = spotAccessIndex.current();
+        TransitNetwork network = access.network();
+        
+        List<BusStop> originStops = findNearbyBusStops(fromLat, fromLng, 0.5);
+        int[] accessStops = new int[originStops.size()];
+        int[] accessSeconds = new int[originStops.size()];
+        int accessCount = 0;
+        for (BusStop stop : originStops) {
+            int index = network.indexOfStop(stop.getId());
+            int walkSeconds = SpotAccessIndex.walkSeconds(
+                    calculateDistance(fromLat, fromLng, stop.getLatitude(), stop.getLongitude()));
+            if (index >= 0 && walkSeconds <= budgetSeconds) {
+                accessStops[accessCount] = index;
+                accessSeconds[accessCount++] = walkSeconds;
+            }
+        }
+        JourneyPlanner.Reach reach = journeyPlanner.planToAll(network, Arrays.copyOf(accessStops, accessCount),
+                                                              Arrays.copyOf(accessSeconds, accessCount), budgetSeconds);
+        
+        Map<String, Integer> walkable = new HashMap<>();
+        double walkRadiusKm = Math.min(spotAccessIndex.getRadiusKm(), walkKm(budgetSeconds));
+        for (TouristSpotSummary spot : touristSpotIndex.findWithinRadius(fromLat, fromLng, walkRadiusKm,
+                                                                         null, null, -1, null, access.spotCount())) {
+            walkable.put(spot.getId(), SpotAccessIndex.walkSeconds(spot.getDistanceKm()));
+        }
+        int[] spotArrival = new int[access.spotCount()];
+        int[] spotLegs = new int[access.spotCount()];
+        Arrays.fill(spotArrival, -1);
+        for (int spot = 0; spot < access.spotCount(); spot++) {
+            Integer walkSeconds = walkable.get(access.spot(spot).getId());
+            if (walkSeconds != null && walkSeconds <= budgetSeconds) {
+                spotArrival[spot] = walkSeconds;
+                spotLegs[spot] = 0;
+            }
+        }
+        
+        // Arrival in the high half, index in the low half, spots flagged by bit 31, so one
+        // primitive sort orders every place
+        long[] order = new long[network.stopCount() + access.spotCount()];
+        int count = 0;
+        for (int stop = 0; stop < network.stopCount(); stop++) {
+            if (!reach.reached(stop)) {
+                continue;
+            }
+            order[count++] = (long) reach.arrivalSeconds(stop) << 32 | stop;
+            for (int slot = access.firstSpotSlot(stop); slot < access.endSpotSlot(stop); slot++) {
+                int spot = access.slotSpot(slot);
+                int arrival = reach.arrivalSeconds(stop) + access.slotSpotWalkSeconds(slot);
+                if (arrival <= budgetSeconds && (spotArrival[spot] < 0 || arrival < spotArrival[spot])) {
+                    spotArrival[spot] = arrival;
+                    spotLegs[spot] = reach.legs(stop);
+                }
+            }
+        }
+        for (int spot = 0; spot < access.spotCount(); spot++) {
+            if (spotArrival[spot] >= 0) {
+                order[count++] = (long) spotArrival[spot] << 32 | SPOT_FLAG | spot;
+            }
+        }
+        order = Arrays.copyOf(order, count);
+        Arrays.sort(order);
+        return new ReachableSet(access, reach, spotArrival, spotLegs, order);
+    }
+    
+    private static boolean matches(TouristSpotSummary spot, String category, Double minRating) {
+        return (category == null || category.equalsIgnoreCase(spot.getCategory()))
+            && (minRating == null || (spot.getRating() != null && spot.getRating() >= minRating));
+    }
+    
+    private static double walkKm(int seconds) {
+        return seconds / 3600.0 * SpotAccessIndex.WALK_SPEED_KMH;
+    }
+    
     public List<BusStop> findNearbyBusStops(Double latitude, Double longitude, Double radiusKm) {
-        return busStopRepository.findAll().stream()
-                .filter(stop -> calculateDistance(latitude, longitude, 
-                                                stop.getLatitude(), stop.getLongitude()) <= radiusKm)
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        List<BusStop> stops = stopSpatialIndex.findWithinRadius(latitude, longitude, radiusKm);
+        nearbyScanTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        nearbyStopsSummary.record(stops.size());
+        return stops;
+    }
+    
+    public List<BusStop> findNearestBusStops(Double latitude, Double longitude, Integer limit) {
+        return stopSpatialIndex.findNearest(latitude, longitude, Math.max(0, Math.min(limit, MAX_NEAREST_STOPS)));
     }
     
     private List<String> findCommonRoutes(BusStop stop1, BusStop stop2) {
-        return stop1.getBusRoutes().stream()
-                .filter(route -> stop2.getBusRoutes().contains(route))
-                .collect(Collectors.toList());
+        return stopSpatialIndex.findCommonRoutes(stop1.getId(), stop2.getId());
     }
     
-    private RoutePlan createDirectRoutePlan(BusStop originStop, BusStop destStop, String routeNumber) {
+    private Timer planTimer(String type) {
+        return Timer.builder("citybus.route.plan")
+                .description("Time to plan routes on a cache miss")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10000))
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(meterRegistry);
+    }
+    
+    private Counter plansBuiltCounter(String type) {
+        return Counter.builder("citybus.route.plans.built")
+                .description("Candidate plans built before ranking")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+    
+    private RoutePlan createDirectRoutePlan(TransitNetwork network, DirectCandidate candidate) {
         List<RouteSegment> segments = new ArrayList<>();
         
         // Walking segment to origin stop
-        RouteSegment walkToOrigin = new RouteSegment();
-        walkToOrigin.setType("walk");
-        walkToOrigin.setDurationMinutes(3);
-        walkToOrigin.setDistanceKm(0.2);
-        segments.add(walkToOrigin);
+        segments.add(createWalkSegment(toMinutes(candidate.accessSeconds), walkKm(candidate.accessSeconds)));
         
         // Bus segment
         RouteSegment busSegment = new RouteSegment();
         busSegment.setType("bus");
-        busSegment.setBusNumber(routeNumber);
-        busSegment.setRouteName(getRouteNameByNumber(routeNumber));
-        busSegment.setStartStop(originStop);
-        busSegment.setEndStop(destStop);
-        busSegment.setDurationMinutes(calculateBusTravelTime(originStop, destStop));
-        busSegment.setDistanceKm(calculateDistance(originStop.getLatitude(), originStop.getLongitude(),
-                                                  destStop.getLatitude(), destStop.getLongitude()));
+        busSegment.setBusNumber(candidate.routeNumber);
+        busSegment.setRouteName(getRouteNameByNumber(network, candidate.routeNumber));
+        busSegment.setStartStop(candidate.originStop);
+        busSegment.setEndStop(candidate.destStop);
+        busSegment.setDurationMinutes(Math.max(1, toMinutes(candidate.rideSeconds)));
+        busSegment.setWaitMinutes(toMinutes(candidate.waitSeconds));
+        busSegment.setDistanceKm(calculateDistance(candidate.originStop.getLatitude(),
+                                                  candidate.originStop.getLongitude(),
+                                                  candidate.destStop.getLatitude(),
+                                                  candidate.destStop.getLongitude()));
         segments.add(busSegment);
         
         // Walking segment from destination stop
-        RouteSegment walkFromDest = new RouteSegment();
-        walkFromDest.setType("walk");
-        walkFromDest.setDurationMinutes(2);
-        walkFromDest.setDistanceKm(0.1);
-        segments.add(walkFromDest);
+        segments.add(createWalkSegment(toMinutes(candidate.egressSeconds), walkKm(candidate.egressSeconds)));
         
         RoutePlan plan = new RoutePlan();
-        plan.setId("direct_" + System.currentTimeMillis());
+        // Same choice, same id: the route and the two stops identify a direct plan
+        plan.setId("direct_" + candidate.routeNumber + "_" + candidate.originStop.getId()
+                   + "_" + candidate.destStop.getId());
         plan.setSegments(segments);
-        plan.setTotalDurationMinutes(segments.stream().mapToInt(RouteSegment::getDurationMinutes).sum());
+        plan.setTotalDurationMinutes(totalMinutes(segments));
         plan.setTotalDistanceKm(segments.stream().mapToDouble(RouteSegment::getDistanceKm).sum());
         plan.setTransferCount(0);
-        plan.setEstimatedFare(15.0); // Base fare
+        plan.setEstimatedFare(DIRECT_FARE_CENTS / 100.0); // Base fare
         
         return plan;
     }
     
-    private List<RoutePlan> findTransferRoutesWithOneTransfer(BusStop originStop, BusStop destStop) {
-        List<RoutePlan> routes = new ArrayList<>();
-        
-        // Find potential transfer stops
-        List<BusStop> allStops = busStopRepository.findAll();
-        
-        for (BusStop transferStop : allStops) {
-            // Check if there's a route from origin to transfer stop
-            List<String> firstLegRoutes = findCommonRoutes(originStop, transferStop);
-            // Check if there's a route from transfer stop to destination
-            List<String> secondLegRoutes = findCommonRoutes(transferStop, destStop);
-            
-            if (!firstLegRoutes.isEmpty() && !secondLegRoutes.isEmpty()) {
-                RoutePlan transferRoute = createTransferRoutePlan(
-                    originStop, transferStop, destStop,
-                    firstLegRoutes.get(0), secondLegRoutes.get(0));
-                if (transferRoute != null) {
-                    routes.add(transferRoute);
-                }
+    // Fills the network index of each stop in the network and the walk to it from the point;
+    // returns how many
+    private int walkToStops(TransitNetwork network, List<BusStop> stops, double lat, double lng,
+                            int[] indexes, int[] walkSeconds) {
+        int count = 0;
+        for (BusStop stop : stops) {
+            int index = network.indexOfStop(stop.getId());
+            if (index >= 0) {
+                indexes[count] = index;
+                walkSeconds[count++] = SpotAccessIndex.walkSeconds(
+                        calculateDistance(lat, lng, stop.getLatitude(), stop.getLongitude()));
             }
         }
-        
-        return routes;
+        return count;
     }
     
-    private RoutePlan createTransferRoutePlan(BusStop originStop, BusStop transferStop, 
-                                            BusStop destStop, String firstRoute, String secondRoute) {
+    private RoutePlan createJourneyRoutePlan(TransitNetwork network, Journey journey,
+                                             double accessKm, double egressKm) {
         List<RouteSegment> segments = new ArrayList<>();
         
         // Walk to origin stop
-        segments.add(createWalkSegment(3, 0.2));
-        
-        // First bus segment
-        RouteSegment firstBus = new RouteSegment();
-        firstBus.setType("bus");
-        firstBus.setBusNumber(firstRoute);
-        firstBus.setRouteName(getRouteNameByNumber(firstRoute));
-        firstBus.setStartStop(originStop);
-        firstBus.setEndStop(transferStop);
-        firstBus.setDurationMinutes(calculateBusTravelTime(originStop, transferStop));
-        firstBus.setDistanceKm(calculateDistance(originStop.getLatitude(), originStop.getLongitude(),
-                                               transferStop.getLatitude(), transferStop.getLongitude()));
-        segments.add(firstBus);
-        
-        // Transfer walk
-        segments.add(createWalkSegment(5, 0.1));
-        
-        // Second bus segment
-        RouteSegment secondBus = new RouteSegment();
-        secondBus.setType("bus");
-        secondBus.setBusNumber(secondRoute);
-        secondBus.setRouteName(getRouteNameByNumber(secondRoute));
-        secondBus.setStartStop(transferStop);
-        secondBus.setEndStop(destStop);
-        secondBus.setDurationMinutes(calculateBusTravelTime(transferStop, destStop));
-        secondBus.setDistanceKm(calculateDistance(transferStop.getLatitude(), transferStop.getLongitude(),
-                                                destStop.getLatitude(), destStop.getLongitude()));
-        segments.add(secondBus);
+        segments.add(createWalkSegment(toMinutes(journey.getAccessSeconds()), accessKm));
+        int elapsedSeconds = journey.getAccessSeconds();
+        // Named after its legs like direct plans, so the same journey keeps the same id
+        StringBuilder id = new StringBuilder("transfer");
+        
+        for (int i = 0; i < journey.getLegs().size(); i++) {
+            Journey.Leg leg = journey.getLegs().get(i);
+            id.append('_').append(network.routeNumber(leg.getRoute()))
+              .append('_').append(network.stop(leg.getBoardStop()).getId())
+              .append('_').append(network.stop(leg.getAlightStop()).getId());
+            if (i > 0) {
+                // Transfer walk, longer when the next bus leaves from a neighbouring stop
+                int transferMinutes = TRANSFER_WALK_MINUTES + toMinutes(leg.getTransferWalkSeconds());
+                segments.add(createWalkSegment(transferMinutes, leg.getTransferWalkSeconds() > 0
+                                                                ? walkKm(leg.getTransferWalkSeconds()) : 0.1));
+                elapsedSeconds += transferMinutes * 60;
+            }
+            
+            // Wait for the next predicted bus after reaching the stop, then ride
+            int waitSeconds = etaEngine.waitSeconds(network, leg.getPattern(), leg.getBoardPosition(), elapsedSeconds);
+            int rideSeconds = etaEngine.rideSeconds(network, leg.getPattern(), leg.getBoardPosition(),
+                                                    leg.getAlightPosition());
+            elapsedSeconds += waitSeconds + rideSeconds;
+            
+            RouteSegment busSegment = new RouteSegment();
+            busSegment.setType("bus");
+            busSegment.setBusNumber(network.routeNumber(leg.getRoute()));
+            busSegment.setRouteName(network.routeName(leg.getRoute()));
+            busSegment.setStartStop(network.stop(leg.getBoardStop()));
+            busSegment.setEndStop(network.stop(leg.getAlightStop()));
+            busSegment.setDurationMinutes(Math.max(1, toMinutes(rideSeconds)));
+            busSegment.setWaitMinutes(toMinutes(waitSeconds));
+            busSegment.setDistanceKm(leg.getRideKm());
+            segments.add(busSegment);
+        }
         
         // Walk from destination stop
-        segments.add(createWalkSegment(2, 0.1));
+        segments.add(createWalkSegment(toMinutes(journey.getEgressSeconds()), egressKm));
         
         RoutePlan plan = new RoutePlan();
-        plan.setId("transfer_" + System.currentTimeMillis());
+        plan.setId(id.toString());
         plan.setSegments(segments);
-        plan.setTotalDurationMinutes(segments.stream().mapToInt(RouteSegment::getDurationMinutes).sum());
+        plan.setTotalDurationMinutes(totalMinutes(segments));
         plan.setTotalDistanceKm(segments.stream().mapToDouble(RouteSegment::getDistanceKm).sum());
-        plan.setTransferCount(1);
-        plan.setEstimatedFare(25.0); // Base fare + transfer fee
+        plan.setTransferCount(journey.getTransferCount());
+        plan.setEstimatedFare(15.0 + 10.0 * journey.getTransferCount()); // Base fare + transfer fees
         
         return plan;
     }
     
+    private RoutePlan createWalkRoutePlan(String spotId, int walkSeconds, double distanceKm) {
+        List<RouteSegment> segments = new ArrayList<>();
+        segments.add(createWalkSegment(Math.max(1, toMinutes(walkSeconds)), distanceKm));
+        
+        RoutePlan plan = new RoutePlan();
+        plan.setId("walk_" + spotId);
+        plan.setSegments(segments);
+        plan.setTotalDurationMinutes(totalMinutes(segments));
+        plan.setTotalDistanceKm(distanceKm);
+        plan.setTransferCount(0);
+        plan.setEstimatedFare(0.0);
+        return plan;
+    }
+    
+    // Walking, waiting and riding time
+    private static int totalMinutes(List<RouteSegment> segments) {
+        int total = 0;
+        for (RouteSegment segment : segments) {
+            total += segment.getDurationMinutes();
+            if (segment.getWaitMinutes() != null) {
+                total += segment.getWaitMinutes();
+            }
+        }
+        return total;
+    }
+    
+    private static int toMinutes(int seconds) {
+        return Math.max(0, (seconds + 59) / 60);
+    }
+    
     private RouteSegment createWalkSegment(int duration, double distance) {
         RouteSegment segment = new RouteSegment();
         segment.setType("walk");
@@ -256,10 +783,9 @@ public class RouteService {
         return segment;
     }
     
-    private String getRouteNameByNumber(String routeNumber) {
-        // This would typically query the database
-        // For demo purposes, return a sample route name
-        return "Route " + routeNumber;
+    private String getRouteNameByNumber(TransitNetwork network, String routeNumber) {
+        String name = network.routeName(routeNumber);
+        return name != null ? name : "Route " + routeNumber;
     }
     
     private int calculateBusTravelTime(BusStop from, BusStop to) {
@@ -270,17 +796,175 @@ public class RouteService {
     }
     
     private double calculateDistance(double lat1, double lng1, double lat2, double lng2) {
-        final int EARTH_RADIUS = 6371; // kilometers
+        return GeoUtils.distanceKm(lat1, lng1, lat2, lng2);
+    }
+    
+    // Ranking of direct plans; ties fall to the other measures, then to stop ids
+    public enum DirectCriterion {
+        FASTEST(RoutePlanCache.QueryType.DIRECT),
+        LEAST_WALKING(RoutePlanCache.QueryType.DIRECT_LEAST_WALKING),
+        // Every ride costs the same base fare, so the cheapest plans are the fastest ones
+        CHEAPEST(RoutePlanCache.QueryType.DIRECT);
+        
+        private final RoutePlanCache.QueryType queryType;
+        
+        DirectCriterion(RoutePlanCache.QueryType queryType) {
+            this.queryType = queryType;
+        }
+        
+        // "fastest", "least-walking", "cheapest"; throws IllegalArgumentException otherwise
+        public static DirectCriterion parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+        
+        private int primary(int totalSeconds, int walkSeconds) {
+            return this == LEAST_WALKING ? walkSeconds : totalSeconds;
+        }
+        
+        private int secondary(int totalSeconds, int walkSeconds) {
+            return this == LEAST_WALKING ? totalSeconds : walkSeconds;
+        }
+        
+        // Smallest primary measure a candidate with this walk can reach
+        private int lowerBound(int walkSeconds) {
+            return walkSeconds;
+        }
+    }
+    
+    private static final class DirectCandidate {
+        private static final Comparator<DirectCandidate> ORDER =
+                Comparator.comparingInt((DirectCandidate candidate) -> candidate.primary)
+                          .thenComparingInt(candidate -> candidate.secondary)
+                          .thenComparing(candidate -> candidate.routeNumber)
+                          .thenComparing(candidate -> candidate.originStop.getId())
+                          .thenComparing(candidate -> candidate.destStop.getId());
+        
+        private final String routeNumber;
+        private final BusStop originStop;
+        private final BusStop destStop;
+        private final int accessSeconds;
+        private final int waitSeconds;
+        private final int rideSeconds;
+        private final int egressSeconds;
+        private final int primary;
+        private final int secondary;
+        
+        private DirectCandidate(DirectCriterion criterion, String routeNumber, BusStop originStop, BusStop destStop,
+                                int accessSeconds, int waitSeconds, int rideSeconds, int egressSeconds) {
+            this.routeNumber = routeNumber;
+            this.originStop = originStop;
+            this.destStop = destStop;
+            this.accessSeconds = accessSeconds;
+            this.waitSeconds = waitSeconds;
+            this.rideSeconds = rideSeconds;
+            this.egressSeconds = egressSeconds;
+            int walkSeconds = accessSeconds + egressSeconds;
+            int totalSeconds = walkSeconds + waitSeconds + rideSeconds;
+            this.primary = criterion.primary(totalSeconds, walkSeconds);
+            this.secondary = criterion.secondary(totalSeconds, walkSeconds);
+        }
+    }
+    
+    private static final class ReachableSet {
+        private final SpotAccessIndex.Table access;
+        private final JourneyPlanner.Reach reach;
+        private final int[] spotArrival;
+        private final int[] spotLegs;
+        private final long[] order;
+        
+        private ReachableSet(SpotAccessIndex.Table access, JourneyPlanner.Reach reach,
+                             int[] spotArrival, int[] spotLegs, long[] order) {
+            this.access = access;
+            this.reach = reach;
+            this.spotArrival = spotArrival;
+            this.spotLegs = spotLegs;
+            this.order = order;
+        }
+        
+        private ReachablePlace place(long entry) {
+            int index = (int) (entry & (SPOT_FLAG - 1));
+            if ((entry & SPOT_FLAG) != 0) {
+                TouristSpotSummary spot = access.spot(index);
+                return new ReachablePlace("spot", spot.getId(), spot.getName(), spot.getLatitude(),
+                                          spot.getLongitude(), spotArrival[index], spotLegs[index]);
+            }
+            BusStop stop = reach.network().stop(index);
+            return new ReachablePlace("stop", stop.getId(), stop.getName(), stop.getLatitude(),
+                                      stop.getLongitude(), reach.arrivalSeconds(index), reach.legs(index));
+        }
+    }
+    
+    private static final class SpotOption {
+        private final TouristSpotSummary spot;
+        private final Journey journey;
+        private final int scheduledSeconds;
+        
+        private SpotOption(TouristSpotSummary spot, Journey journey, int scheduledSeconds) {
+            this.spot = spot;
+            this.journey = journey;
+            this.scheduledSeconds = scheduledSeconds;
+        }
+    }
+    
+    public static class TouristSpotPlan {
+        private TouristSpotSummary spot;
+        private RoutePlan plan;
+        
+        public TouristSpotPlan() {}
+        
+        public TouristSpotPlan(TouristSpotSummary spot, RoutePlan plan) {
+            this.spot = spot;
+            this.plan = plan;
+        }
+        
+        public TouristSpotSummary getSpot() { return spot; }
+        public void setSpot(TouristSpotSummary spot) { this.spot = spot; }
+        
+        public RoutePlan getPlan() { return plan; }
+        public void setPlan(RoutePlan plan) { this.plan = plan; }
+    }
+    
+    public static class ReachablePlace {
+        private String type;
+        private String id;
+        private String name;
+        private Double latitude;
+        private Double longitude;
+        private int arrivalSeconds;
+        private int busLegs;
+        
+        public ReachablePlace() {}
+        
+        public ReachablePlace(String type, String id, String name, Double latitude, Double longitude,
+                              int arrivalSeconds, int busLegs) {
+            this.type = type;
+            this.id = id;
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.arrivalSeconds = arrivalSeconds;
+            this.busLegs = busLegs;
+        }
+        
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
         
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLng = Math.toRadians(lng2 - lng1);
+        public Double getLatitude() { return latitude; }
+        public void setLatitude(Double latitude) { this.latitude = latitude; }
         
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        public Double getLongitude() { return longitude; }
+        public void setLongitude(Double longitude) { this.longitude = longitude; }
         
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        public int getArrivalSeconds() { return arrivalSeconds; }
+        public void setArrivalSeconds(int arrivalSeconds) { this.arrivalSeconds = arrivalSeconds; }
         
-        return EARTH_RADIUS * c;
+        public int getBusLegs() { return busLegs; }
+        public void setBusLegs(int busLegs) { this.busLegs = busLegs; }
     }
 }
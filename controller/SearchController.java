@@ -0,0 +1,24 @@
+// controller/SearchController.java
+package com.citybusapp.controller;
+
+import com.citybusapp.service.SearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+// Typeahead across buses, routes and stops in one round trip
+@RestController
+@RequestMapping("/api/search")
+@CrossOrigin(origins = "*")
+public class SearchController {
+    
+    @Autowired
+    private SearchIndex searchIndex;
+    
+    @GetMapping
+    public ResponseEntity<SearchIndex.SearchResults> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(searchIndex.search(q, Math.min(limit, 100)));
+    }
+}
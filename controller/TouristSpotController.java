@@ -6,8 +6,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/tourist-spots")
 @CrossOrigin(origins = "*")
@@ -16,18 +14,44 @@ public class TouristSpotController {
     @Autowired
     private TouristSpotService touristSpotService;
     
+    // Pages of spot summaries in id order; pass nextCursor back to get the following page
     @GetMapping
-    public ResponseEntity<List<TouristSpot>> getAllTouristSpots() {
-        return ResponseEntity.ok(touristSpotService.getAllTouristSpots());
+    public ResponseEntity<TouristSpotService.SpotPage> getTouristSpots(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return ResponseEntity.ok(touristSpotService.getTouristSpots(category, minRating, limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
     
+    // Spots within radiusKm, or the k nearest when k is given; nearest first
     @GetMapping("/nearby")
-    public ResponseEntity<List<TouristSpot>> getNearbySpots(
+    public ResponseEntity<TouristSpotService.SpotPage> getNearbySpots(
             @RequestParam Double latitude,
             @RequestParam Double longitude,
-            @RequestParam(defaultValue = "5.0") Double radiusKm) {
-        return ResponseEntity.ok(
-            touristSpotService.findNearbySpots(latitude, longitude, radiusKm));
+            @RequestParam(defaultValue = "5.0") Double radiusKm,
+            @RequestParam(required = false) Integer k,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return ResponseEntity.ok(touristSpotService.findNearbySpots(
+                latitude, longitude, radiusKm, k, category, minRating, limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // Full spot including description and image
+    @GetMapping("/{id}")
+    public ResponseEntity<TouristSpot> getTouristSpot(@PathVariable String id) {
+        TouristSpot spot = touristSpotService.getTouristSpot(id);
+        return spot != null ? ResponseEntity.ok(spot) : ResponseEntity.notFound().build();
     }
 }
 
@@ -35,42 +59,135 @@ public class TouristSpotController {
 package com.citybusapp.service;
 
 import com.citybusapp.model.TouristSpot;
+import com.citybusapp.model.TouristSpotSummary;
 import com.citybusapp.repository.TouristSpotRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
+// Lists and nearby searches are served from TouristSpotIndex and paged with opaque
+// cursors holding the last item's sort key, so pages stay consistent and cheap however
+// deep the client goes.
 @Service
 public class TouristSpotService {
     
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_NEAREST = 500;
+    
+    private static final String LIST_CURSOR = "l";
+    private static final String NEARBY_CURSOR = "n";
+    
     @Autowired
     private TouristSpotRepository touristSpotRepository;
     
-    public List<TouristSpot> getAllTouristSpots() {
-        return touristSpotRepository.findAll();
-    }
+    @Autowired
+    private TouristSpotIndex touristSpotIndex;
     
-    public List<TouristSpot> findNearbySpots(Double latitude, Double longitude, Double radiusKm) {
-        return touristSpotRepository.findAll().stream()
-            .filter(spot -> calculateDistance(latitude, longitude, 
-                                            spot.getLatitude(), spot.getLongitude()) <= radiusKm)
-            .collect(Collectors.toList());
+    public SpotPage getTouristSpots(String category, Double minRating, int limit, String cursor) {
+        int size = pageSize(limit);
+        String afterId = cursor != null ? decodeCursor(cursor, LIST_CURSOR)[0] : null;
+        List<TouristSpotSummary> spots = touristSpotIndex.list(category, minRating, afterId, size + 1);
+        return pageOf(spots, size, last -> encodeCursor(LIST_CURSOR, last.getId()));
     }
     
-    private double calculateDistance(double lat1, double lng1, double lat2, double lng2) {
-        final int EARTH_RADIUS = 6371; // kilometers
+    // Radius mode unless k is given, in which case the k nearest matching spots are paged
+    public SpotPage findNearbySpots(double latitude, double longitude, double radiusKm, Integer k,
+                                    String category, Double minRating, int limit, String cursor) {
+        int size = pageSize(limit);
+        double afterDistanceKm = -1;
+        String afterId = null;
+        if (cursor != null) {
+            String[] position = decodeCursor(cursor, NEARBY_CURSOR);
+            try {
+                afterDistanceKm = Double.longBitsToDouble(Long.parseUnsignedLong(position[0], 16));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor", e);
+            }
+            afterId = position[1];
+        }
         
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLng = Math.toRadians(lng2 - lng1);
+        List<TouristSpotSummary> spots;
+        if (k != null) {
+            List<TouristSpotSummary> nearest = touristSpotIndex.findNearest(
+                    latitude, longitude, Math.max(0, Math.min(k, MAX_NEAREST)), category, minRating);
+            spots = new ArrayList<>();
+            for (TouristSpotSummary spot : nearest) {
+                if (spots.size() > size) {
+                    break;
+                }
+                double distance = spot.getDistanceKm();
+                if (afterId == null || distance > afterDistanceKm
+                        || (distance == afterDistanceKm && spot.getId().compareTo(afterId) > 0)) {
+                    spots.add(spot);
+                }
+            }
+        } else {
+            spots = touristSpotIndex.findWithinRadius(latitude, longitude, radiusKm, category, minRating,
+                                                      afterDistanceKm, afterId, size + 1);
+        }
         
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return pageOf(spots, size, last -> encodeCursor(NEARBY_CURSOR,
+                Long.toHexString(Double.doubleToLongBits(last.getDistanceKm())), last.getId()));
+    }
+    
+    public TouristSpot getTouristSpot(String id) {
+        return touristSpotRepository.findById(id).orElse(null);
+    }
+    
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+    
+    // Spots are fetched with one extra item, which only signals that another page exists
+    private static SpotPage pageOf(List<TouristSpotSummary> spots, int size,
+                                   Function<TouristSpotSummary, String> cursorOf) {
+        SpotPage page = new SpotPage();
+        if (spots.size() > size) {
+            page.setItems(new ArrayList<>(spots.subList(0, size)));
+            page.setNextCursor(cursorOf.apply(spots.get(size - 1)));
+        } else {
+            page.setItems(spots);
+        }
+        return page;
+    }
+    
+    private static String encodeCursor(String type, String... parts) {
+        String raw = type + ":" + String.join(":", parts);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // Ids may contain ':', so the id is always the last part and split off last
+    private static String[] decodeCursor(String cursor, String type) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+        int parts = LIST_CURSOR.equals(type) ? 1 : 2;
+        String[] split = raw.split(":", parts + 1);
+        if (split.length != parts + 1 || !split[0].equals(type)) {
+            throw new IllegalArgumentException("Cursor does not belong to this query");
+        }
+        String[] position = new String[parts];
+        System.arraycopy(split, 1, position, 0, parts);
+        return position;
+    }
+    
+    public static class SpotPage {
+        private List<TouristSpotSummary> items = new ArrayList<>();
+        private String nextCursor;
         
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        public List<TouristSpotSummary> getItems() { return items; }
+        public void setItems(List<TouristSpotSummary> items) { this.items = items; }
         
-        return EARTH_RADIUS * c;
-    }
+        // Null on the last page
+        public String getNextCursor() { return nextCursor; }
+        public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    }
 }
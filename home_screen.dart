@@ -115,7 +115,7 @@ class _HomeScreenState extends State<HomeScreen> {
             icon: BitmapDescriptor.defaultMarkerWithHue(BitmapDescriptor.hueGreen),
             infoWindow: InfoWindow(
               title: spot.name,
-              snippet: spot.description,
+              snippet: spot.category,
             ),
             onTap: () => _showTouristSpotDetails(spot),
           ),
@@ -131,10 +131,17 @@ class _HomeScreenState extends State<HomeScreen> {
     );
   }
 
+  // The list only carries a summary: the sheet shows it at once and switches to the
+  // full spot (description, image) when it arrives, keeping the summary on error
   void _showTouristSpotDetails(TouristSpot spot) {
+    final details = Provider.of<BusService>(context, listen: false)
+        .loadTouristSpotDetails(spot.id);
     showModalBottomSheet(
       context: context,
-      builder: (context) => TouristSpotDetails(spot: spot),
+      builder: (context) => FutureBuilder<TouristSpot?>(
+        future: details,
+        builder: (context, snapshot) => TouristSpotDetails(spot: snapshot.data ?? spot),
+      ),
     );
   }
 
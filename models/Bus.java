@@ -66,10 +66,21 @@ package com.citybusapp.controller;
 
 import com.citybusapp.model.Bus;
 import com.citybusapp.service.BusService;
+import com.citybusapp.service.BusStreamFilter;
+import com.citybusapp.service.FleetSimulator;
+import com.citybusapp.service.LocationIngestPipeline;
+import com.citybusapp.service.PositionHistoryStore;
+import com.citybusapp.service.StopGeofenceDetector;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @RestController
@@ -80,6 +91,9 @@ public class BusController {
     @Autowired
     private BusService busService;
     
+    @Autowired
+    private FleetSimulator fleetSimulator;
+    
     @GetMapping
     public ResponseEntity<List<Bus>> getAllBuses() {
         return ResponseEntity.ok(busService.getAllBuses());
@@ -90,19 +104,99 @@ public class BusController {
         return ResponseEntity.ok(busService.searchByNumber(number));
     }
     
+    // Server-Sent Events: one "snapshot" event, then "delta" events for buses matching the filter
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBuses(
+            @RequestParam(required = false) Double minLat,
+            @RequestParam(required = false) Double minLng,
+            @RequestParam(required = false) Double maxLat,
+            @RequestParam(required = false) Double maxLng,
+            @RequestParam(required = false) String route) {
+        return busService.streamBuses(new BusStreamFilter(minLat, minLng, maxLat, maxLng, route));
+    }
+    
+    // Recorded movement in [from, to) as the same events as /stream, played back at speed
+    // times real time; 503 when too many replays are running
+    @GetMapping(value = "/replay", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> replayBuses(
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(defaultValue = "1") double speed,
+            @RequestParam(required = false) Double minLat,
+            @RequestParam(required = false) Double minLng,
+            @RequestParam(required = false) Double maxLat,
+            @RequestParam(required = false) Double maxLng,
+            @RequestParam(required = false) String route) {
+        try {
+            BusStreamFilter filter = new BusStreamFilter(minLat, minLng, maxLat, maxLng, route);
+            return ResponseEntity.ok(busService.replayBuses(LocalDateTime.parse(from), LocalDateTime.parse(to),
+                                                            filter, speed));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "60").build();
+        }
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<Bus> getBusById(@PathVariable String id) {
         Bus bus = busService.getBusById(id);
         return bus != null ? ResponseEntity.ok(bus) : ResponseEntity.notFound().build();
     }
     
+    // Recorded positions in [from, to) (ISO local date-times; to defaults to now), oldest first
+    @GetMapping(value = "/{id}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getBusHistory(
+            @PathVariable String id,
+            @RequestParam String from,
+            @RequestParam(required = false) String to) {
+        if (busService.getBusById(id) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            LocalDateTime start = LocalDateTime.parse(from);
+            LocalDateTime end = to != null ? LocalDateTime.parse(to) : LocalDateTime.now();
+            return ResponseEntity.ok(busService.streamPositionHistory(id, start, end));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @PostMapping("/{id}/location")
     public ResponseEntity<Void> updateBusLocation(
             @PathVariable String id,
             @RequestBody LocationUpdateRequest request) {
-        busService.updateBusLocation(id, request.getLatitude(), 
-                                   request.getLongitude(), request.getSpeed());
-        return ResponseEntity.ok().build();
+        if (request.getLatitude() == null || request.getLongitude() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean accepted = busService.updateBusLocation(id, request.getLatitude(), 
+                                                        request.getLongitude(), request.getSpeed());
+        // Accepted for the next batched write; ask the client to back off when the queue is full
+        return accepted
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+    }
+    
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<LocationIngestPipeline.IngestStats> getIngestStats() {
+        return ResponseEntity.ok(busService.getIngestStats());
+    }
+    
+    @GetMapping("/history/stats")
+    public ResponseEntity<PositionHistoryStore.HistoryStats> getHistoryStats() {
+        return ResponseEntity.ok(busService.getHistoryStats());
+    }
+    
+    // Stop arrivals and departures detected from live positions
+    @GetMapping("/geofence/stats")
+    public ResponseEntity<StopGeofenceDetector.GeofenceStats> getGeofenceStats() {
+        return ResponseEntity.ok(busService.getGeofenceStats());
+    }
+    
+    // Throughput and latency percentiles of the fleet simulation, for capacity planning
+    @GetMapping("/simulation/stats")
+    public ResponseEntity<FleetSimulator.SimulationStats> getSimulationStats() {
+        return ResponseEntity.ok(fleetSimulator.getStats());
     }
     
     public static class LocationUpdateRequest {
@@ -0,0 +1,58 @@
+// model/BusDelta.java
+package com.citybusapp.model;
+
+import java.time.LocalDateTime;
+
+// Change to one bus as seen by a streaming client: either its new position, or a
+// removal when the bus leaves the client's viewport or route filter.
+public class BusDelta {
+    
+    public static final String TYPE_UPDATE = "update";
+    public static final String TYPE_REMOVE = "remove";
+    
+    private String type;
+    private String id;
+    private Double latitude;
+    private Double longitude;
+    private Double speed;
+    private LocalDateTime lastUpdated;
+    
+    public BusDelta() {}
+    
+    public static BusDelta update(Bus bus) {
+        BusDelta delta = new BusDelta();
+        delta.setType(TYPE_UPDATE);
+        delta.setId(bus.getId());
+        delta.setLatitude(bus.getLatitude());
+        delta.setLongitude(bus.getLongitude());
+        delta.setSpeed(bus.getSpeed());
+        delta.setLastUpdated(bus.getLastUpdated());
+        return delta;
+    }
+    
+    public static BusDelta remove(String busId) {
+        BusDelta delta = new BusDelta();
+        delta.setType(TYPE_REMOVE);
+        delta.setId(busId);
+        return delta;
+    }
+    
+    // Getters and Setters
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
+    public Double getLatitude() { return latitude; }
+    public void setLatitude(Double latitude) { this.latitude = latitude; }
+    
+    public Double getLongitude() { return longitude; }
+    public void setLongitude(Double longitude) { this.longitude = longitude; }
+    
+    public Double getSpeed() { return speed; }
+    public void setSpeed(Double speed) { this.speed = speed; }
+    
+    public LocalDateTime getLastUpdated() { return lastUpdated; }
+    public void setLastUpdated(LocalDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
+}
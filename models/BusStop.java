@@ -1,11 +1,14 @@
 // model/BusStop.java
 package com.citybusapp.model;
 
+import com.citybusapp.service.BusStopChangeListener;
+
 import javax.persistence.*;
 import java.util.List;
 
 @Entity
 @Table(name = "bus_stops")
+@EntityListeners(BusStopChangeListener.class)
 public class BusStop {
     @Id
     private String id;
@@ -117,6 +120,7 @@ public class RouteSegment {
     
     private Integer durationMinutes;
     private Double distanceKm;
+    private Integer waitMinutes; // predicted wait before boarding; bus segments only
     
     // Constructors, getters, setters
     public RouteSegment() {}
@@ -145,15 +149,21 @@ public class RouteSegment {
     
     public Double getDistanceKm() { return distanceKm; }
     public void setDistanceKm(Double distanceKm) { this.distanceKm = distanceKm; }
+    
+    public Integer getWaitMinutes() { return waitMinutes; }
+    public void setWaitMinutes(Integer waitMinutes) { this.waitMinutes = waitMinutes; }
 }
 
 // model/TouristSpot.java
 package com.citybusapp.model;
 
+import com.citybusapp.service.TouristSpotChangeListener;
+
 import javax.persistence.*;
 
 @Entity
 @Table(name = "tourist_spots")
+@EntityListeners(TouristSpotChangeListener.class)
 public class TouristSpot {
     @Id
     private String id;
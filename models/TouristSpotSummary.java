@@ -0,0 +1,52 @@
+// model/TouristSpotSummary.java
+package com.citybusapp.model;
+
+// List view of a tourist spot. Description and image are left out to keep list and
+// nearby responses small; clients fetch them per spot from /api/tourist-spots/{id}.
+public class TouristSpotSummary {
+    
+    private String id;
+    private String name;
+    private Double latitude;
+    private Double longitude;
+    private String category;
+    private Double rating;
+    
+    // Distance from the query point; null outside nearby searches
+    private Double distanceKm;
+    
+    public TouristSpotSummary() {}
+    
+    public TouristSpotSummary(String id, String name, Double latitude, Double longitude,
+                              String category, Double rating, Double distanceKm) {
+        this.id = id;
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.category = category;
+        this.rating = rating;
+        this.distanceKm = distanceKm;
+    }
+    
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    
+    public Double getLatitude() { return latitude; }
+    public void setLatitude(Double latitude) { this.latitude = latitude; }
+    
+    public Double getLongitude() { return longitude; }
+    public void setLongitude(Double longitude) { this.longitude = longitude; }
+    
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+    
+    public Double getRating() { return rating; }
+    public void setRating(Double rating) { this.rating = rating; }
+    
+    public Double getDistanceKm() { return distanceKm; }
+    public void setDistanceKm(Double distanceKm) { this.distanceKm = distanceKm; }
+}
@@ -38,34 +38,35 @@ class Bus {
 class TouristSpot {
   final String id;
   final String name;
-  final String description;
   final double latitude;
   final double longitude;
   final String category;
   final double rating;
-  final String imageUrl;
+  // Only present on the detail response (GET /tourist-spots/{id})
+  final String? description;
+  final String? imageUrl;
 
   TouristSpot({
     required this.id,
     required this.name,
-    required this.description,
     required this.latitude,
     required this.longitude,
     required this.category,
     required this.rating,
-    required this.imageUrl,
+    this.description,
+    this.imageUrl,
   });
 
   factory TouristSpot.fromJson(Map<String, dynamic> json) {
     return TouristSpot(
       id: json['id'],
       name: json['name'],
-      description: json['description'],
       latitude: json['latitude'].toDouble(),
       longitude: json['longitude'].toDouble(),
       category: json['category'],
-      rating: json['rating'].toDouble(),
-      imageUrl: json['imageUrl'] ?? '',
+      rating: (json['rating'] ?? 0).toDouble(),
+      description: json['description'],
+      imageUrl: json['imageUrl'],
     );
   }
 }
@@ -0,0 +1,14 @@
+// service/BusDetailsChangedEvent.java
+package com.citybusapp.service;
+
+// Published by LiveBusStore when a bus is added or its number or route name changes
+public class BusDetailsChangedEvent {
+    
+    private final String busId;
+    
+    public BusDetailsChangedEvent(String busId) {
+        this.busId = busId;
+    }
+    
+    public String getBusId() { return busId; }
+}
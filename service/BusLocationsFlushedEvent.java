@@ -0,0 +1,23 @@
+// service/BusLocationsFlushedEvent.java
+package com.citybusapp.service;
+
+import java.util.List;
+
+// Published by LocationIngestPipeline after a batch has been written to the buses table.
+// Holds one ping per bus: the latest one of the batch, for buses that exist. Pings that
+// matched no row (buses without one, such as simulated ones, or older than the stored
+// position) are listed apart, for latency measurements only.
+public class BusLocationsFlushedEvent {
+    
+    private final List<LocationPing> pings;
+    private final List<LocationPing> unmatchedPings;
+    
+    public BusLocationsFlushedEvent(List<LocationPing> pings, List<LocationPing> unmatchedPings) {
+        this.pings = pings;
+        this.unmatchedPings = unmatchedPings;
+    }
+    
+    public List<LocationPing> getPings() { return pings; }
+    
+    public List<LocationPing> getUnmatchedPings() { return unmatchedPings; }
+}
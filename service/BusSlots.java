@@ -0,0 +1,135 @@
+// service/BusSlots.java
+package com.citybusapp.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+// Hands out a slot per bus in a fixed-size arena of per-bus primitive arrays, and guards
+// each slot with one of a few striped locks. When the arena is full, slots of buses not
+// seen for idleMillis are reclaimed (at most one sweep a second), so a fleet that turns
+// over keeps being tracked; until one frees up a new bus simply gets no slot. The owner
+// clears a slot's state in its reset callback whenever the slot is handed to a bus.
+final class BusSlots {
+    
+    static final int NONE = -1;
+    
+    private static final int LOCK_STRIPES = 64;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final int capacity;
+    private final long idleMillis;
+    private final IntConsumer reset;
+    private final String[] owners;
+    private final long[] lastUsed;
+    
+    // Assignment state, guarded by this
+    private final int[] free;
+    private int freeCount;
+    private volatile int used;
+    private long lastSweepAt;
+    
+    BusSlots(int capacity, long idleMillis, IntConsumer reset) {
+        this.capacity = capacity;
+        this.idleMillis = idleMillis;
+        this.reset = reset;
+        this.owners = new String[capacity];
+        this.lastUsed = new long[capacity];
+        this.free = new int[capacity];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    // The bus's slot, assigning one if needed, with its lock held; NONE (and no lock)
+    // when the arena is full. now is the caller's clock reading, taken as the bus's last
+    // use. Release with unlock(slot).
+    int lock(String busId, long now) {
+        return lock(busId, now, true);
+    }
+    
+    // Like lock, but NONE for a bus that has no slot
+    int lockIfTracked(String busId, long now) {
+        return lock(busId, now, false);
+    }
+    
+    void unlock(int slot) {
+        locks[slot % LOCK_STRIPES].unlock();
+    }
+    
+    // Slots below this have been handed out at least once
+    int used() {
+        return used;
+    }
+    
+    int size() {
+        return slots.size();
+    }
+    
+    private int lock(String busId, long now, boolean assign) {
+        while (true) {
+            Integer known = slots.get(busId);
+            int slot = known != null ? known : assign ? assign(busId, now) : NONE;
+            if (slot == NONE) {
+                return NONE;
+            }
+            ReentrantLock lock = locks[slot % LOCK_STRIPES];
+            lock.lock();
+            if (busId.equals(owners[slot])) {
+                lastUsed[slot] = now;
+                return slot;
+            }
+            // Reclaimed between the lookup and the lock; look again
+            lock.unlock();
+        }
+    }
+    
+    private synchronized int assign(String busId, long now) {
+        Integer known = slots.get(busId);
+        if (known != null) {
+            return known;
+        }
+        int slot;
+        if (used < capacity) {
+            slot = used++;
+        } else {
+            if (freeCount == 0 && now - lastSweepAt >= SWEEP_INTERVAL_MILLIS) {
+                sweep(now);
+            }
+            if (freeCount == 0) {
+                return NONE;
+            }
+            slot = free[--freeCount];
+        }
+        ReentrantLock lock = locks[slot % LOCK_STRIPES];
+        lock.lock();
+        try {
+            owners[slot] = busId;
+            lastUsed[slot] = now;
+            reset.accept(slot);
+        } finally {
+            lock.unlock();
+        }
+        slots.put(busId, slot);
+        return slot;
+    }
+    
+    private void sweep(long now) {
+        lastSweepAt = now;
+        for (int slot = 0; slot < capacity; slot++) {
+            ReentrantLock lock = locks[slot % LOCK_STRIPES];
+            lock.lock();
+            try {
+                if (owners[slot] != null && now - lastUsed[slot] > idleMillis) {
+                    slots.remove(owners[slot]);
+                    owners[slot] = null;
+                    free[freeCount++] = slot;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
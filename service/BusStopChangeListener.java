@@ -0,0 +1,29 @@
+// service/BusStopChangeListener.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+// JPA entity listener; instantiated by Hibernate through Spring so it can publish events.
+// Consumers should use @TransactionalEventListener so they only see committed changes.
+public class BusStopChangeListener {
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @PostPersist
+    @PostUpdate
+    public void onSaved(BusStop stop) {
+        eventPublisher.publishEvent(new BusStopChangedEvent(stop.getId(), false));
+    }
+    
+    @PostRemove
+    public void onRemoved(BusStop stop) {
+        eventPublisher.publishEvent(new BusStopChangedEvent(stop.getId(), true));
+    }
+}
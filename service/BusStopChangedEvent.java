@@ -0,0 +1,17 @@
+// service/BusStopChangedEvent.java
+package com.citybusapp.service;
+
+public class BusStopChangedEvent {
+    
+    private final String stopId;
+    private final boolean removed;
+    
+    public BusStopChangedEvent(String stopId, boolean removed) {
+        this.stopId = stopId;
+        this.removed = removed;
+    }
+    
+    public String getStopId() { return stopId; }
+    
+    public boolean isRemoved() { return removed; }
+}
@@ -0,0 +1,315 @@
+// service/BusStreamBroadcaster.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusDelta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+// Pushes live bus positions to Server-Sent Events subscribers. Connections are held by
+// the servlet container's async support, not by a thread each. Updates are conflated:
+// between ticks only the latest state of each bus is kept, globally and per subscriber,
+// so a slow client skips intermediate positions instead of buffering them. Writes run
+// on an SseSendPool; a client whose socket stays blocked past stream.send-timeout-ms
+// is dropped and its EventSource reconnects.
+@Component
+public class BusStreamBroadcaster {
+    
+    // Coarse grid used to find the subscribers whose viewport may contain a bus
+    private static final double CELL_DEGREES = 0.05;
+    private static final int MAX_CELLS_PER_SUBSCRIPTION = 400;
+    
+    @Autowired
+    private LiveBusStore liveBusStore;
+    
+    @Value("${stream.tick-ms:500}")
+    private long tickMs;
+    
+    @Value("${stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+    
+    @Value("${stream.sender-threads:4}")
+    private int senderThreads;
+    
+    @Value("${stream.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+    
+    // Spare senders started in place of threads stuck on a dropped client's socket
+    @Value("${stream.max-stalled-senders:64}")
+    private int maxStalledSenders;
+    
+    // Connections are closed after this long and reopened by the client's EventSource
+    @Value("${stream.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+    
+    private final ConcurrentHashMap<String, Bus> changed = new ConcurrentHashMap<>();
+    
+    // Last broadcast position per bus; only touched by the tick thread
+    private final Map<String, Long> lastCells = new HashMap<>();
+    
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Set<Subscription> unindexed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Set<Subscription>> byCell = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Subscription>> byRoute = new ConcurrentHashMap<>();
+    
+    private final AtomicInteger conflated = new AtomicInteger();
+    
+    private ScheduledExecutorService ticker;
+    private SseSendPool senders;
+    
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bus-stream-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        senders = new SseSendPool("bus-stream-sender", senderThreads, maxStalledSenders, sendTimeoutMs);
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.emitter.complete();
+        }
+    }
+    
+    public SseEmitter subscribe(BusStreamFilter filter) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscription subscription = new Subscription(filter, emitter);
+        emitter.onCompletion(() -> unregister(subscription));
+        emitter.onTimeout(() -> unregister(subscription));
+        emitter.onError(error -> unregister(subscription));
+        
+        // Register before the snapshot so no update can fall between the two
+        register(subscription);
+        
+        List<Bus> snapshot = new ArrayList<>();
+        for (Bus bus : liveBusStore.getAll()) {
+            if (filter.matches(bus)) {
+                snapshot.add(bus);
+                subscription.visible.add(bus.getId());
+            }
+        }
+        try {
+            emitter.send(SseEmitter.event().name("snapshot").data(snapshot));
+        } catch (IOException e) {
+            unregister(subscription);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+    
+    // Called for every applied location update; cheap and non-blocking
+    public void publish(Bus bus) {
+        if (changed.put(bus.getId(), bus) != null) {
+            conflated.incrementAndGet();
+        }
+    }
+    
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+    
+    public int getConflatedCount() {
+        return conflated.get();
+    }
+    
+    public long getSlowSubscriberDrops() {
+        return senders.getAbandonedCount();
+    }
+    
+    private void tick() {
+        try {
+            senders.checkDeadlines();
+            
+            for (String busId : changed.keySet()) {
+                Bus bus = changed.remove(busId);
+                if (bus != null) {
+                    route(bus);
+                }
+            }
+            
+            long now = System.currentTimeMillis();
+            for (Subscription subscription : subscriptions) {
+                boolean due = !subscription.pending.isEmpty() || now - subscription.lastSent >= heartbeatMs;
+                if (due && subscription.sending.compareAndSet(false, true)) {
+                    senders.execute(subscription::flush, subscription::drop);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking; a single bad update must not stop the stream
+        }
+    }
+    
+    private void route(Bus bus) {
+        Long previousCell = lastCells.get(bus.getId());
+        Long currentCell = bus.getLatitude() != null && bus.getLongitude() != null
+                ? cellKey(cellOf(bus.getLatitude()), cellOf(bus.getLongitude()))
+                : null;
+        if (currentCell != null) {
+            lastCells.put(bus.getId(), currentCell);
+        }
+        
+        offerAll(unindexed, bus);
+        if (bus.getNumber() != null) {
+            offerAll(byRoute.get(bus.getNumber().toLowerCase()), bus);
+        }
+        if (currentCell != null) {
+            offerAll(byCell.get(currentCell), bus);
+        }
+        // Viewports the bus just left need a removal
+        if (previousCell != null && !previousCell.equals(currentCell)) {
+            offerAll(byCell.get(previousCell), bus);
+        }
+    }
+    
+    private static void offerAll(Set<Subscription> targets, Bus bus) {
+        if (targets == null) {
+            return;
+        }
+        for (Subscription subscription : targets) {
+            subscription.offer(bus);
+        }
+    }
+    
+    private void register(Subscription subscription) {
+        subscriptions.add(subscription);
+        BusStreamFilter filter = subscription.filter;
+        if (filter.hasRoute()) {
+            byRoute.computeIfAbsent(filter.getRoute().toLowerCase(), k -> ConcurrentHashMap.newKeySet())
+                   .add(subscription);
+        } else if (filter.hasBoundingBox() && cellCount(filter) <= MAX_CELLS_PER_SUBSCRIPTION) {
+            forEachCell(filter, key -> byCell.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet())
+                                             .add(subscription));
+        } else {
+            unindexed.add(subscription);
+        }
+    }
+    
+    private void unregister(Subscription subscription) {
+        if (!subscriptions.remove(subscription)) {
+            return;
+        }
+        unindexed.remove(subscription);
+        BusStreamFilter filter = subscription.filter;
+        if (filter.hasRoute()) {
+            Set<Subscription> set = byRoute.get(filter.getRoute().toLowerCase());
+            if (set != null) {
+                set.remove(subscription);
+            }
+        } else if (filter.hasBoundingBox() && cellCount(filter) <= MAX_CELLS_PER_SUBSCRIPTION) {
+            forEachCell(filter, key -> {
+                Set<Subscription> set = byCell.get(key);
+                if (set != null) {
+                    set.remove(subscription);
+                }
+            });
+        }
+    }
+    
+    private static long cellCount(BusStreamFilter filter) {
+        long rows = cellOf(filter.getMaxLatitude()) - cellOf(filter.getMinLatitude()) + 1L;
+        long cols = cellOf(filter.getMaxLongitude()) - cellOf(filter.getMinLongitude()) + 1L;
+        return Math.max(0, rows) * Math.max(0, cols);
+    }
+    
+    private static void forEachCell(BusStreamFilter filter, LongConsumer action) {
+        for (int lat = cellOf(filter.getMinLatitude()); lat <= cellOf(filter.getMaxLatitude()); lat++) {
+            for (int lng = cellOf(filter.getMinLongitude()); lng <= cellOf(filter.getMaxLongitude()); lng++) {
+                action.accept(cellKey(lat, lng));
+            }
+        }
+    }
+    
+    private static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+    
+    private static long cellKey(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xffffffffL);
+    }
+    
+    private final class Subscription {
+        private final BusStreamFilter filter;
+        private final SseEmitter emitter;
+        private final Set<String> visible = ConcurrentHashMap.newKeySet();
+        // Latest unsent delta per bus; bounded by the fleet size however slow the client is
+        private final ConcurrentHashMap<String, BusDelta> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile long lastSent = System.currentTimeMillis();
+        private volatile boolean dropped;
+        
+        private Subscription(BusStreamFilter filter, SseEmitter emitter) {
+            this.filter = filter;
+            this.emitter = emitter;
+        }
+        
+        private void offer(Bus bus) {
+            if (filter.matches(bus)) {
+                visible.add(bus.getId());
+                if (pending.put(bus.getId(), BusDelta.update(bus)) != null) {
+                    conflated.incrementAndGet();
+                }
+            } else if (visible.remove(bus.getId())) {
+                pending.put(bus.getId(), BusDelta.remove(bus.getId()));
+            }
+        }
+        
+        private void flush() {
+            try {
+                List<BusDelta> batch = new ArrayList<>(pending.size());
+                for (String busId : pending.keySet()) {
+                    BusDelta delta = pending.remove(busId);
+                    if (delta != null) {
+                        batch.add(delta);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    emitter.send(SseEmitter.event().name("delta").data(Collections.unmodifiableList(batch)));
+                }
+                lastSent = System.currentTimeMillis();
+                if (dropped) {
+                    // The write outlived its deadline; the client is gone even though it returned
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                unregister(this);
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+        }
+        
+        // Send deadline passed: stop routing to this client. The emitter is completed by
+        // the stuck send once its write returns or fails
+        private void drop() {
+            dropped = true;
+            unregister(this);
+        }
+    }
+}
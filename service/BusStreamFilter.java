@@ -0,0 +1,56 @@
+// service/BusStreamFilter.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+
+// What a streaming client wants to see: buses inside a bounding box, buses of one
+// route (matched against the bus number), both, or everything when neither is set.
+public class BusStreamFilter {
+    
+    private final Double minLatitude;
+    private final Double minLongitude;
+    private final Double maxLatitude;
+    private final Double maxLongitude;
+    private final String route;
+    
+    public BusStreamFilter(Double minLatitude, Double minLongitude,
+                           Double maxLatitude, Double maxLongitude, String route) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+        this.route = route != null && !route.trim().isEmpty() ? route.trim() : null;
+    }
+    
+    public boolean hasBoundingBox() {
+        return minLatitude != null && minLongitude != null && maxLatitude != null && maxLongitude != null;
+    }
+    
+    public boolean hasRoute() {
+        return route != null;
+    }
+    
+    public boolean matches(Bus bus) {
+        if (route != null && !route.equalsIgnoreCase(bus.getNumber())) {
+            return false;
+        }
+        if (hasBoundingBox()) {
+            if (bus.getLatitude() == null || bus.getLongitude() == null) {
+                return false;
+            }
+            return bus.getLatitude() >= minLatitude && bus.getLatitude() <= maxLatitude
+                && bus.getLongitude() >= minLongitude && bus.getLongitude() <= maxLongitude;
+        }
+        return true;
+    }
+    
+    public Double getMinLatitude() { return minLatitude; }
+    
+    public Double getMinLongitude() { return minLongitude; }
+    
+    public Double getMaxLatitude() { return maxLatitude; }
+    
+    public Double getMaxLongitude() { return maxLongitude; }
+    
+    public String getRoute() { return route; }
+}
@@ -0,0 +1,79 @@
+// service/CellTable.java
+package com.citybusapp.service;
+
+import java.util.Arrays;
+
+// Uniform grid cells mapped to the items in them, in flat arrays: an open-addressing
+// table from cell key to cell, and each cell's items as a run of one shared array. Built
+// once from (cell key, item) pairs; an item may sit in several cells.
+final class CellTable {
+    
+    static final int NONE = -1;
+    
+    private final long[] tableKeys;
+    private final int[] tableCells;
+    private final int tableMask;
+    // A cell's items are items[offsets[cell], offsets[cell + 1])
+    private final int[] offsets;
+    private final int[] items;
+    
+    // The first count entries of keys and values are the pairs
+    CellTable(long[] keys, int[] values, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        
+        int tableSize = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        tableKeys = new long[tableSize];
+        tableCells = new int[tableSize];
+        tableMask = tableSize - 1;
+        Arrays.fill(tableCells, NONE);
+        int[] cellOffsets = new int[count + 1];
+        items = new int[count];
+        int cells = 0;
+        for (int i = 0; i < count; i++) {
+            long key = keys[order[i]];
+            if (i == 0 || key != keys[order[i - 1]]) {
+                int at = hash(key) & tableMask;
+                while (tableCells[at] != NONE) {
+                    at = (at + 1) & tableMask;
+                }
+                tableKeys[at] = key;
+                tableCells[at] = cells;
+                cellOffsets[cells++] = i;
+            }
+            items[i] = values[order[i]];
+        }
+        cellOffsets[cells] = count;
+        offsets = Arrays.copyOf(cellOffsets, cells + 1);
+    }
+    
+    static long cellKey(long row, long column) {
+        return row << 32 | (column & 0xffffffffL);
+    }
+    
+    // Cell of the key, or NONE when no item is in it
+    int cellOf(long key) {
+        int at = hash(key) & tableMask;
+        while (tableCells[at] != NONE) {
+            if (tableKeys[at] == key) {
+                return tableCells[at];
+            }
+            at = (at + 1) & tableMask;
+        }
+        return NONE;
+    }
+    
+    int start(int cell) { return offsets[cell]; }
+    
+    int end(int cell) { return offsets[cell + 1]; }
+    
+    int item(int index) { return items[index]; }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+}
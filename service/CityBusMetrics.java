@@ -0,0 +1,174 @@
+// service/CityBusMetrics.java
+package com.citybusapp.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+// Exposes the counters the pipeline components already keep as Micrometer meters. Gauges
+// and function counters are read at scrape time, so the hot paths pay nothing for them.
+// HTTP endpoints are timed by Spring Boot's http.server.requests (see dataBase.properties).
+@Component
+public class CityBusMetrics implements MeterBinder {
+    
+    @Autowired
+    private LocationIngestPipeline locationIngestPipeline;
+    
+    @Autowired
+    private FirebasePublisher firebasePublisher;
+    
+    @Autowired
+    private BusStreamBroadcaster busStreamBroadcaster;
+    
+    @Autowired
+    private RoutePlanCache routePlanCache;
+    
+    @Autowired
+    private PositionHistoryStore positionHistoryStore;
+    
+    @Autowired
+    private TripReplayService tripReplayService;
+    
+    @Autowired
+    private StopGeofenceDetector stopGeofenceDetector;
+    
+    @Autowired
+    private GpsTrackFilter gpsTrackFilter;
+    
+    private volatile Timer ingestLag;
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("citybus.ingest.queue.depth", locationIngestPipeline,
+                      pipeline -> pipeline.getStats().getQueueDepth())
+             .description("Location pings waiting to be written")
+             .register(registry);
+        Gauge.builder("citybus.ingest.last.flush", locationIngestPipeline,
+                      pipeline -> pipeline.getStats().getLastFlushMillis())
+             .description("Duration of the last batch write")
+             .baseUnit("milliseconds")
+             .register(registry);
+        ingestCounter(registry, "accepted", stats -> stats.getAccepted());
+        ingestCounter(registry, "dropped", stats -> stats.getDropped());
+        ingestCounter(registry, "coalesced", stats -> stats.getCoalesced());
+        ingestCounter(registry, "written", stats -> stats.getWritten());
+        ingestCounter(registry, "unmatched", stats -> stats.getUnmatched());
+        ingestCounter(registry, "failed.flushes", stats -> stats.getFailedFlushes());
+        ingestCounter(registry, "failed", stats -> stats.getFailed());
+        ingestLag = Timer.builder("citybus.ingest.lag")
+                .description("Time from a location ping to its database write")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+        
+        Gauge.builder("citybus.firebase.lag", firebasePublisher, FirebasePublisher::getLagMillis)
+             .description("Age of the oldest update in the last successful Firebase write")
+             .baseUnit("milliseconds")
+             .register(registry);
+        Gauge.builder("citybus.firebase.pending", firebasePublisher, FirebasePublisher::getPendingCount)
+             .description("Buses waiting to be published to Firebase")
+             .register(registry);
+        FunctionCounter.builder("citybus.firebase.published.fields", firebasePublisher,
+                                FirebasePublisher::getPublishedFields)
+                       .register(registry);
+        FunctionCounter.builder("citybus.firebase.skipped.fields", firebasePublisher,
+                                FirebasePublisher::getSkippedFields)
+                       .description("Unchanged fields not sent to Firebase")
+                       .register(registry);
+        FunctionCounter.builder("citybus.firebase.failed.writes", firebasePublisher,
+                                FirebasePublisher::getFailedWrites)
+                       .register(registry);
+        
+        Gauge.builder("citybus.stream.subscribers", busStreamBroadcaster,
+                      BusStreamBroadcaster::getSubscriberCount)
+             .register(registry);
+        FunctionCounter.builder("citybus.stream.conflated", busStreamBroadcaster,
+                                BusStreamBroadcaster::getConflatedCount)
+                       .description("Bus updates replaced by a newer one before being sent")
+                       .register(registry);
+        FunctionCounter.builder("citybus.stream.slow.dropped", busStreamBroadcaster,
+                                BusStreamBroadcaster::getSlowSubscriberDrops)
+                       .description("Subscribers dropped because a send passed its deadline")
+                       .register(registry);
+        
+        Gauge.builder("citybus.history.queue.depth", positionHistoryStore,
+                      store -> store.getStats().getQueueDepth())
+             .description("Positions waiting to be appended to the history tables")
+             .register(registry);
+        historyCounter(registry, "written", stats -> stats.getWritten());
+        historyCounter(registry, "dropped", stats -> stats.getDropped());
+        historyCounter(registry, "failed.batches", stats -> stats.getFailedBatches());
+        Gauge.builder("citybus.replay.sessions", tripReplayService, TripReplayService::getSessionCount)
+             .register(registry);
+        FunctionCounter.builder("citybus.replay.slow.dropped", tripReplayService,
+                                TripReplayService::getSlowSessionDrops)
+                       .description("Replays dropped because a send passed its deadline")
+                       .register(registry);
+        FunctionCounter.builder("citybus.geofence.arrivals", stopGeofenceDetector,
+                                detector -> detector.getStats().getArrivals())
+                       .description("Buses entering a stop's geofence")
+                       .register(registry);
+        FunctionCounter.builder("citybus.geofence.departures", stopGeofenceDetector,
+                                detector -> detector.getStats().getDepartures())
+                       .description("Buses leaving a stop's geofence")
+                       .register(registry);
+        FunctionCounter.builder("citybus.gps.snapped", gpsTrackFilter, filter -> filter.getStats().getSnapped())
+                       .description("Positions moved onto the bus's route")
+                       .register(registry);
+        FunctionCounter.builder("citybus.gps.rejected", gpsTrackFilter, filter -> filter.getStats().getRejected())
+                       .description("Positions dropped as implausible jumps")
+                       .register(registry);
+        
+        Gauge.builder("citybus.route.cache.size", routePlanCache, cache -> cache.getStats().getSize())
+             .register(registry);
+        cacheCounter(registry, "hits", stats -> stats.getHits());
+        cacheCounter(registry, "misses", stats -> stats.getMisses());
+        cacheCounter(registry, "evictions", stats -> stats.getEvictions());
+        cacheCounter(registry, "expirations", stats -> stats.getExpirations());
+        cacheCounter(registry, "invalidations", stats -> stats.getInvalidations());
+    }
+    
+    @EventListener
+    public void onLocationsFlushed(BusLocationsFlushedEvent event) {
+        Timer timer = ingestLag;
+        if (timer == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (LocationPing ping : event.getPings()) {
+            timer.record(Duration.between(ping.getRecordedAt(), now).toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private void ingestCounter(MeterRegistry registry, String name,
+                               ToDoubleFunction<LocationIngestPipeline.IngestStats> value) {
+        FunctionCounter.builder("citybus.ingest." + name, locationIngestPipeline,
+                                pipeline -> value.applyAsDouble(pipeline.getStats()))
+                       .register(registry);
+    }
+    
+    private void historyCounter(MeterRegistry registry, String name,
+                                ToDoubleFunction<PositionHistoryStore.HistoryStats> value) {
+        FunctionCounter.builder("citybus.history." + name, positionHistoryStore,
+                                store -> value.applyAsDouble(store.getStats()))
+                       .register(registry);
+    }
+    
+    private void cacheCounter(MeterRegistry registry, String name,
+                              ToDoubleFunction<RoutePlanCache.CacheStats> value) {
+        FunctionCounter.builder("citybus.route.cache." + name, routePlanCache,
+                                cache -> value.applyAsDouble(cache.getStats()))
+                       .register(registry);
+    }
+}
@@ -0,0 +1,440 @@
+// service/EtaEngine.java
+package com.citybusapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Learns hop travel times from StopGeofenceDetector's stop visits and predicts arrivals.
+// A bus is tracked by the last stop of its route it arrived at; when it reaches the next
+// one, the time since it left updates an EWMA for that hop in the current half-hour-of-day
+// bucket. Every refresh, a sweep along each pattern turns bus positions into the next
+// predicted arrival at every (pattern, position), so lookups are a couple of array reads.
+// Hops without observations fall back to the network's 25 km/h estimate.
+@Component
+public class EtaEngine {
+    
+    private static final int BUCKETS = 48;
+    private static final int BUCKET_SECONDS = 24 * 3600 / BUCKETS;
+    private static final int UNKNOWN = -1;
+    private static final int NO_ARRIVAL = Integer.MAX_VALUE;
+    // Longer than this between stops means the bus parked or lost GPS; don't learn from it
+    private static final long MAX_HOP_MILLIS = 60 * 60 * 1000L;
+    // Arriving further along than this means stops were missed; tracking restarts there
+    private static final int MAX_HOP_STOPS = 2;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Value("${eta.alpha:0.2}")
+    private double alpha;
+    
+    @Value("${eta.dwell-seconds:20}")
+    private int dwellSeconds;
+    
+    @Value("${eta.default-wait-minutes:5}")
+    private int defaultWaitMinutes;
+    
+    @Value("${eta.track-timeout-minutes:15}")
+    private int trackTimeoutMinutes;
+    
+    @Value("${eta.refresh-ms:1000}")
+    private long refreshMs;
+    
+    @Value("${eta.max-buses:100000}")
+    private int maxBuses;
+    
+    
+    private volatile Model model;
+    private volatile Snapshot snapshot;
+    
+    private ScheduledExecutorService refresher;
+    
+    @PostConstruct
+    public void start() {
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eta-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+    
+    @EventListener
+    public void onStopVisit(StopVisitEvent event) {
+        if (event.getRouteNumber() == null) {
+            return;
+        }
+        Model m = currentModel();
+        TransitNetwork network = m.network;
+        int route = network.indexOfRoute(event.getRouteNumber());
+        int stop = network.indexOfStop(event.getStopId());
+        if (route < 0 || stop < 0) {
+            return;
+        }
+        int forward = 2 * route;
+        int at = network.positionInPattern(forward, stop);
+        if (at < 0) {
+            return;
+        }
+        long now = event.getAtMillis();
+        int length = network.patternLength(forward);
+        
+        int slot = m.slots.lock(event.getBusId(), now);
+        if (slot == BusSlots.NONE) {
+            return;
+        }
+        try {
+            if (m.busRoute[slot] != route) {
+                m.busRoute[slot] = route;
+                m.busPosition[slot] = UNKNOWN;
+                m.busDirection[slot] = 0;
+            }
+            int last = m.busPosition[slot];
+            if (event.getType() == StopVisitEvent.Type.DEPARTURE) {
+                // The hop starts when the bus leaves
+                if (at == last) {
+                    m.busDepartedAt[slot] = now;
+                    m.busAtStopAt[slot] = now;
+                }
+                return;
+            }
+            boolean tracked = last != UNKNOWN && now - m.busAtStopAt[slot] <= trackTimeoutMinutes * 60_000L;
+            if (tracked && at == last) {
+                // Back inside the fence it just left; still dwelling
+                m.busAtStopAt[slot] = now;
+                return;
+            }
+            
+            int direction = 0;
+            if (tracked && Math.abs(at - last) <= MAX_HOP_STOPS) {
+                direction = at > last ? 1 : -1;
+                learn(m, route, direction, last, at, now - m.busDepartedAt[slot], now);
+            }
+            // Buses turn around at the termini
+            if (at == 0) {
+                direction = 1;
+            } else if (at == length - 1) {
+                direction = -1;
+            }
+            m.busPosition[slot] = at;
+            m.busDirection[slot] = direction;
+            m.busDepartedAt[slot] = now;
+            m.busAtStopAt[slot] = now;
+        } finally {
+            m.slots.unlock(slot);
+        }
+    }
+    
+    // Pattern of the route that visits fromStop before toStop, or -1
+    public int findPattern(TransitNetwork network, int route, int fromStop, int toStop) {
+        for (int pattern = 2 * route; pattern <= 2 * route + 1; pattern++) {
+            int from = network.positionInPattern(pattern, fromStop);
+            int to = network.positionInPattern(pattern, toStop);
+            if (from >= 0 && to > from) {
+                return pattern;
+            }
+        }
+        return -1;
+    }
+    
+    // Predicted riding time between two positions of a pattern, including intermediate dwells
+    public int rideSeconds(TransitNetwork network, int pattern, int fromPosition, int toPosition) {
+        Snapshot s = snapshot;
+        if (s != null && s.network == network) {
+            int base = network.patternOffset(pattern);
+            return Math.round(s.offsets[base + toPosition] - s.offsets[base + fromPosition]) - dwellSeconds;
+        }
+        int seconds = 0;
+        for (int position = fromPosition + 1; position <= toPosition; position++) {
+            seconds += network.hopSeconds(pattern, position) + dwellSeconds;
+        }
+        return seconds - dwellSeconds;
+    }
+    
+    // Wait at a stop for someone who gets there readyInSeconds from now. Only the next
+    // bus is predicted, so if the rider would miss it the configured default applies.
+    public int waitSeconds(TransitNetwork network, int pattern, int position, int readyInSeconds) {
+        int away = secondsAway(network, pattern, position);
+        if (away == UNKNOWN || away < readyInSeconds) {
+            return defaultWaitMinutes * 60;
+        }
+        return away - readyInSeconds;
+    }
+    
+    public ArrivalPrediction nextArrival(String routeNumber, String stopId) {
+        ArrivalPrediction prediction = new ArrivalPrediction();
+        prediction.setRouteNumber(routeNumber);
+        prediction.setStopId(stopId);
+        Snapshot s = snapshot;
+        if (s == null) {
+            return prediction;
+        }
+        TransitNetwork network = s.network;
+        int route = network.indexOfRoute(routeNumber);
+        int stop = network.indexOfStop(stopId);
+        if (route < 0 || stop < 0) {
+            return prediction;
+        }
+        int best = UNKNOWN;
+        for (int slot = network.firstPatternSlot(stop); slot < network.endPatternSlot(stop); slot++) {
+            int pattern = network.slotPattern(slot);
+            if (network.patternRoute(pattern) != route) {
+                continue;
+            }
+            int away = secondsAway(network, pattern, network.slotPosition(slot));
+            if (away != UNKNOWN && (best == UNKNOWN || away < best)) {
+                best = away;
+            }
+        }
+        if (best != UNKNOWN) {
+            prediction.setSecondsAway(best);
+        }
+        return prediction;
+    }
+    
+    private int secondsAway(TransitNetwork network, int pattern, int position) {
+        Snapshot s = snapshot;
+        if (s == null || s.network != network) {
+            return UNKNOWN;
+        }
+        int arrival = s.nextArrival[network.patternOffset(pattern) + position];
+        if (arrival == NO_ARRIVAL) {
+            return UNKNOWN;
+        }
+        long sinceRefresh = (System.currentTimeMillis() - s.computedAt) / 1000;
+        return (int) Math.max(0, arrival - sinceRefresh);
+    }
+    
+    void refresh() {
+        try {
+            Model m = currentModel();
+            TransitNetwork network = m.network;
+            long now = System.currentTimeMillis();
+            int bucket = bucketOf(now);
+            int slots = network.patternSlotCount();
+            
+            // Arrival time at each position measured from leaving position 0, dwell included
+            float[] offsets = new float[slots];
+            for (int pattern = 0; pattern < network.patternCount(); pattern++) {
+                int base = network.patternOffset(pattern);
+                for (int position = 1; position < network.patternLength(pattern); position++) {
+                    offsets[base + position] = offsets[base + position - 1]
+                            + estimate(m, pattern, position, bucket) + dwellSeconds;
+                }
+            }
+            
+            int[] nextArrival = new int[slots];
+            Arrays.fill(nextArrival, NO_ARRIVAL);
+            long timeout = trackTimeoutMinutes * 60_000L;
+            int buses = m.slots.used();
+            for (int slot = 0; slot < buses; slot++) {
+                int route = m.busRoute[slot];
+                int direction = m.busDirection[slot];
+                if (route < 0 || direction == 0 || now - m.busAtStopAt[slot] > timeout) {
+                    continue;
+                }
+                int pattern = direction > 0 ? 2 * route : 2 * route + 1;
+                int length = network.patternLength(pattern);
+                int position = direction > 0 ? m.busPosition[slot] : length - 1 - m.busPosition[slot];
+                if (position >= length - 1) {
+                    continue;
+                }
+                long elapsed = (now - m.busDepartedAt[slot]) / 1000;
+                int remaining = (int) Math.max(0, estimate(m, pattern, position + 1, bucket) - elapsed);
+                int index = network.patternOffset(pattern) + position + 1;
+                nextArrival[index] = Math.min(nextArrival[index], remaining);
+            }
+            
+            // Carry each bus downstream; a second pass lets buses about to turn around at a
+            // terminus serve the start of the opposite pattern
+            for (int pass = 0; pass < 2; pass++) {
+                for (int pattern = 0; pattern < network.patternCount(); pattern++) {
+                    int base = network.patternOffset(pattern);
+                    int length = network.patternLength(pattern);
+                    if (pass == 1) {
+                        int terminal = nextArrival[network.patternOffset(pattern ^ 1) + length - 1];
+                        if (terminal != NO_ARRIVAL) {
+                            nextArrival[base] = Math.min(nextArrival[base], terminal + dwellSeconds);
+                        }
+                    }
+                    for (int position = 1; position < length; position++) {
+                        int previous = nextArrival[base + position - 1];
+                        if (previous != NO_ARRIVAL) {
+                            int carried = previous + dwellSeconds + Math.round(estimate(m, pattern, position, bucket));
+                            nextArrival[base + position] = Math.min(nextArrival[base + position], carried);
+                        }
+                    }
+                }
+            }
+            snapshot = new Snapshot(network, now, offsets, nextArrival);
+        } catch (RuntimeException e) {
+            // Keep the previous snapshot; the next refresh will try again
+        }
+    }
+    
+    private void learn(Model m, int route, int direction, int fromForward, int toForward,
+                       long elapsedMillis, long now) {
+        if (elapsedMillis <= 0 || elapsedMillis > MAX_HOP_MILLIS) {
+            return;
+        }
+        TransitNetwork network = m.network;
+        int pattern = direction > 0 ? 2 * route : 2 * route + 1;
+        int length = network.patternLength(pattern);
+        int from = direction > 0 ? fromForward : length - 1 - fromForward;
+        int to = direction > 0 ? toForward : length - 1 - toForward;
+        
+        // A skipped stop splits the time in proportion to the static hop estimates
+        int staticTotal = 0;
+        for (int position = from + 1; position <= to; position++) {
+            staticTotal += network.hopSeconds(pattern, position);
+        }
+        double seconds = elapsedMillis / 1000.0;
+        int bucket = bucketOf(now);
+        for (int position = from + 1; position <= to; position++) {
+            double share = staticTotal > 0
+                    ? (double) network.hopSeconds(pattern, position) / staticTotal
+                    : 1.0 / (to - from);
+            int index = (network.patternOffset(pattern) + position) * BUCKETS + bucket;
+            float current = m.hopEstimates[index];
+            // Racing updates from two buses on the same hop may drop one sample; that's fine
+            m.hopEstimates[index] = current == 0
+                    ? (float) (seconds * share)
+                    : (float) (current + alpha * (seconds * share - current));
+        }
+    }
+    
+    private static float estimate(Model m, int pattern, int position, int bucket) {
+        float learned = m.hopEstimates[(m.network.patternOffset(pattern) + position) * BUCKETS + bucket];
+        return learned > 0 ? learned : m.network.hopSeconds(pattern, position);
+    }
+    
+    private static int bucketOf(long epochMillis) {
+        long local = epochMillis + TimeZone.getDefault().getOffset(epochMillis);
+        return (int) (Math.floorMod(local / 1000, 24 * 3600L) / BUCKET_SECONDS);
+    }
+    
+    // Swaps in fresh arrays when the planner loads a new network, keeping learned hop times
+    // for hops that still exist (same route, direction and stops)
+    private Model currentModel() {
+        TransitNetwork network = journeyPlanner.getNetwork();
+        Model m = model;
+        if (m != null && m.network == network) {
+            return m;
+        }
+        synchronized (this) {
+            m = model;
+            if (m == null || m.network != network) {
+                Model fresh = new Model(network, maxBuses, trackTimeoutMinutes * 60_000L);
+                if (m != null) {
+                    carryOver(m, fresh);
+                }
+                model = m = fresh;
+            }
+            return m;
+        }
+    }
+    
+    private static void carryOver(Model from, Model to) {
+        Map<String, Integer> hops = new HashMap<>();
+        TransitNetwork old = from.network;
+        for (int pattern = 0; pattern < old.patternCount(); pattern++) {
+            for (int position = 1; position < old.patternLength(pattern); position++) {
+                hops.put(hopKey(old, pattern, position), old.patternOffset(pattern) + position);
+            }
+        }
+        TransitNetwork network = to.network;
+        for (int pattern = 0; pattern < network.patternCount(); pattern++) {
+            for (int position = 1; position < network.patternLength(pattern); position++) {
+                Integer oldSlot = hops.get(hopKey(network, pattern, position));
+                if (oldSlot != null) {
+                    System.arraycopy(from.hopEstimates, oldSlot * BUCKETS, to.hopEstimates,
+                                     (network.patternOffset(pattern) + position) * BUCKETS, BUCKETS);
+                }
+            }
+        }
+    }
+    
+    private static String hopKey(TransitNetwork network, int pattern, int position) {
+        return network.routeNumber(network.patternRoute(pattern)) + '|'
+                + network.stop(network.patternStop(pattern, position - 1)).getId() + '|'
+                + network.stop(network.patternStop(pattern, position)).getId();
+    }
+    
+    private static final class Model {
+        private final TransitNetwork network;
+        // Seconds per (pattern slot, time-of-day bucket); 0 until the hop is observed
+        private final float[] hopEstimates;
+        // Per tracked bus: route, last stop (position in the route's forward pattern),
+        // direction of travel (+1 forward, -1 reverse, 0 unknown) and timestamps
+        private final int[] busRoute;
+        private final int[] busPosition;
+        private final int[] busDirection;
+        private final long[] busDepartedAt;
+        private final long[] busAtStopAt;
+        // With the arena full, a bus untracked for track-timeout-minutes gives up its slot
+        private final BusSlots slots;
+        
+        private Model(TransitNetwork network, int capacity, long idleMillis) {
+            this.network = network;
+            this.hopEstimates = new float[network.patternSlotCount() * BUCKETS];
+            this.busRoute = new int[capacity];
+            this.busPosition = new int[capacity];
+            this.busDirection = new int[capacity];
+            this.busDepartedAt = new long[capacity];
+            this.busAtStopAt = new long[capacity];
+            Arrays.fill(busRoute, UNKNOWN);
+            this.slots = new BusSlots(capacity, idleMillis, slot -> {
+                busRoute[slot] = UNKNOWN;
+                busPosition[slot] = UNKNOWN;
+                busDirection[slot] = 0;
+            });
+        }
+    }
+    
+    private static final class Snapshot {
+        private final TransitNetwork network;
+        private final long computedAt;
+        private final float[] offsets;
+        // Seconds from computedAt until the next bus reaches each (pattern, position)
+        private final int[] nextArrival;
+        
+        private Snapshot(TransitNetwork network, long computedAt, float[] offsets, int[] nextArrival) {
+            this.network = network;
+            this.computedAt = computedAt;
+            this.offsets = offsets;
+            this.nextArrival = nextArrival;
+        }
+    }
+    
+    public static class ArrivalPrediction {
+        private String routeNumber;
+        private String stopId;
+        private Integer secondsAway; // null when no tracked bus is heading to the stop
+        
+        public String getRouteNumber() { return routeNumber; }
+        public void setRouteNumber(String routeNumber) { this.routeNumber = routeNumber; }
+        
+        public String getStopId() { return stopId; }
+        public void setStopId(String stopId) { this.stopId = stopId; }
+        
+        public Integer getSecondsAway() { return secondsAway; }
+        public void setSecondsAway(Integer secondsAway) { this.secondsAway = secondsAway; }
+    }
+}
@@ -0,0 +1,192 @@
+// service/FirebasePublisher.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Publishes live bus state to Firebase. Buses handed to publish() are coalesced until
+// the next tick; each tick sends one multi-path updateChildren containing only the
+// fields that changed since the last successful publish, for at most the number of
+// buses the global rate limit allows. Failed writes are retried with exponential backoff.
+@Component
+public class FirebasePublisher {
+    
+    @Autowired
+    private FirebaseSink firebaseSink;
+    
+    @Value("${firebase.publish-interval-ms:1000}")
+    private long publishIntervalMs;
+    
+    @Value("${firebase.max-buses-per-second:1000}")
+    private int maxBusesPerSecond;
+    
+    @Value("${firebase.write-timeout-ms:10000}")
+    private long writeTimeoutMs;
+    
+    @Value("${firebase.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+    
+    private final ConcurrentHashMap<String, Bus> pending = new ConcurrentHashMap<>();
+    
+    // Fields as last acknowledged by Firebase; only touched by the publisher thread
+    private final Map<String, Map<String, Object>> published = new HashMap<>();
+    
+    private final AtomicLong publishedBuses = new AtomicLong();
+    private final AtomicLong publishedFields = new AtomicLong();
+    private final AtomicLong skippedFields = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private volatile long lagMillis;
+    
+    private long backoffMs;
+    private long retryAt;
+    
+    private ScheduledExecutorService publisher;
+    
+    @PostConstruct
+    public void start() {
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "firebase-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::tick, publishIntervalMs, publishIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        publisher.shutdownNow();
+    }
+    
+    public void publish(Bus bus) {
+        pending.put(bus.getId(), bus);
+    }
+    
+    public int getPendingCount() {
+        return pending.size();
+    }
+    
+    public long getPublishedBuses() {
+        return publishedBuses.get();
+    }
+    
+    public long getPublishedFields() {
+        return publishedFields.get();
+    }
+    
+    public long getSkippedFields() {
+        return skippedFields.get();
+    }
+    
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+    
+    // Age of the oldest update in the last successful write
+    public long getLagMillis() {
+        return lagMillis;
+    }
+    
+    void tick() {
+        long now = System.currentTimeMillis();
+        if (now < retryAt || pending.isEmpty()) {
+            return;
+        }
+        
+        int budget = (int) Math.max(1, maxBusesPerSecond * publishIntervalMs / 1000);
+        List<Bus> batch = new ArrayList<>();
+        for (String busId : pending.keySet()) {
+            if (batch.size() >= budget) {
+                break;
+            }
+            Bus bus = pending.remove(busId);
+            if (bus != null) {
+                batch.add(bus);
+            }
+        }
+        
+        Map<String, Object> updates = new LinkedHashMap<>();
+        Map<String, Map<String, Object>> sent = new HashMap<>();
+        for (Bus bus : batch) {
+            Map<String, Object> fields = fieldsOf(bus);
+            Map<String, Object> previous = published.get(bus.getId());
+            Map<String, Object> changed = new HashMap<>();
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                if (previous == null || !Objects.equals(previous.get(field.getKey()), field.getValue())) {
+                    updates.put(bus.getId() + "/" + field.getKey(), field.getValue());
+                    changed.put(field.getKey(), field.getValue());
+                } else {
+                    skippedFields.incrementAndGet();
+                }
+            }
+            if (!changed.isEmpty()) {
+                sent.put(bus.getId(), changed);
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        
+        try {
+            firebaseSink.updateChildren(updates).get(writeTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failedWrites.incrementAndGet();
+            // Put the batch back unless a newer state arrived meanwhile, then back off
+            for (Bus bus : batch) {
+                pending.putIfAbsent(bus.getId(), bus);
+            }
+            backoffMs = backoffMs == 0 ? publishIntervalMs : Math.min(maxBackoffMs, backoffMs * 2);
+            retryAt = System.currentTimeMillis() + backoffMs;
+            return;
+        }
+        
+        backoffMs = 0;
+        retryAt = 0;
+        long oldest = now;
+        for (Bus bus : batch) {
+            if (bus.getLastUpdated() != null) {
+                long updatedAt = bus.getLastUpdated().atZone(ZoneId.systemDefault())
+                                    .toInstant().toEpochMilli();
+                oldest = Math.min(oldest, updatedAt);
+            }
+        }
+        lagMillis = System.currentTimeMillis() - oldest;
+        for (Map.Entry<String, Map<String, Object>> entry : sent.entrySet()) {
+            published.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).putAll(entry.getValue());
+        }
+        publishedBuses.addAndGet(sent.size());
+        publishedFields.addAndGet(updates.size());
+    }
+    
+    private static Map<String, Object> fieldsOf(Bus bus) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", bus.getId());
+        fields.put("number", bus.getNumber());
+        fields.put("routeName", bus.getRouteName());
+        fields.put("latitude", bus.getLatitude());
+        fields.put("longitude", bus.getLongitude());
+        fields.put("speed", bus.getSpeed());
+        fields.put("occupancy", bus.getOccupancy());
+        fields.put("lastUpdated", bus.getLastUpdated() != null ? bus.getLastUpdated().toString() : null);
+        return fields;
+    }
+}
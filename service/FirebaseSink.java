@@ -0,0 +1,12 @@
+// service/FirebaseSink.java
+package com.citybusapp.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Destination for live bus data under the "buses" node. Keys are multi-location paths
+// relative to that node (e.g. "bus_001/latitude"); all of them are applied in one write.
+public interface FirebaseSink {
+    
+    CompletableFuture<Void> updateChildren(Map<String, Object> updates);
+}
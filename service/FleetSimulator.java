@@ -0,0 +1,363 @@
+// service/FleetSimulator.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives buses along the stop sequences of their routes and pushes every position through
+// BusService.updateBusLocation, the same path real devices use. The real fleet follows its
+// own route; virtual-buses adds that many simulated buses spread over all routes for load
+// tests. Randomness is a pure function of (seed, bus, tick), so a run is reproducible
+// whatever the thread count. State lives in primitive arrays indexed by bus.
+@Component
+public class FleetSimulator {
+    
+    private static final int MAX_HOPS_PER_TICK = 1000;
+    private static final String VIRTUAL_PREFIX = "sim_";
+    
+    @Autowired
+    private BusService busService;
+    
+    @Autowired
+    private LiveBusStore liveBusStore;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Value("${simulation.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${simulation.virtual-buses:0}")
+    private int virtualBuses;
+    
+    @Value("${simulation.tick-ms:10000}")
+    private long tickMs;
+    
+    @Value("${simulation.threads:4}")
+    private int threads;
+    
+    @Value("${simulation.seed:42}")
+    private long seed;
+    
+    @Value("${simulation.dwell-seconds:20}")
+    private int dwellSeconds;
+    
+    @Value("${simulation.speed-variation:0.3}")
+    private double speedVariation;
+    
+    private final LatencyHistogram submitLatency = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong overrunTicks = new AtomicLong();
+    private volatile long startedAt;
+    private volatile long lastTickMillis;
+    
+    // Fleet state; only touched by the tick (and, split by bus range, its workers)
+    private TransitNetwork network;
+    private String[] busIds = new String[0];
+    private int[] pattern = new int[0];
+    private int[] position = new int[0];
+    private double[] hopProgressKm = new double[0];
+    private double[] speedKmh = new double[0];
+    private double[] dwellLeft = new double[0];
+    
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+    
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fleet-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fleet-simulator-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+    
+    // Ingest latency from the simulated device's timestamp to the database write. Virtual
+    // buses have no row in buses (bus numbers are unique there), so their updates match
+    // nothing and arrive as unmatched pings; they still went through the same batch write
+    @EventListener
+    public void onLocationsFlushed(BusLocationsFlushedEvent event) {
+        if (startedAt == 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (LocationPing ping : event.getPings()) {
+            endToEndLatency.record(Duration.between(ping.getRecordedAt(), now).toNanos());
+        }
+        for (LocationPing ping : event.getUnmatchedPings()) {
+            endToEndLatency.record(Duration.between(ping.getRecordedAt(), now).toNanos());
+        }
+    }
+    
+    public SimulationStats getStats() {
+        SimulationStats stats = new SimulationStats();
+        long elapsed = startedAt == 0 ? 0 : System.currentTimeMillis() - startedAt;
+        stats.setEnabled(enabled);
+        stats.setBuses(busIds.length);
+        stats.setTicks(ticks.get());
+        stats.setOverrunTicks(overrunTicks.get());
+        stats.setLastTickMillis(lastTickMillis);
+        stats.setSent(sent.get());
+        stats.setRejected(rejected.get());
+        stats.setThroughputPerSecond(elapsed > 0 ? sent.get() * 1000.0 / elapsed : 0);
+        stats.setSubmitP50Micros(submitLatency.percentile(50) / 1000);
+        stats.setSubmitP99Micros(submitLatency.percentile(99) / 1000);
+        stats.setSubmitMaxMicros(submitLatency.percentile(100) / 1000);
+        stats.setEndToEndP50Millis(endToEndLatency.percentile(50) / 1_000_000);
+        stats.setEndToEndP95Millis(endToEndLatency.percentile(95) / 1_000_000);
+        stats.setEndToEndP99Millis(endToEndLatency.percentile(99) / 1_000_000);
+        stats.setEndToEndMaxMillis(endToEndLatency.percentile(100) / 1_000_000);
+        return stats;
+    }
+    
+    void tick() {
+        long started = System.currentTimeMillis();
+        try {
+            TransitNetwork current = journeyPlanner.getNetwork();
+            if (current != network && liveBusStore.isLoaded()) {
+                initialize(current);
+            }
+            if (busIds.length == 0) {
+                return;
+            }
+            if (startedAt == 0) {
+                startedAt = started;
+            }
+            
+            long tick = ticks.getAndIncrement();
+            double seconds = tickMs / 1000.0;
+            int chunk = (busIds.length + threads - 1) / threads;
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int from = 0; from < busIds.length; from += chunk) {
+                int start = from;
+                int end = Math.min(busIds.length, from + chunk);
+                tasks.add(() -> {
+                    for (int i = start; i < end; i++) {
+                        advance(i, tick, seconds);
+                        send(i);
+                    }
+                    return null;
+                });
+            }
+            workers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Keep simulating; one bad tick must not cancel the schedule
+        } finally {
+            lastTickMillis = System.currentTimeMillis() - started;
+            if (lastTickMillis > tickMs) {
+                overrunTicks.incrementAndGet();
+            }
+        }
+    }
+    
+    private void initialize(TransitNetwork current) {
+        List<String> ids = new ArrayList<>();
+        List<Integer> routes = new ArrayList<>();
+        for (Bus bus : liveBusStore.getAll()) {
+            if (bus.getId().startsWith(VIRTUAL_PREFIX)) {
+                continue;
+            }
+            int route = bus.getNumber() != null ? current.indexOfRoute(bus.getNumber()) : -1;
+            if (route >= 0 && current.patternLength(2 * route) > 1) {
+                ids.add(bus.getId());
+                routes.add(route);
+            }
+        }
+        List<Integer> usable = new ArrayList<>();
+        for (int r = 0; r < current.routeCount(); r++) {
+            if (current.patternLength(2 * r) > 1) {
+                usable.add(r);
+            }
+        }
+        for (int v = 0; v < virtualBuses && !usable.isEmpty(); v++) {
+            int route = usable.get(v % usable.size());
+            String id = String.format(VIRTUAL_PREFIX + "%06d", v);
+            BusStop first = current.stop(current.patternStop(2 * route, 0));
+            liveBusStore.register(new Bus(id, current.routeNumber(route), current.routeName(route),
+                                          first.getLatitude(), first.getLongitude(), 0.0, 0, null));
+            ids.add(id);
+            routes.add(route);
+        }
+        
+        int count = ids.size();
+        busIds = ids.toArray(new String[0]);
+        pattern = new int[count];
+        position = new int[count];
+        hopProgressKm = new double[count];
+        speedKmh = new double[count];
+        dwellLeft = new double[count];
+        for (int i = 0; i < count; i++) {
+            int p = 2 * routes.get(i) + (noise(i, -1, 0) < 0.5 ? 0 : 1);
+            pattern[i] = p;
+            position[i] = 1 + (int) (noise(i, -1, 1) * (current.patternLength(p) - 1));
+            hopProgressKm[i] = noise(i, -1, 2) * current.hopKm(p, position[i]);
+            speedKmh[i] = sampleSpeed(i, -1);
+        }
+        network = current;
+    }
+    
+    private void advance(int i, long tick, double seconds) {
+        double remaining = seconds;
+        for (int hops = 0; remaining > 0 && hops < MAX_HOPS_PER_TICK; hops++) {
+            if (dwellLeft[i] > 0) {
+                double wait = Math.min(dwellLeft[i], remaining);
+                dwellLeft[i] -= wait;
+                remaining -= wait;
+                continue;
+            }
+            double left = network.hopKm(pattern[i], position[i]) - hopProgressKm[i];
+            double reachable = speedKmh[i] * remaining / 3600;
+            if (reachable < left) {
+                hopProgressKm[i] += reachable;
+                return;
+            }
+            // Arrive at the stop, dwell, then continue; turn around at the terminus
+            remaining -= left / speedKmh[i] * 3600;
+            hopProgressKm[i] = 0;
+            position[i]++;
+            if (position[i] >= network.patternLength(pattern[i])) {
+                pattern[i] ^= 1;
+                position[i] = 1;
+            }
+            dwellLeft[i] = dwellSeconds * (0.5 + noise(i, tick, hops));
+            speedKmh[i] = sampleSpeed(i, tick * MAX_HOPS_PER_TICK + hops);
+        }
+    }
+    
+    private void send(int i) {
+        int p = pattern[i];
+        BusStop from = network.stop(network.patternStop(p, position[i] - 1));
+        BusStop to = network.stop(network.patternStop(p, position[i]));
+        double hop = network.hopKm(p, position[i]);
+        double fraction = hop > 0 ? hopProgressKm[i] / hop : 0;
+        double latitude = from.getLatitude() + (to.getLatitude() - from.getLatitude()) * fraction;
+        double longitude = from.getLongitude() + (to.getLongitude() - from.getLongitude()) * fraction;
+        double speed = dwellLeft[i] > 0 ? 0 : speedKmh[i];
+        
+        long started = System.nanoTime();
+        boolean accepted = busService.updateBusLocation(busIds[i], latitude, longitude, speed);
+        submitLatency.record(System.nanoTime() - started);
+        if (accepted) {
+            sent.incrementAndGet();
+        } else {
+            rejected.incrementAndGet();
+        }
+    }
+    
+    private double sampleSpeed(int i, long salt) {
+        double jitter = (2 * noise(i, salt, 7) - 1) * speedVariation;
+        return Math.max(5, TransitNetwork.BUS_SPEED_KMH * (1 + jitter));
+    }
+    
+    // Uniform [0, 1) from SplitMix64 over (seed, bus, tick, draw)
+    private double noise(int bus, long tick, int draw) {
+        long z = seed + 0x9E3779B97F4A7C15L * (bus + 1)
+                 + 0xBF58476D1CE4E5B9L * (tick + 2) + 0x94D049BB133111EBL * (draw + 3);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+    
+    public static class SimulationStats {
+        private boolean enabled;
+        private int buses;
+        private long ticks;
+        private long overrunTicks;
+        private long lastTickMillis;
+        private long sent;
+        private long rejected;
+        private double throughputPerSecond;
+        private long submitP50Micros;
+        private long submitP99Micros;
+        private long submitMaxMicros;
+        private long endToEndP50Millis;
+        private long endToEndP95Millis;
+        private long endToEndP99Millis;
+        private long endToEndMaxMillis;
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getBuses() { return buses; }
+        public void setBuses(int buses) { this.buses = buses; }
+        
+        public long getTicks() { return ticks; }
+        public void setTicks(long ticks) { this.ticks = ticks; }
+        
+        public long getOverrunTicks() { return overrunTicks; }
+        public void setOverrunTicks(long overrunTicks) { this.overrunTicks = overrunTicks; }
+        
+        public long getLastTickMillis() { return lastTickMillis; }
+        public void setLastTickMillis(long lastTickMillis) { this.lastTickMillis = lastTickMillis; }
+        
+        public long getSent() { return sent; }
+        public void setSent(long sent) { this.sent = sent; }
+        
+        public long getRejected() { return rejected; }
+        public void setRejected(long rejected) { this.rejected = rejected; }
+        
+        public double getThroughputPerSecond() { return throughputPerSecond; }
+        public void setThroughputPerSecond(double throughputPerSecond) { this.throughputPerSecond = throughputPerSecond; }
+        
+        public long getSubmitP50Micros() { return submitP50Micros; }
+        public void setSubmitP50Micros(long submitP50Micros) { this.submitP50Micros = submitP50Micros; }
+        
+        public long getSubmitP99Micros() { return submitP99Micros; }
+        public void setSubmitP99Micros(long submitP99Micros) { this.submitP99Micros = submitP99Micros; }
+        
+        public long getSubmitMaxMicros() { return submitMaxMicros; }
+        public void setSubmitMaxMicros(long submitMaxMicros) { this.submitMaxMicros = submitMaxMicros; }
+        
+        public long getEndToEndP50Millis() { return endToEndP50Millis; }
+        public void setEndToEndP50Millis(long endToEndP50Millis) { this.endToEndP50Millis = endToEndP50Millis; }
+        
+        public long getEndToEndP95Millis() { return endToEndP95Millis; }
+        public void setEndToEndP95Millis(long endToEndP95Millis) { this.endToEndP95Millis = endToEndP95Millis; }
+        
+        public long getEndToEndP99Millis() { return endToEndP99Millis; }
+        public void setEndToEndP99Millis(long endToEndP99Millis) { this.endToEndP99Millis = endToEndP99Millis; }
+        
+        public long getEndToEndMaxMillis() { return endToEndMaxMillis; }
+        public void setEndToEndMaxMillis(long endToEndMaxMillis) { this.endToEndMaxMillis = endToEndMaxMillis; }
+    }
+}
@@ -0,0 +1,40 @@
+// service/GeoUtils.java
+package com.citybusapp.service;
+
+public final class GeoUtils {
+    
+    public static final double EARTH_RADIUS_KM = 6371;
+    
+    // Length of one degree of latitude on the sphere used by distanceKm
+    public static final double KM_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_KM;
+    
+    private GeoUtils() {}
+    
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        
+        return EARTH_RADIUS_KM * c;
+    }
+    
+    public static double latitudeSpanDegrees(double radiusKm) {
+        return radiusKm / KM_PER_DEGREE;
+    }
+    
+    // Widest longitude offset a point within radiusKm of the given latitude can have,
+    // or 180 when the circle reaches a pole
+    public static double longitudeSpanDegrees(double latitude, double radiusKm) {
+        double angular = radiusKm / EARTH_RADIUS_KM;
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        if (angular >= Math.PI / 2 || Math.sin(angular) >= cosLat) {
+            return 180;
+        }
+        return Math.toDegrees(Math.asin(Math.sin(angular) / cosLat));
+    }
+}
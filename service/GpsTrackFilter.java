@@ -0,0 +1,341 @@
+// service/GpsTrackFilter.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cleans raw device positions before they are stored. A fix that implies a speed no bus
+// can reach since the last accepted one is dropped as a teleport. Dropped fixes that are
+// plausible one after another form a candidate track; once more than max-rejects-in-row
+// of them agree, the earlier track was the outlier and the track restarts there. Random
+// outliers rarely agree with each other, so they keep restarting the candidate instead.
+// filter() only reads the accepted track; commit() advances it once the ping is stored.
+// Accepted fixes within snap-meters of the bus's route are projected onto it. Routes
+// have no shapes, so a route's polyline is its stops in order; the segments of all
+// routes sit in a hashed grid, each in every cell its snap corridor touches, so one cell
+// lookup finds the candidates. Per-bus state is an arena of primitive arrays indexed by
+// a BusSlots slot, so the filter allocates nothing beyond the ping it returns.
+@Component
+public class GpsTrackFilter {
+    
+    private static final int UNKNOWN = -1;
+    private static final double METERS_PER_DEGREE = GeoUtils.KM_PER_DEGREE * 1000;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Value("${gps-filter.max-speed-kmh:110}")
+    private double maxSpeedKmh;
+    
+    // Distance two fixes of a standing bus can be apart
+    @Value("${gps-filter.error-meters:30}")
+    private double errorMeters;
+    
+    @Value("${gps-filter.max-rejects-in-row:3}")
+    private int maxRejectsInRow;
+    
+    // A bus silent for longer starts a new track
+    @Value("${gps-filter.reset-after-seconds:300}")
+    private long resetAfterSeconds;
+    
+    @Value("${gps-filter.snap-meters:40}")
+    private double snapMeters;
+    
+    @Value("${gps-filter.cell-meters:250}")
+    private double cellMeters;
+    
+    @Value("${gps-filter.max-buses:100000}")
+    private int maxBuses;
+    
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong snapped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    
+    // Per-bus arena: last accepted position and time, and the last fix of the candidate
+    // track with the number of agreeing rejects on it
+    private double[] lastLatitude;
+    private double[] lastLongitude;
+    private long[] lastAt;
+    private double[] candidateLatitude;
+    private double[] candidateLongitude;
+    private long[] candidateAt;
+    private int[] rejectsInRow;
+    // Tracks idle past reset-after-seconds carry nothing to check against, so their
+    // slots can go to other buses
+    private BusSlots slots;
+    
+    private volatile Segments segments;
+    
+    @PostConstruct
+    public void start() {
+        lastLatitude = new double[maxBuses];
+        lastLongitude = new double[maxBuses];
+        lastAt = new long[maxBuses];
+        candidateLatitude = new double[maxBuses];
+        candidateLongitude = new double[maxBuses];
+        candidateAt = new long[maxBuses];
+        rejectsInRow = new int[maxBuses];
+        slots = new BusSlots(maxBuses, resetAfterSeconds * 1000, this::clear);
+    }
+    
+    // The ping to store, or null when the fix is rejected as an outlier. A returned ping
+    // must be passed to commit() once stored, or the next fix is checked against the old track
+    public LocationPing filter(String busId, String routeNumber, double latitude, double longitude, Double speed) {
+        long now = System.currentTimeMillis();
+        Segments s = currentSegments();
+        
+        // Snapped coordinates go through the plausibility check, so a fix pulled onto the
+        // route is compared with the previous snapped one
+        int route = routeNumber != null ? s.network.indexOfRoute(routeNumber) : UNKNOWN;
+        int segment = route >= 0 ? s.nearestSegment(route, latitude, longitude, snapMeters) : UNKNOWN;
+        if (segment != UNKNOWN) {
+            double x = longitude * s.metersPerLngDegree;
+            double y = latitude * METERS_PER_DEGREE;
+            double t = s.projection(segment, x, y);
+            latitude = (s.y1[segment] + t * (s.y2[segment] - s.y1[segment])) / METERS_PER_DEGREE;
+            longitude = (s.x1[segment] + t * (s.x2[segment] - s.x1[segment])) / s.metersPerLngDegree;
+        }
+        
+        // Buses beyond the arena's capacity are snapped but not checked for plausibility
+        int slot = slots.lock(busId, now);
+        if (slot != BusSlots.NONE) {
+            try {
+                if (!plausible(s, lastLatitude[slot], lastLongitude[slot], lastAt[slot], latitude, longitude, now)) {
+                    // A candidate older than reset-after-seconds has nothing left to agree with
+                    boolean agrees = rejectsInRow[slot] > 0 && now - candidateAt[slot] <= resetAfterSeconds * 1000
+                            && plausible(s, candidateLatitude[slot], candidateLongitude[slot], candidateAt[slot],
+                                         latitude, longitude, now);
+                    int agreeing = agrees ? rejectsInRow[slot] + 1 : 1;
+                    if (agreeing <= maxRejectsInRow) {
+                        candidateLatitude[slot] = latitude;
+                        candidateLongitude[slot] = longitude;
+                        candidateAt[slot] = now;
+                        rejectsInRow[slot] = agreeing;
+                        rejected.incrementAndGet();
+                        return null;
+                    }
+                }
+            } finally {
+                slots.unlock(slot);
+            }
+        }
+        accepted.incrementAndGet();
+        if (segment != UNKNOWN) {
+            snapped.incrementAndGet();
+        }
+        return new LocationPing(busId, latitude, longitude, speed, LocalDateTime.now());
+    }
+    
+    // Makes an accepted ping the reference for the bus's next fix and drops the candidate track
+    public void commit(LocationPing ping) {
+        long now = System.currentTimeMillis();
+        int slot = slots.lockIfTracked(ping.getBusId(), now);
+        if (slot == BusSlots.NONE) {
+            return;
+        }
+        try {
+            lastLatitude[slot] = ping.getLatitude();
+            lastLongitude[slot] = ping.getLongitude();
+            lastAt[slot] = now;
+            candidateAt[slot] = 0;
+            rejectsInRow[slot] = 0;
+        } finally {
+            slots.unlock(slot);
+        }
+    }
+    
+    // A slot handed to a bus starts without a track
+    private void clear(int slot) {
+        lastAt[slot] = 0;
+        candidateAt[slot] = 0;
+        rejectsInRow[slot] = 0;
+    }
+    
+    // Whether a bus at the reference fix could be at the new one by now; anything goes
+    // after a reference older than reset-after-seconds, or before the first one
+    private boolean plausible(Segments s, double fromLatitude, double fromLongitude, long fromAt,
+                              double latitude, double longitude, long now) {
+        long elapsed = now - fromAt;
+        if (fromAt == 0 || elapsed > resetAfterSeconds * 1000) {
+            return true;
+        }
+        double dy = (latitude - fromLatitude) * METERS_PER_DEGREE;
+        double dx = (longitude - fromLongitude) * s.metersPerLngDegree;
+        double reachable = maxSpeedKmh / 3.6 * Math.max(0, elapsed) / 1000 + errorMeters;
+        return dx * dx + dy * dy <= reachable * reachable;
+    }
+    
+    public FilterStats getStats() {
+        FilterStats stats = new FilterStats();
+        stats.setTrackedBuses(slots.size());
+        stats.setAccepted(accepted.get());
+        stats.setSnapped(snapped.get());
+        stats.setRejected(rejected.get());
+        return stats;
+    }
+    
+    private Segments currentSegments() {
+        TransitNetwork network = journeyPlanner.getNetwork();
+        Segments s = segments;
+        if (s != null && s.network == network) {
+            return s;
+        }
+        synchronized (this) {
+            s = segments;
+            if (s == null || s.network != network) {
+                segments = s = new Segments(network, cellMeters, snapMeters);
+            }
+            return s;
+        }
+    }
+    
+    // Route polylines of one network in planar meters (equirectangular around the mean
+    // stop latitude), one segment per pair of consecutive stops on the outbound pattern
+    private static final class Segments {
+        private final TransitNetwork network;
+        private final double metersPerLngDegree;
+        private final double cellMeters;
+        private final int[] segmentRoute;
+        private final double[] x1;
+        private final double[] y1;
+        private final double[] x2;
+        private final double[] y2;
+        private final CellTable cells;
+        
+        private Segments(TransitNetwork network, double cellMeters, double corridorMeters) {
+            this.network = network;
+            this.cellMeters = cellMeters;
+            double latitudeSum = 0;
+            for (int stop = 0; stop < network.stopCount(); stop++) {
+                latitudeSum += network.stop(stop).getLatitude();
+            }
+            double meanLatitude = network.stopCount() > 0 ? latitudeSum / network.stopCount() : 0;
+            metersPerLngDegree = METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(meanLatitude)));
+            
+            int count = 0;
+            for (int route = 0; route < network.routeCount(); route++) {
+                count += Math.max(0, network.routeStopCount(route) - 1);
+            }
+            segmentRoute = new int[count];
+            x1 = new double[count];
+            y1 = new double[count];
+            x2 = new double[count];
+            y2 = new double[count];
+            int segment = 0;
+            for (int route = 0; route < network.routeCount(); route++) {
+                for (int position = 1; position < network.routeStopCount(route); position++) {
+                    BusStop from = network.stop(network.routeStop(route, position - 1));
+                    BusStop to = network.stop(network.routeStop(route, position));
+                    segmentRoute[segment] = route;
+                    x1[segment] = from.getLongitude() * metersPerLngDegree;
+                    y1[segment] = from.getLatitude() * METERS_PER_DEGREE;
+                    x2[segment] = to.getLongitude() * metersPerLngDegree;
+                    y2[segment] = to.getLatitude() * METERS_PER_DEGREE;
+                    segment++;
+                }
+            }
+            
+            // (cell, segment) pairs for every cell a segment's corridor overlaps, then
+            // grouped by cell
+            long[] pairKeys = new long[Math.max(16, count * 4)];
+            int[] pairSegments = new int[pairKeys.length];
+            int pairs = 0;
+            for (segment = 0; segment < count; segment++) {
+                long firstRow = (long) Math.floor((Math.min(y1[segment], y2[segment]) - corridorMeters) / cellMeters);
+                long lastRow = (long) Math.floor((Math.max(y1[segment], y2[segment]) + corridorMeters) / cellMeters);
+                long firstColumn = (long) Math.floor((Math.min(x1[segment], x2[segment]) - corridorMeters) / cellMeters);
+                long lastColumn = (long) Math.floor((Math.max(x1[segment], x2[segment]) + corridorMeters) / cellMeters);
+                for (long row = firstRow; row <= lastRow; row++) {
+                    for (long column = firstColumn; column <= lastColumn; column++) {
+                        if (distanceToCell(segment, row, column) > corridorMeters) {
+                            continue;
+                        }
+                        if (pairs == pairKeys.length) {
+                            pairKeys = Arrays.copyOf(pairKeys, pairs * 2);
+                            pairSegments = Arrays.copyOf(pairSegments, pairs * 2);
+                        }
+                        pairKeys[pairs] = CellTable.cellKey(row, column);
+                        pairSegments[pairs++] = segment;
+                    }
+                }
+            }
+            cells = new CellTable(pairKeys, pairSegments, pairs);
+        }
+        
+        // Segment of the route nearest to the point within the radius, or UNKNOWN
+        private int nearestSegment(int route, double latitude, double longitude, double radius) {
+            double x = longitude * metersPerLngDegree;
+            double y = latitude * METERS_PER_DEGREE;
+            int cell = cells.cellOf(CellTable.cellKey((long) Math.floor(y / cellMeters),
+                                                      (long) Math.floor(x / cellMeters)));
+            if (cell == CellTable.NONE) {
+                return UNKNOWN;
+            }
+            int nearest = UNKNOWN;
+            double nearestSquared = radius * radius;
+            for (int i = cells.start(cell); i < cells.end(cell); i++) {
+                int segment = cells.item(i);
+                if (segmentRoute[segment] != route) {
+                    continue;
+                }
+                double t = projection(segment, x, y);
+                double dx = x1[segment] + t * (x2[segment] - x1[segment]) - x;
+                double dy = y1[segment] + t * (y2[segment] - y1[segment]) - y;
+                double squared = dx * dx + dy * dy;
+                if (squared <= nearestSquared) {
+                    nearestSquared = squared;
+                    nearest = segment;
+                }
+            }
+            return nearest;
+        }
+        
+        // Position of the point's projection along the segment, clamped to [0, 1]
+        private double projection(int segment, double x, double y) {
+            double sx = x2[segment] - x1[segment];
+            double sy = y2[segment] - y1[segment];
+            double lengthSquared = sx * sx + sy * sy;
+            if (lengthSquared == 0) {
+                return 0;
+            }
+            return Math.max(0, Math.min(1, ((x - x1[segment]) * sx + (y - y1[segment]) * sy) / lengthSquared));
+        }
+        
+        // Lower bound on the distance from the segment to any point of a cell: distance to
+        // the cell's centre less half its diagonal
+        private double distanceToCell(int segment, long row, long column) {
+            double x = (column + 0.5) * cellMeters;
+            double y = (row + 0.5) * cellMeters;
+            double t = projection(segment, x, y);
+            double dx = x1[segment] + t * (x2[segment] - x1[segment]) - x;
+            double dy = y1[segment] + t * (y2[segment] - y1[segment]) - y;
+            return Math.sqrt(dx * dx + dy * dy) - cellMeters * Math.sqrt(0.5);
+        }
+    }
+    
+    public static class FilterStats {
+        private int trackedBuses;
+        private long accepted;
+        private long snapped;
+        private long rejected;
+        
+        public int getTrackedBuses() { return trackedBuses; }
+        public void setTrackedBuses(int trackedBuses) { this.trackedBuses = trackedBuses; }
+        
+        public long getAccepted() { return accepted; }
+        public void setAccepted(long accepted) { this.accepted = accepted; }
+        
+        public long getSnapped() { return snapped; }
+        public void setSnapped(long snapped) { this.snapped = snapped; }
+        
+        public long getRejected() { return rejected; }
+        public void setRejected(long rejected) { this.rejected = rejected; }
+    }
+}
@@ -0,0 +1,60 @@
+// service/InMemoryFirebaseSink.java
+package com.citybusapp.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local stand-in for the Realtime Database, selected with firebase.sink=memory.
+// Stores every written path so publishing can be exercised without Firebase.
+@Component
+@ConditionalOnProperty(name = "firebase.sink", havingValue = "memory")
+public class InMemoryFirebaseSink implements FirebaseSink {
+    
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong paths = new AtomicLong();
+    
+    @Override
+    public CompletableFuture<Void> updateChildren(Map<String, Object> updates) {
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+            if (update.getValue() == null) {
+                values.remove(update.getKey());
+            } else {
+                values.put(update.getKey(), update.getValue());
+            }
+        }
+        writes.incrementAndGet();
+        paths.addAndGet(updates.size());
+        return CompletableFuture.completedFuture(null);
+    }
+    
+    public Object getValue(String path) {
+        return values.get(path);
+    }
+    
+    // Fields stored for one bus, keyed by field name
+    public Map<String, Object> getBus(String busId) {
+        Map<String, Object> bus = new HashMap<>();
+        String prefix = busId + "/";
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                bus.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+        }
+        return bus;
+    }
+    
+    public long getWriteCount() {
+        return writes.get();
+    }
+    
+    public long getPathCount() {
+        return paths.get();
+    }
+}
@@ -0,0 +1,78 @@
+// service/Journey.java
+package com.citybusapp.service;
+
+import java.util.List;
+
+// One plan produced by JourneyPlanner: a walk to the first stop, one or more bus legs
+// with a transfer between consecutive legs, and a walk from the last stop.
+public class Journey {
+    
+    private final int accessSeconds;
+    private final int egressSeconds;
+    private final int arrivalSeconds;
+    private final List<Leg> legs;
+    
+    public Journey(int accessSeconds, int egressSeconds, int arrivalSeconds, List<Leg> legs) {
+        this.accessSeconds = accessSeconds;
+        this.egressSeconds = egressSeconds;
+        this.arrivalSeconds = arrivalSeconds;
+        this.legs = legs;
+    }
+    
+    public int getAccessSeconds() { return accessSeconds; }
+    
+    public int getEgressSeconds() { return egressSeconds; }
+    
+    // Seconds after departure from the origin at which the destination is reached
+    public int getArrivalSeconds() { return arrivalSeconds; }
+    
+    public List<Leg> getLegs() { return legs; }
+    
+    public int getTransferCount() { return legs.size() - 1; }
+    
+    public static class Leg {
+        private final int pattern;
+        private final int route;
+        private final int boardStop;
+        private final int alightStop;
+        private final int boardPosition;
+        private final int alightPosition;
+        private final int rideSeconds;
+        private final double rideKm;
+        private final int transferWalkSeconds;
+        
+        public Leg(int pattern, int route, int boardStop, int alightStop,
+                   int boardPosition, int alightPosition, int rideSeconds, double rideKm,
+                   int transferWalkSeconds) {
+            this.pattern = pattern;
+            this.route = route;
+            this.boardStop = boardStop;
+            this.alightStop = alightStop;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+            this.rideSeconds = rideSeconds;
+            this.rideKm = rideKm;
+            this.transferWalkSeconds = transferWalkSeconds;
+        }
+        
+        public int getPattern() { return pattern; }
+        
+        public int getRoute() { return route; }
+        
+        public int getBoardStop() { return boardStop; }
+        
+        public int getAlightStop() { return alightStop; }
+        
+        public int getBoardPosition() { return boardPosition; }
+        
+        public int getAlightPosition() { return alightPosition; }
+        
+        public int getRideSeconds() { return rideSeconds; }
+        
+        public double getRideKm() { return rideKm; }
+        
+        // Walk from the previous leg's alight stop to this leg's board stop; 0 when
+        // both are the same stop or this is the first leg
+        public int getTransferWalkSeconds() { return transferWalkSeconds; }
+    }
+}
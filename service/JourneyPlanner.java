@@ -0,0 +1,570 @@
+// service/JourneyPlanner.java
+package com.citybusapp.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+// Round-based RAPTOR over the TransitNetwork. Round k finds the earliest arrival at
+// every stop using exactly k bus legs; a journey is kept only if it beats every
+// journey with fewer legs, so the result is the duration/transfers Pareto front.
+// After each round, stops reached by bus relax their walking links, so the next leg
+// can board at a neighbouring stop.
+@Component
+public class JourneyPlanner {
+    
+    // Fixed penalty for changing buses, matching the transfer walk RouteService shows
+    public static final int TRANSFER_SECONDS = 5 * 60;
+    
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    
+    private static final String SOURCE_DATABASE = "database";
+    private static final String SOURCE_FILE = "snapshot-file";
+    
+    @Autowired
+    private TransitNetworkLoader transitNetworkLoader;
+    
+    @Autowired
+    private NetworkSnapshotFile networkSnapshotFile;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${routing.max-transfers:3}")
+    private int maxTransfers;
+    
+    private volatile TransitNetwork network =
+            TransitNetwork.build(Collections.emptyList(), new HashMap<>());
+    
+    private volatile String loadedFrom = "empty";
+    
+    // Set by WalkingTransferIndex; only used with the network it was built for
+    private volatile WalkingTransferIndex.Table walkingTransfers;
+    
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<>();
+    
+    private DistributionSummary roundsSummary;
+    private DistributionSummary patternsSummary;
+    
+    @PostConstruct
+    public void registerMeters() {
+        roundsSummary = DistributionSummary.builder("citybus.route.transfer.rounds")
+                .description("RAPTOR rounds (transfers + 1) run by one search")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(16.0)
+                .register(meterRegistry);
+        patternsSummary = DistributionSummary.builder("citybus.route.transfer.patterns")
+                .description("Route patterns scanned by one search, summed over rounds")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(100000.0)
+                .register(meterRegistry);
+    }
+    
+    // Serves from the snapshot file when there is one and only then checks it against the
+    // database, so routing is available as soon as the file is read
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        TransitNetwork cached = networkSnapshotFile.read();
+        if (cached == null) {
+            reload();
+            return;
+        }
+        swap(cached, SOURCE_FILE);
+        try {
+            reloadIfChanged();
+        } catch (RuntimeException e) {
+            // Database unavailable: keep the file's network, the next poll tries again
+        }
+    }
+    
+    // Loads a new snapshot and swaps it in with one volatile write; searches that already
+    // hold the previous one finish on it
+    public synchronized void reload() {
+        TransitNetwork fresh = transitNetworkLoader.load(network.getVersion() + 1);
+        swap(fresh, SOURCE_DATABASE);
+        networkSnapshotFile.write(fresh);
+    }
+    
+    private synchronized void swap(TransitNetwork fresh, String source) {
+        network = fresh;
+        loadedFrom = source;
+        eventPublisher.publishEvent(new NetworkTopologyChangedEvent("journey-planner"));
+    }
+    
+    // A transaction that saves many stops publishes one event per stop; the first reload
+    // picks them all up and the rest only compare fingerprints
+    @TransactionalEventListener
+    public void onBusStopChanged(BusStopChangedEvent event) {
+        reloadIfChanged();
+    }
+    
+    // Picks up changes written by other instances or directly to the database
+    @Scheduled(fixedDelayString = "${network.poll-interval-ms:60000}",
+               initialDelayString = "${network.poll-interval-ms:60000}")
+    public void pollForChanges() {
+        reloadIfChanged();
+    }
+    
+    public synchronized boolean reloadIfChanged() {
+        if (transitNetworkLoader.fingerprint().equals(network.getFingerprint())) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+    
+    public TransitNetwork getNetwork() {
+        return network;
+    }
+    
+    public void useWalkingTransfers(WalkingTransferIndex.Table transfers) {
+        walkingTransfers = transfers;
+    }
+    
+    public NetworkStatus getStatus() {
+        TransitNetwork current = network;
+        NetworkStatus status = new NetworkStatus();
+        status.setVersion(current.getVersion());
+        status.setFingerprint(current.getFingerprint());
+        status.setLoadedAt(current.getLoadedAt());
+        status.setLoadedFrom(loadedFrom);
+        status.setStops(current.stopCount());
+        status.setRoutes(current.routeCount());
+        status.setPatterns(current.patternCount());
+        return status;
+    }
+    
+    public List<Journey> plan(TransitNetwork network,
+                              int[] accessStops, int[] accessSeconds,
+                              int[] egressStops, int[] egressSeconds) {
+        return plan(network, accessStops, accessSeconds, egressStops, egressSeconds, maxTransfers);
+    }
+    
+    public List<Journey> plan(TransitNetwork network,
+                              int[] accessStops, int[] accessSeconds,
+                              int[] egressStops, int[] egressSeconds,
+                              int maxTransfers) {
+        int rounds = maxTransfers + 1;
+        Workspace ws = workspace(network, rounds);
+        int[] egress = ws.egress;
+        
+        for (int i = 0; i < egressStops.length; i++) {
+            int stop = egressStops[i];
+            if (egress[stop] == UNREACHED || egressSeconds[i] < egress[stop]) {
+                egress[stop] = egressSeconds[i];
+            }
+        }
+        
+        WalkingTransferIndex.Table transfers = walkingTransfersFor(network);
+        boolean anyMarked = seed(ws, accessStops, accessSeconds);
+        List<Journey> journeys = new ArrayList<>();
+        int bestTarget = UNREACHED;
+        int roundsRun = 0;
+        long patternsScanned = 0;
+        
+        for (int k = 1; k <= rounds && anyMarked; k++) {
+            patternsScanned += scanRound(network, transfers, ws, k, bestTarget);
+            roundsRun++;
+            anyMarked = ws.anyMarked;
+            
+            int[] current = ws.arrival[k];
+            int[] walkedFrom = ws.legWalkFrom[k];
+            int targetStop = -1;
+            for (int i = 0; i < egressStops.length; i++) {
+                int stop = egressStops[i];
+                if (current[stop] != UNREACHED && current[stop] + egress[stop] < bestTarget) {
+                    bestTarget = current[stop] + egress[stop];
+                    targetStop = stop;
+                }
+            }
+            if (targetStop >= 0) {
+                // A target reached on foot adds that walk to the egress from where the bus was left
+                int alightStop = walkedFrom[targetStop] >= 0 ? walkedFrom[targetStop] : targetStop;
+                journeys.add(reconstruct(network, ws, k, alightStop, bestTarget - current[alightStop], bestTarget));
+            }
+        }
+        
+        roundsSummary.record(roundsRun);
+        patternsSummary.record(patternsScanned);
+        return journeys;
+    }
+    
+    // One search from the access stops to many targets at once. Target t is left from the
+    // stops targetStops[targetOffsets[t] .. targetOffsets[t + 1]) after the matching
+    // targetEgressSeconds. The network is explored once, without pruning against any one
+    // target; each target then gets its fastest journey (fewest legs on ties), or null
+    // when no bus journey reaches it.
+    public Journey[] planToMany(TransitNetwork network,
+                                int[] accessStops, int[] accessSeconds,
+                                int[] targetOffsets, int[] targetStops, int[] targetEgressSeconds) {
+        Workspace ws = workspace(network, maxTransfers + 1);
+        int roundsRun = searchAll(network, ws, accessStops, accessSeconds, UNREACHED);
+        
+        Journey[] journeys = new Journey[targetOffsets.length - 1];
+        for (int t = 0; t < journeys.length; t++) {
+            int bestArrival = UNREACHED;
+            int bestRound = -1;
+            int bestStop = -1;
+            for (int i = targetOffsets[t]; i < targetOffsets[t + 1]; i++) {
+                int stop = targetStops[i];
+                for (int k = 1; k <= roundsRun; k++) {
+                    int arrival = ws.arrival[k][stop];
+                    if (arrival != UNREACHED && arrival + targetEgressSeconds[i] < bestArrival) {
+                        bestArrival = arrival + targetEgressSeconds[i];
+                        bestRound = k;
+                        bestStop = stop;
+                    }
+                }
+            }
+            if (bestRound > 0) {
+                int walkedFrom = ws.legWalkFrom[bestRound][bestStop];
+                int alightStop = walkedFrom >= 0 ? walkedFrom : bestStop;
+                journeys[t] = reconstruct(network, ws, bestRound, alightStop,
+                                          bestArrival - ws.arrival[bestRound][alightStop], bestArrival);
+            }
+        }
+        return journeys;
+    }
+    
+    // One search from the access stops to every stop, pruned at budgetSeconds. Returns
+    // the earliest arrival at each stop within the budget and the bus legs it takes
+    // (0 for the access stops themselves); unreached stops are left at -1.
+    public Reach planToAll(TransitNetwork network, int[] accessStops, int[] accessSeconds, int budgetSeconds) {
+        Workspace ws = workspace(network, maxTransfers + 1);
+        searchAll(network, ws, accessStops, accessSeconds, budgetSeconds + 1);
+        
+        int stops = network.stopCount();
+        int[] arrival = new int[stops];
+        int[] legs = new int[stops];
+        Arrays.fill(arrival, -1);
+        Arrays.fill(legs, -1);
+        for (int stop = 0; stop < stops; stop++) {
+            int best = ws.best[stop];
+            if (best == UNREACHED || best > budgetSeconds) {
+                continue;
+            }
+            int k = 0;
+            while (ws.arrival[k][stop] != best) {
+                k++;
+            }
+            arrival[stop] = best;
+            legs[stop] = k;
+        }
+        return new Reach(network, arrival, legs);
+    }
+    
+    // planToMany without building journeys: seconds[t] and legs[t] get the arrival and
+    // bus legs of target t's fastest journey, or -1 when no bus journey reaches it
+    public void travelTimes(TransitNetwork network, int[] accessStops, int[] accessSeconds,
+                            int[] targetOffsets, int[] targetStops, int[] targetEgressSeconds,
+                            int[] seconds, int[] legs) {
+        Workspace ws = workspace(network, maxTransfers + 1);
+        int roundsRun = searchAll(network, ws, accessStops, accessSeconds, UNREACHED);
+        for (int t = 0; t < targetOffsets.length - 1; t++) {
+            int bestArrival = UNREACHED;
+            int bestRound = -1;
+            for (int i = targetOffsets[t]; i < targetOffsets[t + 1]; i++) {
+                int stop = targetStops[i];
+                for (int k = 1; k <= roundsRun; k++) {
+                    int arrival = ws.arrival[k][stop];
+                    if (arrival != UNREACHED && arrival + targetEgressSeconds[i] < bestArrival) {
+                        bestArrival = arrival + targetEgressSeconds[i];
+                        bestRound = k;
+                    }
+                }
+            }
+            seconds[t] = bestRound > 0 ? bestArrival : -1;
+            legs[t] = bestRound;
+        }
+    }
+    
+    // Every round from the access stops, pruned only at the bound; returns the rounds run
+    private int searchAll(TransitNetwork network, Workspace ws, int[] accessStops, int[] accessSeconds, int bound) {
+        WalkingTransferIndex.Table transfers = walkingTransfersFor(network);
+        boolean anyMarked = seed(ws, accessStops, accessSeconds);
+        int roundsRun = 0;
+        long patternsScanned = 0;
+        for (int k = 1; k <= ws.rounds && anyMarked; k++) {
+            patternsScanned += scanRound(network, transfers, ws, k, bound);
+            roundsRun++;
+            anyMarked = ws.anyMarked;
+        }
+        roundsSummary.record(roundsRun);
+        patternsSummary.record(patternsScanned);
+        return roundsRun;
+    }
+    
+    private static boolean seed(Workspace ws, int[] accessStops, int[] accessSeconds) {
+        boolean anyMarked = false;
+        for (int i = 0; i < accessStops.length; i++) {
+            int stop = accessStops[i];
+            if (accessSeconds[i] < ws.arrival[0][stop]) {
+                ws.arrival[0][stop] = accessSeconds[i];
+                ws.best[stop] = accessSeconds[i];
+                ws.marked[stop] = true;
+                anyMarked = true;
+            }
+        }
+        return anyMarked;
+    }
+    
+    // Round k: ride every pattern touched in round k - 1, recording arrivals that beat
+    // both the best known arrival at the stop and the bound, then walk from the stops
+    // reached. Sets ws.anyMarked and returns the number of patterns scanned.
+    private static int scanRound(TransitNetwork network, WalkingTransferIndex.Table transfers,
+                                 Workspace ws, int k, int bound) {
+        int[] best = ws.best;
+        int[] previous = ws.arrival[k - 1];
+        int[] current = ws.arrival[k];
+        int touchedCount = collectPatterns(network, ws);
+        
+        boolean anyMarked = false;
+        int reachedCount = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int pattern = ws.touchedPatterns[t];
+            int from = ws.patternFrom[pattern];
+            ws.patternFrom[pattern] = UNREACHED;
+            
+            int length = network.patternLength(pattern);
+            int onBoard = UNREACHED;
+            int boardStop = -1;
+            int boardPosition = -1;
+            for (int position = from; position < length; position++) {
+                int stop = network.patternStop(pattern, position);
+                if (onBoard != UNREACHED) {
+                    onBoard += network.hopSeconds(pattern, position);
+                    if (onBoard < best[stop] && onBoard < bound) {
+                        if (!ws.marked[stop]) {
+                            ws.reachedStops[reachedCount++] = stop;
+                        }
+                        current[stop] = onBoard;
+                        best[stop] = onBoard;
+                        ws.legWalkFrom[k][stop] = -1;
+                        ws.legPattern[k][stop] = pattern;
+                        ws.legBoardStop[k][stop] = boardStop;
+                        ws.legBoardPosition[k][stop] = boardPosition;
+                        ws.legAlightPosition[k][stop] = position;
+                        ws.marked[stop] = true;
+                        anyMarked = true;
+                    }
+                }
+                if (previous[stop] != UNREACHED && position < length - 1) {
+                    int ready = previous[stop] + (k > 1 ? TRANSFER_SECONDS : 0);
+                    if (ready < onBoard) {
+                        onBoard = ready;
+                        boardStop = stop;
+                        boardPosition = position;
+                    }
+                }
+            }
+        }
+        
+        // Walks only start where a bus was left this round, and never replace a bus
+        // arrival of the same round, so each transfer is at most one walk
+        if (transfers != null) {
+            for (int r = 0; r < reachedCount; r++) {
+                int from = ws.reachedStops[r];
+                for (int slot = transfers.firstSlot(from); slot < transfers.endSlot(from); slot++) {
+                    int to = transfers.slotStop(slot);
+                    int walked = current[from] + transfers.slotWalkSeconds(slot);
+                    if (walked < best[to] && walked < bound && !(ws.marked[to] && ws.legWalkFrom[k][to] < 0)) {
+                        current[to] = walked;
+                        best[to] = walked;
+                        ws.legWalkFrom[k][to] = from;
+                        ws.marked[to] = true;
+                    }
+                }
+            }
+        }
+        ws.anyMarked = anyMarked;
+        return touchedCount;
+    }
+    
+    private WalkingTransferIndex.Table walkingTransfersFor(TransitNetwork network) {
+        WalkingTransferIndex.Table transfers = walkingTransfers;
+        return transfers != null && transfers.network() == network ? transfers : null;
+    }
+    
+    // Patterns serving a stop marked in the previous round, each with the earliest
+    // marked position from which it has to be scanned
+    private static int collectPatterns(TransitNetwork network, Workspace ws) {
+        int touched = 0;
+        for (int stop = 0; stop < ws.marked.length; stop++) {
+            if (!ws.marked[stop]) {
+                continue;
+            }
+            ws.marked[stop] = false;
+            for (int slot = network.firstPatternSlot(stop); slot < network.endPatternSlot(stop); slot++) {
+                int pattern = network.slotPattern(slot);
+                int position = network.slotPosition(slot);
+                if (ws.patternFrom[pattern] == UNREACHED) {
+                    ws.touchedPatterns[touched++] = pattern;
+                    ws.patternFrom[pattern] = position;
+                } else if (position < ws.patternFrom[pattern]) {
+                    ws.patternFrom[pattern] = position;
+                }
+            }
+        }
+        return touched;
+    }
+    
+    private static Journey reconstruct(TransitNetwork network, Workspace ws, int round,
+                                       int targetStop, int egressSeconds, int arrivalSeconds) {
+        Journey.Leg[] legs = new Journey.Leg[round];
+        int stop = targetStop;
+        for (int k = round; k >= 1; k--) {
+            int pattern = ws.legPattern[k][stop];
+            int boardPosition = ws.legBoardPosition[k][stop];
+            int alightPosition = ws.legAlightPosition[k][stop];
+            int rideSeconds = 0;
+            double rideKm = 0;
+            for (int position = boardPosition + 1; position <= alightPosition; position++) {
+                rideSeconds += network.hopSeconds(pattern, position);
+                rideKm += network.hopKm(pattern, position);
+            }
+            int boardStop = ws.legBoardStop[k][stop];
+            // A board stop reached on foot was walked to from where the previous leg ended
+            int previousStop = boardStop;
+            int transferWalkSeconds = 0;
+            if (k > 1 && ws.legWalkFrom[k - 1][boardStop] >= 0) {
+                previousStop = ws.legWalkFrom[k - 1][boardStop];
+                transferWalkSeconds = ws.arrival[k - 1][boardStop] - ws.arrival[k - 1][previousStop];
+            }
+            legs[k - 1] = new Journey.Leg(pattern, network.patternRoute(pattern), boardStop, stop,
+                                          boardPosition, alightPosition, rideSeconds, rideKm,
+                                          transferWalkSeconds);
+            stop = previousStop;
+        }
+        return new Journey(ws.arrival[0][stop], egressSeconds, arrivalSeconds, Arrays.asList(legs));
+    }
+    
+    // Per-thread scratch arrays, reset rather than reallocated between queries
+    private Workspace workspace(TransitNetwork network, int rounds) {
+        Workspace ws = workspaces.get();
+        if (ws == null || ws.network != network || ws.rounds != rounds) {
+            ws = new Workspace(network, rounds);
+            workspaces.set(ws);
+        } else {
+            ws.reset();
+        }
+        return ws;
+    }
+    
+    private static final class Workspace {
+        private final TransitNetwork network;
+        private final int rounds;
+        private final int[][] arrival;
+        private final int[][] legPattern;
+        private final int[][] legBoardStop;
+        private final int[][] legBoardPosition;
+        private final int[][] legAlightPosition;
+        // Stop walked from, or -1 when the stop was reached by bus in that round
+        private final int[][] legWalkFrom;
+        private final int[] best;
+        private final int[] egress;
+        private final boolean[] marked;
+        private final int[] patternFrom;
+        private final int[] touchedPatterns;
+        private final int[] reachedStops;
+        private boolean anyMarked;
+        
+        private Workspace(TransitNetwork network, int rounds) {
+            int stops = network.stopCount();
+            this.network = network;
+            this.rounds = rounds;
+            this.arrival = new int[rounds + 1][stops];
+            this.legPattern = new int[rounds + 1][stops];
+            this.legBoardStop = new int[rounds + 1][stops];
+            this.legBoardPosition = new int[rounds + 1][stops];
+            this.legAlightPosition = new int[rounds + 1][stops];
+            this.legWalkFrom = new int[rounds + 1][stops];
+            this.best = new int[stops];
+            this.egress = new int[stops];
+            this.marked = new boolean[stops];
+            this.patternFrom = new int[network.patternCount()];
+            this.touchedPatterns = new int[network.patternCount()];
+            this.reachedStops = new int[stops];
+            reset();
+        }
+        
+        private void reset() {
+            for (int[] round : arrival) {
+                Arrays.fill(round, UNREACHED);
+            }
+            Arrays.fill(best, UNREACHED);
+            Arrays.fill(egress, UNREACHED);
+            Arrays.fill(marked, false);
+            Arrays.fill(patternFrom, UNREACHED);
+        }
+    }
+    
+    // Result of planToAll, indexed by the stops of its network
+    public static final class Reach {
+        private final TransitNetwork network;
+        private final int[] arrivalSeconds;
+        private final int[] legs;
+        
+        private Reach(TransitNetwork network, int[] arrivalSeconds, int[] legs) {
+            this.network = network;
+            this.arrivalSeconds = arrivalSeconds;
+            this.legs = legs;
+        }
+        
+        public TransitNetwork network() { return network; }
+        
+        public boolean reached(int stop) { return arrivalSeconds[stop] >= 0; }
+        
+        public int arrivalSeconds(int stop) { return arrivalSeconds[stop]; }
+        
+        public int legs(int stop) { return legs[stop]; }
+    }
+    
+    public static class NetworkStatus {
+        private long version;
+        private String fingerprint;
+        private LocalDateTime loadedAt;
+        private String loadedFrom;
+        private int stops;
+        private int routes;
+        private int patterns;
+        
+        public long getVersion() { return version; }
+        public void setVersion(long version) { this.version = version; }
+        
+        public String getFingerprint() { return fingerprint; }
+        public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+        
+        public LocalDateTime getLoadedAt() { return loadedAt; }
+        public void setLoadedAt(LocalDateTime loadedAt) { this.loadedAt = loadedAt; }
+        
+        public String getLoadedFrom() { return loadedFrom; }
+        public void setLoadedFrom(String loadedFrom) { this.loadedFrom = loadedFrom; }
+        
+        public int getStops() { return stops; }
+        public void setStops(int stops) { this.stops = stops; }
+        
+        public int getRoutes() { return routes; }
+        public void setRoutes(int routes) { this.routes = routes; }
+        
+        public int getPatterns() { return patterns; }
+        public void setPatterns(int patterns) { this.patterns = patterns; }
+    }
+}
@@ -0,0 +1,116 @@
+// service/LiveBusStore.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.repository.BusRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Authoritative live state of every bus. Entries are never mutated in place: a location
+// update swaps in a new Bus copy, so readers get a consistent object without locking and
+// writers only contend on the hash bin of the bus they update. PostgreSQL is the durable
+// copy, written behind by LocationIngestPipeline.
+@Component
+public class LiveBusStore {
+    
+    @Autowired
+    private BusRepository busRepository;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    private final ConcurrentHashMap<String, Bus> buses = new ConcurrentHashMap<>();
+    
+    private volatile boolean loaded;
+    
+    // Warm load on startup, then periodically pick up buses added directly in the database
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${live-store.resync-interval-ms:60000}",
+               initialDelayString = "${live-store.resync-interval-ms:60000}")
+    public void reload() {
+        for (Bus stored : busRepository.findAll()) {
+            Bus previous = buses.get(stored.getId());
+            buses.merge(stored.getId(), copyOf(stored), LiveBusStore::newer);
+            if (previous == null || !Objects.equals(previous.getNumber(), stored.getNumber())
+                    || !Objects.equals(previous.getRouteName(), stored.getRouteName())) {
+                eventPublisher.publishEvent(new BusDetailsChangedEvent(stored.getId()));
+            }
+        }
+        loaded = true;
+    }
+    
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    public Bus get(String busId) {
+        return buses.get(busId);
+    }
+    
+    public boolean contains(String busId) {
+        return buses.containsKey(busId);
+    }
+    
+    public List<Bus> getAll() {
+        List<Bus> all = new ArrayList<>(buses.values());
+        all.sort(Comparator.comparing(Bus::getId));
+        return all;
+    }
+    
+    // Adds a bus that has no database row, e.g. a simulated one; existing buses are kept
+    public void register(Bus bus) {
+        if (buses.putIfAbsent(bus.getId(), copyOf(bus)) == null) {
+            eventPublisher.publishEvent(new BusDetailsChangedEvent(bus.getId()));
+        }
+    }
+    
+    // Returns the updated bus, or null if the bus is unknown or the ping is older than its state
+    public Bus applyPing(LocationPing ping) {
+        Bus[] updated = new Bus[1];
+        buses.computeIfPresent(ping.getBusId(), (id, current) -> {
+            if (current.getLastUpdated() != null && ping.getRecordedAt().isBefore(current.getLastUpdated())) {
+                return current;
+            }
+            Bus next = copyOf(current);
+            next.setLatitude(ping.getLatitude());
+            next.setLongitude(ping.getLongitude());
+            next.setSpeed(ping.getSpeed());
+            next.setLastUpdated(ping.getRecordedAt());
+            updated[0] = next;
+            return next;
+        });
+        return updated[0];
+    }
+    
+    private static Bus newer(Bus current, Bus stored) {
+        if (current.getLastUpdated() == null) {
+            return stored;
+        }
+        if (stored.getLastUpdated() == null || stored.getLastUpdated().isBefore(current.getLastUpdated())) {
+            // Keep the live position but take static fields from the database
+            Bus merged = copyOf(stored);
+            merged.setLatitude(current.getLatitude());
+            merged.setLongitude(current.getLongitude());
+            merged.setSpeed(current.getSpeed());
+            merged.setLastUpdated(current.getLastUpdated());
+            return merged;
+        }
+        return stored;
+    }
+    
+    private static Bus copyOf(Bus bus) {
+        return new Bus(bus.getId(), bus.getNumber(), bus.getRouteName(),
+                       bus.getLatitude(), bus.getLongitude(), bus.getSpeed(),
+                       bus.getOccupancy(), bus.getLastUpdated());
+    }
+}
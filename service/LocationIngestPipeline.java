@@ -0,0 +1,244 @@
+// service/LocationIngestPipeline.java
+package com.citybusapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decouples location updates from PostgreSQL. Pings go into a bounded lock-free queue
+// and the request thread returns immediately; a single flusher thread drains the queue,
+// keeps the latest ping per bus and writes them as one JDBC batch, either every
+// flush interval or as soon as the queue holds a full batch.
+@Component
+public class LocationIngestPipeline {
+    
+    private static final String UPDATE_SQL =
+        "UPDATE buses SET latitude = ?, longitude = ?, speed = ?, last_updated = ? " +
+        "WHERE id = ? AND (last_updated IS NULL OR last_updated <= ?)";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Value("${ingest.queue-capacity:20000}")
+    private int queueCapacity;
+    
+    @Value("${ingest.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+    
+    @Value("${ingest.flush-batch-size:2000}")
+    private int flushBatchSize;
+    
+    private final ConcurrentLinkedQueue<LocationPing> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    // Pings lost with a failed flush, apart from the ones turned away at a full queue
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastFlushMillis;
+    
+    private ScheduledExecutorService flusher;
+    
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "location-ingest-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        flush();
+    }
+    
+    // Returns false when the queue is full; the caller should ask the client to retry
+    public boolean accept(LocationPing ping) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.offer(ping);
+        accepted.incrementAndGet();
+        
+        if (queued.get() >= flushBatchSize && !flusher.isShutdown()
+                && flushPending.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+        return true;
+    }
+    
+    // Runs on the flusher thread only
+    void flush() {
+        flushPending.set(false);
+        while (!queue.isEmpty()) {
+            Map<String, LocationPing> latest = drain();
+            if (latest.isEmpty()) {
+                return;
+            }
+            write(new ArrayList<>(latest.values()));
+        }
+    }
+    
+    private Map<String, LocationPing> drain() {
+        Map<String, LocationPing> latest = new LinkedHashMap<>();
+        int drained = 0;
+        LocationPing ping;
+        while (drained < flushBatchSize && (ping = queue.poll()) != null) {
+            queued.decrementAndGet();
+            drained++;
+            LocationPing previous = latest.get(ping.getBusId());
+            if (previous == null || !ping.getRecordedAt().isBefore(previous.getRecordedAt())) {
+                latest.put(ping.getBusId(), ping);
+            }
+            if (previous != null) {
+                coalesced.incrementAndGet();
+            }
+        }
+        return latest;
+    }
+    
+    private void write(List<LocationPing> batch) {
+        long started = System.currentTimeMillis();
+        List<LocationPing> applied = new ArrayList<>(batch.size());
+        List<LocationPing> missed = new ArrayList<>();
+        try {
+            int[][] counts = transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, ping) -> {
+                    Timestamp recordedAt = Timestamp.valueOf(ping.getRecordedAt());
+                    ps.setDouble(1, ping.getLatitude());
+                    ps.setDouble(2, ping.getLongitude());
+                    if (ping.getSpeed() != null) {
+                        ps.setDouble(3, ping.getSpeed());
+                    } else {
+                        ps.setNull(3, Types.DOUBLE);
+                    }
+                    ps.setTimestamp(4, recordedAt);
+                    ps.setString(5, ping.getBusId());
+                    ps.setTimestamp(6, recordedAt);
+                }));
+            
+            int index = 0;
+            for (int[] chunk : counts) {
+                for (int count : chunk) {
+                    // Drivers may report SUCCESS_NO_INFO (-2) for batched statements
+                    if (count != 0) {
+                        applied.add(batch.get(index));
+                    } else {
+                        missed.add(batch.get(index));
+                        unmatched.incrementAndGet();
+                    }
+                    index++;
+                }
+            }
+            written.addAndGet(applied.size());
+            flushes.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            failed.addAndGet(batch.size());
+            return;
+        } finally {
+            lastFlushMillis = System.currentTimeMillis() - started;
+        }
+        eventPublisher.publishEvent(new BusLocationsFlushedEvent(applied, missed));
+    }
+    
+    public IngestStats getStats() {
+        IngestStats stats = new IngestStats();
+        stats.setQueueDepth(queued.get());
+        stats.setQueueCapacity(queueCapacity);
+        stats.setAccepted(accepted.get());
+        stats.setDropped(dropped.get());
+        stats.setCoalesced(coalesced.get());
+        stats.setWritten(written.get());
+        stats.setUnmatched(unmatched.get());
+        stats.setFlushes(flushes.get());
+        stats.setFailedFlushes(failedFlushes.get());
+        stats.setFailed(failed.get());
+        stats.setLastFlushMillis(lastFlushMillis);
+        return stats;
+    }
+    
+    public static class IngestStats {
+        private int queueDepth;
+        private int queueCapacity;
+        private long accepted;
+        private long dropped;
+        private long coalesced;
+        private long written;
+        private long unmatched;
+        private long flushes;
+        private long failedFlushes;
+        private long failed;
+        private long lastFlushMillis;
+        
+        public int getQueueDepth() { return queueDepth; }
+        public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+        
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        
+        public long getAccepted() { return accepted; }
+        public void setAccepted(long accepted) { this.accepted = accepted; }
+        
+        public long getDropped() { return dropped; }
+        public void setDropped(long dropped) { this.dropped = dropped; }
+        
+        public long getCoalesced() { return coalesced; }
+        public void setCoalesced(long coalesced) { this.coalesced = coalesced; }
+        
+        public long getWritten() { return written; }
+        public void setWritten(long written) { this.written = written; }
+        
+        public long getUnmatched() { return unmatched; }
+        public void setUnmatched(long unmatched) { this.unmatched = unmatched; }
+        
+        public long getFlushes() { return flushes; }
+        public void setFlushes(long flushes) { this.flushes = flushes; }
+        
+        public long getFailedFlushes() { return failedFlushes; }
+        public void setFailedFlushes(long failedFlushes) { this.failedFlushes = failedFlushes; }
+        
+        public long getFailed() { return failed; }
+        public void setFailed(long failed) { this.failed = failed; }
+        
+        public long getLastFlushMillis() { return lastFlushMillis; }
+        public void setLastFlushMillis(long lastFlushMillis) { this.lastFlushMillis = lastFlushMillis; }
+    }
+}
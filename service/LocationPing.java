@@ -0,0 +1,31 @@
+// service/LocationPing.java
+package com.citybusapp.service;
+
+import java.time.LocalDateTime;
+
+public class LocationPing {
+    
+    private final String busId;
+    private final double latitude;
+    private final double longitude;
+    private final Double speed;
+    private final LocalDateTime recordedAt;
+    
+    public LocationPing(String busId, double latitude, double longitude, Double speed, LocalDateTime recordedAt) {
+        this.busId = busId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.speed = speed;
+        this.recordedAt = recordedAt;
+    }
+    
+    public String getBusId() { return busId; }
+    
+    public double getLatitude() { return latitude; }
+    
+    public double getLongitude() { return longitude; }
+    
+    public Double getSpeed() { return speed; }
+    
+    public LocalDateTime getRecordedAt() { return recordedAt; }
+}
@@ -0,0 +1,123 @@
+// service/NetworkSnapshotFile.java
+package com.citybusapp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// Local copy of the last network loaded from the database, so a restart can serve routes
+// before the database has been read. Layout: a 24-byte header (magic, format version,
+// payload length, CRC32 of the payload) followed by TransitNetwork's binary form. The
+// file is memory-mapped and read with bulk copies; any mismatch means no snapshot.
+@Component
+public class NetworkSnapshotFile {
+    
+    private static final int MAGIC = 0x43424e53; // "CBNS"
+    // Bump whenever TransitNetwork.writeTo changes
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    
+    // Empty disables the snapshot
+    @Value("${network.snapshot.path:}")
+    private String path;
+    
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    
+    public boolean isEnabled() {
+        return path != null && !path.isEmpty();
+    }
+    
+    // The stored network, or null when there is none or it is unreadable
+    public TransitNetwork read() {
+        if (!isEnabled() || !Files.isRegularFile(Paths.get(path))) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("truncated header");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != FORMAT_VERSION) {
+                throw new IOException("not a network snapshot of this format");
+            }
+            long length = mapped.getLong();
+            long checksum = mapped.getLong();
+            if (length != channel.size() - HEADER_BYTES) {
+                throw new IOException("truncated payload");
+            }
+            ByteBuffer payload = mapped.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("checksum mismatch");
+            }
+            TransitNetwork network = TransitNetwork.readFrom(payload);
+            reads.incrementAndGet();
+            return network;
+        } catch (IOException | RuntimeException e) {
+            rejected.incrementAndGet();
+            return null;
+        }
+    }
+    
+    // Written to a temporary file and moved into place, so readers never see half a file
+    public void write(TransitNetwork network) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                network.writeTo(out);
+            }
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(payload.length).putLong(crc.getValue());
+            header.flip();
+            
+            Path target = Paths.get(path).toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer[] buffers = { header, ByteBuffer.wrap(payload) };
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writes.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failedWrites.incrementAndGet();
+        }
+    }
+    
+    public long getReads() { return reads.get(); }
+    
+    public long getWrites() { return writes.get(); }
+    
+    public long getRejected() { return rejected.get(); }
+    
+    public long getFailedWrites() { return failedWrites.get(); }
+}
@@ -0,0 +1,15 @@
+// service/NetworkTopologyChangedEvent.java
+package com.citybusapp.service;
+
+// Published after a component that route plans depend on has swapped in new stop or
+// route data, so anything derived from earlier plans can be dropped.
+public class NetworkTopologyChangedEvent {
+    
+    private final String source;
+    
+    public NetworkTopologyChangedEvent(String source) {
+        this.source = source;
+    }
+    
+    public String getSource() { return source; }
+}
@@ -0,0 +1,406 @@
+// service/PositionHistoryStore.java
+package com.citybusapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Append-only trajectory of every bus, next to the single current row in buses. Flushed
+// pings are queued here and written by a separate thread as JDBC batches into
+// bus_positions, which is range-partitioned by day. A nightly job keeps one sample per
+// bus and downsample interval of days older than the raw retention in
+// bus_positions_downsampled and drops the raw partition; old downsampled days are
+// dropped in turn. Retention is dropping partitions, never a DELETE.
+@Component
+public class PositionHistoryStore {
+    
+    private static final String RAW_TABLE = "bus_positions";
+    private static final String DOWNSAMPLED_TABLE = "bus_positions_downsampled";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    
+    private static final String INSERT_SQL =
+        "INSERT INTO " + RAW_TABLE + " (bus_id, recorded_at, latitude, longitude, speed) VALUES (?, ?, ?, ?, ?)";
+    
+    // A day lives in exactly one of the two tables, so the union never repeats a ping
+    private static final String HISTORY_SQL =
+        "SELECT bus_id, recorded_at, latitude, longitude, speed FROM " + RAW_TABLE +
+        " WHERE bus_id = ? AND recorded_at >= ? AND recorded_at < ? " +
+        "UNION ALL " +
+        "SELECT bus_id, recorded_at, latitude, longitude, speed FROM " + DOWNSAMPLED_TABLE +
+        " WHERE bus_id = ? AND recorded_at >= ? AND recorded_at < ? " +
+        "ORDER BY recorded_at";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Value("${history.queue-capacity:50000}")
+    private int queueCapacity;
+    
+    @Value("${history.flush-interval-ms:2000}")
+    private long flushIntervalMs;
+    
+    @Value("${history.batch-size:5000}")
+    private int batchSize;
+    
+    @Value("${history.fetch-size:1000}")
+    private int fetchSize;
+    
+    @Value("${history.raw-retention-days:7}")
+    private int rawRetentionDays;
+    
+    @Value("${history.downsampled-retention-days:365}")
+    private int downsampledRetentionDays;
+    
+    @Value("${history.downsample-seconds:60}")
+    private int downsampleSeconds;
+    
+    private final ConcurrentLinkedQueue<LocationPing> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    
+    // Days whose raw / downsampled partitions are known to exist
+    private final Set<LocalDate> rawPartitions = ConcurrentHashMap.newKeySet();
+    private final Set<LocalDate> downsampledPartitions = ConcurrentHashMap.newKeySet();
+    
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong outOfRange = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong downsampledDays = new AtomicLong();
+    private final AtomicLong expiredDays = new AtomicLong();
+    private volatile long lastBatchMillis;
+    
+    private JdbcTemplate streamingJdbcTemplate;
+    private ScheduledExecutorService writer;
+    
+    @PostConstruct
+    public void start() {
+        createTables();
+        // The PostgreSQL driver only fetches in chunks inside a transaction and with a fetch size
+        streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streamingJdbcTemplate.setFetchSize(fetchSize);
+        
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "position-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        flush();
+    }
+    
+    // Runs on the ingest flusher thread, so it only queues
+    @EventListener
+    public void onLocationsFlushed(BusLocationsFlushedEvent event) {
+        for (LocationPing ping : event.getPings()) {
+            if (queued.incrementAndGet() > queueCapacity) {
+                queued.decrementAndGet();
+                dropped.incrementAndGet();
+                continue;
+            }
+            queue.offer(ping);
+            accepted.incrementAndGet();
+        }
+    }
+    
+    // Pings of one bus in [from, to), oldest first, handed to the consumer as they are read.
+    // Days past the raw retention come back at the downsampled resolution.
+    public void streamPositions(String busId, LocalDateTime from, LocalDateTime to,
+                                Consumer<LocationPing> consumer) {
+        Timestamp start = Timestamp.valueOf(from);
+        Timestamp end = Timestamp.valueOf(to);
+        transactionTemplate.execute(status -> {
+            streamingJdbcTemplate.query(HISTORY_SQL, rs -> consumer.accept(toPing(rs)),
+                                        busId, start, end, busId, start, end);
+            return null;
+        });
+    }
+    
+    // Up to limit pings of the given buses (all buses when null) ordered by (recorded_at,
+    // bus_id), strictly after that position and before `to`. Each call is a short keyset
+    // query, so a long reader holds neither a cursor nor a transaction between pages.
+    public List<LocationPing> readFleetPage(List<String> busIds, LocalDateTime afterTime, String afterBusId,
+                                            LocalDateTime to, int limit) {
+        StringBuilder busFilter = new StringBuilder();
+        if (busIds != null) {
+            busFilter.append(" AND bus_id IN (");
+            for (int i = 0; i < busIds.size(); i++) {
+                busFilter.append(i == 0 ? "?" : ", ?");
+            }
+            busFilter.append(")");
+        }
+        String sql = fleetBranch(RAW_TABLE, busFilter) + " UNION ALL " + fleetBranch(DOWNSAMPLED_TABLE, busFilter) +
+                     " ORDER BY recorded_at, bus_id LIMIT ?";
+        
+        List<Object> branchArgs = new ArrayList<>();
+        branchArgs.add(Timestamp.valueOf(afterTime));
+        branchArgs.add(afterBusId);
+        branchArgs.add(Timestamp.valueOf(to));
+        if (busIds != null) {
+            branchArgs.addAll(busIds);
+        }
+        branchArgs.add(limit);
+        List<Object> args = new ArrayList<>(branchArgs);
+        args.addAll(branchArgs);
+        args.add(limit);
+        
+        List<LocationPing> page = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> page.add(toPing(rs)), args.toArray());
+        return page;
+    }
+    
+    private static String fleetBranch(String table, CharSequence busFilter) {
+        return "(SELECT bus_id, recorded_at, latitude, longitude, speed FROM " + table +
+               " WHERE (recorded_at, bus_id) > (?, ?) AND recorded_at < ?" + busFilter +
+               " ORDER BY recorded_at, bus_id LIMIT ?)";
+    }
+    
+    private static LocationPing toPing(ResultSet rs) throws SQLException {
+        double speed = rs.getDouble("speed");
+        Double reportedSpeed = rs.wasNull() ? null : speed;
+        return new LocationPing(rs.getString("bus_id"),
+                                rs.getDouble("latitude"), rs.getDouble("longitude"),
+                                reportedSpeed,
+                                rs.getTimestamp("recorded_at").toLocalDateTime());
+    }
+    
+    // Runs on the writer thread only
+    void flush() {
+        while (!queue.isEmpty()) {
+            List<LocationPing> batch = drain();
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+    
+    private List<LocationPing> drain() {
+        // Days that are (or are about to be) downsampled no longer take raw rows
+        LocalDate oldest = LocalDate.now().minusDays(rawRetentionDays - 1);
+        LocalDate newest = LocalDate.now().plusDays(1);
+        List<LocationPing> batch = new ArrayList<>();
+        LocationPing ping;
+        while (batch.size() < batchSize && (ping = queue.poll()) != null) {
+            queued.decrementAndGet();
+            LocalDate day = ping.getRecordedAt().toLocalDate();
+            if (day.isBefore(oldest) || day.isAfter(newest)) {
+                outOfRange.incrementAndGet();
+                continue;
+            }
+            batch.add(ping);
+        }
+        return batch;
+    }
+    
+    private void write(List<LocationPing> batch) {
+        long started = System.currentTimeMillis();
+        try {
+            for (LocationPing ping : batch) {
+                ensurePartition(RAW_TABLE, rawPartitions, ping.getRecordedAt().toLocalDate());
+            }
+            transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, ping) -> {
+                    ps.setString(1, ping.getBusId());
+                    ps.setTimestamp(2, Timestamp.valueOf(ping.getRecordedAt()));
+                    ps.setDouble(3, ping.getLatitude());
+                    ps.setDouble(4, ping.getLongitude());
+                    if (ping.getSpeed() != null) {
+                        ps.setDouble(5, ping.getSpeed());
+                    } else {
+                        ps.setNull(5, Types.DOUBLE);
+                    }
+                }));
+            written.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failedBatches.incrementAndGet();
+            dropped.addAndGet(batch.size());
+        } finally {
+            lastBatchMillis = System.currentTimeMillis() - started;
+        }
+    }
+    
+    // Downsamples raw days past retention and drops expired downsampled days
+    @Scheduled(cron = "${history.maintenance-cron:0 15 3 * * *}")
+    public void maintain() {
+        LocalDate today = LocalDate.now();
+        ensurePartition(RAW_TABLE, rawPartitions, today);
+        ensurePartition(RAW_TABLE, rawPartitions, today.plusDays(1));
+        
+        LocalDate rawCutoff = today.minusDays(rawRetentionDays - 1);
+        for (LocalDate day : partitionDays(RAW_TABLE)) {
+            if (day.isBefore(rawCutoff)) {
+                downsample(day);
+            }
+        }
+        LocalDate downsampledCutoff = today.minusDays(downsampledRetentionDays - 1);
+        for (LocalDate day : partitionDays(DOWNSAMPLED_TABLE)) {
+            if (day.isBefore(downsampledCutoff)) {
+                downsampledPartitions.remove(day);
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(DOWNSAMPLED_TABLE, day));
+                expiredDays.incrementAndGet();
+            }
+        }
+    }
+    
+    // Keeps the first ping of every bus in each interval of the day, then drops the raw
+    // partition in the same transaction so readers see the day in exactly one table
+    private void downsample(LocalDate day) {
+        ensurePartition(DOWNSAMPLED_TABLE, downsampledPartitions, day);
+        String raw = partitionName(RAW_TABLE, day);
+        rawPartitions.remove(day);
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.update(
+                "INSERT INTO " + DOWNSAMPLED_TABLE + " (bus_id, recorded_at, latitude, longitude, speed) " +
+                "SELECT DISTINCT ON (bus_id, bucket) bus_id, recorded_at, latitude, longitude, speed " +
+                "FROM (SELECT *, floor(extract(epoch FROM recorded_at) / ?) AS bucket FROM " + raw + ") r " +
+                "ORDER BY bus_id, bucket, recorded_at",
+                downsampleSeconds);
+            jdbcTemplate.execute("DROP TABLE " + raw);
+            return null;
+        });
+        downsampledDays.incrementAndGet();
+    }
+    
+    private void createTables() {
+        for (String table : new String[] { RAW_TABLE, DOWNSAMPLED_TABLE }) {
+            jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "bus_id VARCHAR(255) NOT NULL, " +
+                "recorded_at TIMESTAMP NOT NULL, " +
+                "latitude DOUBLE PRECISION NOT NULL, " +
+                "longitude DOUBLE PRECISION NOT NULL, " +
+                "speed DOUBLE PRECISION" +
+                ") PARTITION BY RANGE (recorded_at)");
+            // Created on every partition, current and future: one per bus, one for fleet-wide replay
+            jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS " + table + "_bus_time ON " + table + " (bus_id, recorded_at)");
+            jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS " + table + "_time ON " + table + " (recorded_at, bus_id)");
+        }
+        rawPartitions.addAll(partitionDays(RAW_TABLE));
+        downsampledPartitions.addAll(partitionDays(DOWNSAMPLED_TABLE));
+    }
+    
+    private void ensurePartition(String table, Set<LocalDate> known, LocalDate day) {
+        if (known.contains(day)) {
+            return;
+        }
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS " + partitionName(table, day) + " PARTITION OF " + table +
+            " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+        known.add(day);
+    }
+    
+    private TreeSet<LocalDate> partitionDays(String table) {
+        String prefix = table + "_p";
+        TreeSet<LocalDate> days = new TreeSet<>();
+        jdbcTemplate.query(
+            "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = ?",
+            rs -> {
+                String name = rs.getString("relname");
+                if (name.startsWith(prefix)) {
+                    days.add(LocalDate.parse(name.substring(prefix.length()), PARTITION_SUFFIX));
+                }
+            }, table);
+        return days;
+    }
+    
+    private static String partitionName(String table, LocalDate day) {
+        return table + "_p" + day.format(PARTITION_SUFFIX);
+    }
+    
+    public HistoryStats getStats() {
+        HistoryStats stats = new HistoryStats();
+        stats.setQueueDepth(queued.get());
+        stats.setQueueCapacity(queueCapacity);
+        stats.setAccepted(accepted.get());
+        stats.setDropped(dropped.get());
+        stats.setOutOfRange(outOfRange.get());
+        stats.setWritten(written.get());
+        stats.setFailedBatches(failedBatches.get());
+        stats.setDownsampledDays(downsampledDays.get());
+        stats.setExpiredDays(expiredDays.get());
+        stats.setLastBatchMillis(lastBatchMillis);
+        return stats;
+    }
+    
+    public static class HistoryStats {
+        private int queueDepth;
+        private int queueCapacity;
+        private long accepted;
+        private long dropped;
+        private long outOfRange;
+        private long written;
+        private long failedBatches;
+        private long downsampledDays;
+        private long expiredDays;
+        private long lastBatchMillis;
+        
+        public int getQueueDepth() { return queueDepth; }
+        public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+        
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        
+        public long getAccepted() { return accepted; }
+        public void setAccepted(long accepted) { this.accepted = accepted; }
+        
+        public long getDropped() { return dropped; }
+        public void setDropped(long dropped) { this.dropped = dropped; }
+        
+        public long getOutOfRange() { return outOfRange; }
+        public void setOutOfRange(long outOfRange) { this.outOfRange = outOfRange; }
+        
+        public long getWritten() { return written; }
+        public void setWritten(long written) { this.written = written; }
+        
+        public long getFailedBatches() { return failedBatches; }
+        public void setFailedBatches(long failedBatches) { this.failedBatches = failedBatches; }
+        
+        public long getDownsampledDays() { return downsampledDays; }
+        public void setDownsampledDays(long downsampledDays) { this.downsampledDays = downsampledDays; }
+        
+        public long getExpiredDays() { return expiredDays; }
+        public void setExpiredDays(long expiredDays) { this.expiredDays = expiredDays; }
+        
+        public long getLastBatchMillis() { return lastBatchMillis; }
+        public void setLastBatchMillis(long lastBatchMillis) { this.lastBatchMillis = lastBatchMillis; }
+    }
+}
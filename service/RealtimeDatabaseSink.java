@@ -0,0 +1,41 @@
+// service/RealtimeDatabaseSink.java
+package com.citybusapp.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+@Component
+@ConditionalOnProperty(name = "firebase.sink", havingValue = "realtime", matchIfMissing = true)
+public class RealtimeDatabaseSink implements FirebaseSink {
+    
+    private final DatabaseReference firebaseRef;
+    
+    public RealtimeDatabaseSink() {
+        this.firebaseRef = FirebaseDatabase.getInstance().getReference("buses");
+    }
+    
+    @Override
+    public CompletableFuture<Void> updateChildren(Map<String, Object> updates) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        ApiFuture<Void> future = firebaseRef.updateChildrenAsync(updates);
+        future.addListener(() -> {
+            try {
+                future.get();
+                result.complete(null);
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(e);
+            }
+        }, Runnable::run);
+        return result;
+    }
+}
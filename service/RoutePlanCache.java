@@ -0,0 +1,222 @@
+// service/RoutePlanCache.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.RoutePlan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Bounded cache of planner results keyed by query type plus origin and destination
+// snapped to ~cell-meters cells, so near-identical queries share one result.
+// Reads are a plain ConcurrentHashMap lookup plus a volatile flag write; eviction is
+// CLOCK (second chance), an LRU approximation that never locks readers.
+@Component
+public class RoutePlanCache {
+    
+    // Direct plans are cached per ranking criterion
+    public enum QueryType { DIRECT, DIRECT_LEAST_WALKING, TRANSFER }
+    
+    @Value("${route-cache.max-entries:10000}")
+    private int maxEntries;
+    
+    @Value("${route-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+    
+    @Value("${route-cache.cell-meters:100}")
+    private double cellMeters;
+    
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Key> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    
+    // Bumped on every invalidation; results computed under an older generation are not stored
+    private final AtomicLong generation = new AtomicLong();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    public List<RoutePlan> get(QueryType type, double fromLat, double fromLng,
+                               double toLat, double toLng, Supplier<List<RoutePlan>> planner) {
+        Key key = keyOf(type, fromLat, fromLng, toLat, toLng);
+        long now = System.nanoTime();
+        
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.createdAt < ttlSeconds * 1_000_000_000L) {
+            entry.referenced = true;
+            hits.incrementAndGet();
+            return entry.plans;
+        }
+        
+        misses.incrementAndGet();
+        long startGeneration = generation.get();
+        List<RoutePlan> plans = Collections.unmodifiableList(planner.get());
+        if (generation.get() == startGeneration) {
+            Entry fresh = new Entry(plans, now);
+            // An expired entry is replaced in place: its key is already in the clock, and
+            // a key is offered only when it is newly mapped, so each key is queued once
+            if (entry != null && entries.replace(key, entry, fresh)) {
+                expirations.incrementAndGet();
+            } else if (entries.put(key, fresh) == null) {
+                clock.offer(key);
+                evictIfNeeded();
+            }
+        }
+        return plans;
+    }
+    
+    // Fired by the stop index and the journey planner after they swap in new data
+    @EventListener
+    public void onTopologyChanged(NetworkTopologyChangedEvent event) {
+        invalidateAll();
+    }
+    
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        clock.clear();
+        invalidations.incrementAndGet();
+    }
+    
+    public CacheStats getStats() {
+        CacheStats stats = new CacheStats();
+        stats.setSize(entries.size());
+        stats.setMaxEntries(maxEntries);
+        stats.setHits(hits.get());
+        stats.setMisses(misses.get());
+        stats.setEvictions(evictions.get());
+        stats.setExpirations(expirations.get());
+        stats.setInvalidations(invalidations.get());
+        return stats;
+    }
+    
+    private void evictIfNeeded() {
+        if (entries.size() <= maxEntries || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            while (entries.size() > maxEntries) {
+                Key candidate = clock.poll();
+                if (candidate == null) {
+                    return;
+                }
+                Entry entry = entries.get(candidate);
+                if (entry == null) {
+                    continue;
+                }
+                boolean expired = now - entry.createdAt >= ttlSeconds * 1_000_000_000L;
+                if (entry.referenced && !expired) {
+                    // Second chance: recently read entries go to the back of the clock
+                    entry.referenced = false;
+                    clock.offer(candidate);
+                } else if (entries.remove(candidate, entry)) {
+                    if (expired) {
+                        expirations.incrementAndGet();
+                    } else {
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+    
+    private Key keyOf(QueryType type, double fromLat, double fromLng, double toLat, double toLng) {
+        double latCell = cellMeters / 1000 / GeoUtils.KM_PER_DEGREE;
+        // Longitude cells are widened by the origin latitude so cells stay roughly square
+        double lngCell = latCell / Math.max(0.01, Math.cos(Math.toRadians(fromLat)));
+        return new Key(type,
+                       Math.round(fromLat / latCell), Math.round(fromLng / lngCell),
+                       Math.round(toLat / latCell), Math.round(toLng / lngCell));
+    }
+    
+    private static final class Key {
+        private final QueryType type;
+        private final long fromLat;
+        private final long fromLng;
+        private final long toLat;
+        private final long toLng;
+        
+        private Key(QueryType type, long fromLat, long fromLng, long toLat, long toLng) {
+            this.type = type;
+            this.fromLat = fromLat;
+            this.fromLng = fromLng;
+            this.toLat = toLat;
+            this.toLng = toLng;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return type == key.type && fromLat == key.fromLat && fromLng == key.fromLng
+                && toLat == key.toLat && toLng == key.toLng;
+        }
+        
+        @Override
+        public int hashCode() {
+            long hash = type.ordinal();
+            hash = hash * 31 + fromLat;
+            hash = hash * 31 + fromLng;
+            hash = hash * 31 + toLat;
+            hash = hash * 31 + toLng;
+            return Long.hashCode(hash);
+        }
+    }
+    
+    private static final class Entry {
+        private final List<RoutePlan> plans;
+        private final long createdAt;
+        private volatile boolean referenced;
+        
+        private Entry(List<RoutePlan> plans, long createdAt) {
+            this.plans = plans;
+            this.createdAt = createdAt;
+        }
+    }
+    
+    public static class CacheStats {
+        private int size;
+        private int maxEntries;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long expirations;
+        private long invalidations;
+        
+        public int getSize() { return size; }
+        public void setSize(int size) { this.size = size; }
+        
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        
+        public long getHits() { return hits; }
+        public void setHits(long hits) { this.hits = hits; }
+        
+        public long getMisses() { return misses; }
+        public void setMisses(long misses) { this.misses = misses; }
+        
+        public long getEvictions() { return evictions; }
+        public void setEvictions(long evictions) { this.evictions = evictions; }
+        
+        public long getExpirations() { return expirations; }
+        public void setExpirations(long expirations) { this.expirations = expirations; }
+        
+        public long getInvalidations() { return invalidations; }
+        public void setInvalidations(long invalidations) { this.invalidations = invalidations; }
+    }
+}
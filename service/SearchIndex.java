@@ -0,0 +1,607 @@
+// service/SearchIndex.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory typeahead over bus numbers, route numbers/names and stop names.
+// Ranking: field prefix (an exact match is the shortest, so it comes first), word prefix,
+// then substring; within a tier the entity's main field before its secondary one, then
+// shorter and alphabetically first text.
+// A prefix trie over word starts keeps, per node, the matching docs already in that order,
+// so a typeahead query walks at most MAX_PREFIX nodes and reads off the first `limit` ids.
+// Substring matches come from intersecting the query's trigram postings and are verified
+// against the text. Queries too short for a trigram only match routes and stops at word
+// starts; buses, a small set, are scanned for them so bus numbers keep matching anywhere.
+// Updates are incremental and driven by events, one entity at a time.
+@Component
+public class SearchIndex {
+    
+    public enum Kind { BUS, ROUTE, STOP }
+    
+    // Word-start prefixes are indexed up to this many characters; longer queries go
+    // through the trigram postings only
+    private static final int MAX_PREFIX = 8;
+    
+    // Main field plus one secondary (route name) per entity
+    private static final int MAX_FIELDS = 2;
+    
+    private static final int FIELD_PREFIX = 0;
+    private static final int WORD_PREFIX = 1;
+    private static final int SUBSTRING = 2;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+    
+    @Autowired
+    private LiveBusStore liveBusStore;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final List<Doc> docs = new ArrayList<>();
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private final Map<String, Integer> idsByKey = new HashMap<>();
+    
+    // Keyed by trigram and kind, so a query for one kind never walks another kind's ids
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+    private final TrieNode trie = new TrieNode();
+    
+    // Every bus doc, scanned for queries shorter than a trigram
+    private final Postings busDocs = new Postings();
+    
+    @EventListener
+    public void onBusDetailsChanged(BusDetailsChangedEvent event) {
+        Bus bus = liveBusStore.get(event.getBusId());
+        if (bus == null) {
+            remove(Kind.BUS, event.getBusId());
+        } else {
+            upsert(Kind.BUS, bus.getId(), null, bus.getNumber(), bus.getRouteName());
+        }
+    }
+    
+    // Routes and stops are taken from the planner's network, which is rebuilt on every
+    // topology change; only entries whose text changed are reindexed
+    @EventListener
+    public void onTopologyChanged(NetworkTopologyChangedEvent event) {
+        TransitNetwork network = journeyPlanner.getNetwork();
+        Set<String> present = new HashSet<>();
+        for (int r = 0; r < network.routeCount(); r++) {
+            String routeNumber = network.routeNumber(r);
+            RouteMatch match = new RouteMatch(routeNumber, network.routeName(r));
+            upsert(Kind.ROUTE, routeNumber, match, routeNumber, network.routeName(r));
+            present.add(keyOf(Kind.ROUTE, routeNumber));
+        }
+        for (int s = 0; s < network.stopCount(); s++) {
+            BusStop stop = network.stop(s);
+            upsert(Kind.STOP, stop.getId(), stop, stop.getName());
+            present.add(keyOf(Kind.STOP, stop.getId()));
+        }
+        
+        lock.writeLock().lock();
+        try {
+            for (int id = 0; id < docs.size(); id++) {
+                Doc doc = docs.get(id);
+                if (doc != null && doc.kind != Kind.BUS && !present.contains(keyOf(doc.kind, doc.key))) {
+                    removeDoc(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public SearchResults search(String query, int limit) {
+        SearchResults results = new SearchResults();
+        for (Doc doc : find(query, limit, false, Kind.BUS)) {
+            Bus bus = liveBusStore.get(doc.key);
+            if (bus != null) {
+                results.getBuses().add(bus);
+            }
+        }
+        for (Doc doc : find(query, limit, false, Kind.ROUTE)) {
+            results.getRoutes().add((RouteMatch) doc.payload);
+        }
+        for (Doc doc : find(query, limit, false, Kind.STOP)) {
+            results.getStops().add((BusStop) doc.payload);
+        }
+        return results;
+    }
+    
+    // Buses whose number contains the query, best match first
+    public List<Bus> searchBusNumbers(String query) {
+        List<Bus> buses = new ArrayList<>();
+        for (Doc doc : find(query, Integer.MAX_VALUE, true, Kind.BUS)) {
+            Bus bus = liveBusStore.get(doc.key);
+            if (bus != null) {
+                buses.add(bus);
+            }
+        }
+        return buses;
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idsByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private List<Doc> find(String query, int limit, boolean mainFieldOnly, Kind kind) {
+        List<Doc> found = new ArrayList<>();
+        String needle = normalize(query);
+        if (needle.isEmpty() || limit <= 0) {
+            return found;
+        }
+        int fields = mainFieldOnly ? 1 : MAX_FIELDS;
+        
+        lock.readLock().lock();
+        try {
+            BitSet seen = new BitSet(docs.size());
+            if (needle.length() <= MAX_PREFIX) {
+                TrieNode node = trie.find(needle);
+                // Lists are visited in rank order and are sorted within, so the first
+                // unseen ids are the best ones
+                for (int start = 0; start < 2 && node != null; start++) {
+                    for (int field = 0; field < fields; field++) {
+                        Postings list = node.list(kind, start == 0, field);
+                        for (int i = 0; list != null && i < list.size && found.size() < limit; i++) {
+                            if (!seen.get(list.ids[i])) {
+                                seen.set(list.ids[i]);
+                                found.add(docs.get(list.ids[i]));
+                            }
+                        }
+                    }
+                }
+            }
+            boolean shortNeedle = needle.length() < 3;
+            if (found.size() >= limit || (shortNeedle && kind != Kind.BUS)) {
+                return found;
+            }
+            
+            // Only the best `remaining` substring hits are kept, worst on top of the heap
+            int remaining = limit - found.size();
+            PriorityQueue<Hit> best = new PriorityQueue<>((a, b) -> compareHits(b, a));
+            int[] candidates = shortNeedle ? Arrays.copyOf(busDocs.ids, busDocs.size) : trigramCandidates(kind, needle);
+            for (int id : candidates) {
+                if (seen.get(id)) {
+                    continue;
+                }
+                Doc doc = docs.get(id);
+                int bestRank = NO_MATCH;
+                int bestField = 0;
+                for (int f = 0; f < Math.min(fields, doc.fields.length); f++) {
+                    int rank = matchRank(doc.fields[f], needle);
+                    if (rank < bestRank) {
+                        bestRank = rank;
+                        bestField = f;
+                    }
+                }
+                if (bestRank != NO_MATCH) {
+                    best.offer(new Hit(doc, bestRank, bestField));
+                    if (best.size() > remaining) {
+                        best.poll();
+                    }
+                }
+            }
+            Hit[] ordered = best.toArray(new Hit[0]);
+            Arrays.sort(ordered, SearchIndex::compareHits);
+            for (Hit hit : ordered) {
+                found.add(hit.doc);
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private int[] trigramCandidates(Kind kind, String needle) {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            Postings postings = trigrams.get(trigramKey(kind, needle, i));
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        
+        Postings smallest = lists.get(0);
+        int[] result = new int[smallest.size];
+        int count = 0;
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            boolean inAll = true;
+            for (int l = 1; l < lists.size() && inAll; l++) {
+                inAll = lists.get(l).contains(id);
+            }
+            if (inAll) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    private void upsert(Kind kind, String key, Object payload, String... rawFields) {
+        String[] fields = new String[rawFields.length];
+        for (int f = 0; f < rawFields.length; f++) {
+            fields[f] = rawFields[f] != null ? normalize(rawFields[f]) : "";
+        }
+        String docKey = keyOf(kind, key);
+        
+        lock.writeLock().lock();
+        try {
+            Integer existing = idsByKey.get(docKey);
+            if (existing != null) {
+                Doc doc = docs.get(existing);
+                if (Arrays.equals(doc.fields, fields)) {
+                    doc.payload = payload;
+                    return;
+                }
+                removeDoc(existing);
+            }
+            
+            Doc doc = new Doc(kind, key, fields, payload);
+            int id;
+            if (freeCount > 0) {
+                id = freeIds[--freeCount];
+                docs.set(id, doc);
+            } else {
+                id = docs.size();
+                docs.add(doc);
+            }
+            idsByKey.put(docKey, id);
+            if (kind == Kind.BUS) {
+                busDocs.add(id);
+            }
+            for (int f = 0; f < fields.length; f++) {
+                String field = fields[f];
+                for (int i = 0; i + 3 <= field.length(); i++) {
+                    trigrams.computeIfAbsent(trigramKey(kind, field, i), t -> new Postings()).add(id);
+                }
+                for (int i = 0; i < field.length(); i++) {
+                    if (isWordStart(field, i)) {
+                        trie.insert(field, i, kind, f, id);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void remove(Kind kind, String key) {
+        lock.writeLock().lock();
+        try {
+            Integer id = idsByKey.get(keyOf(kind, key));
+            if (id != null) {
+                removeDoc(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Caller holds the write lock; the doc must still be in place for the trie's ordering
+    private void removeDoc(int id) {
+        Doc doc = docs.get(id);
+        for (int f = 0; f < doc.fields.length; f++) {
+            String field = doc.fields[f];
+            for (int i = 0; i + 3 <= field.length(); i++) {
+                long gram = trigramKey(doc.kind, field, i);
+                Postings postings = trigrams.get(gram);
+                if (postings != null) {
+                    postings.remove(id);
+                    if (postings.size == 0) {
+                        trigrams.remove(gram);
+                    }
+                }
+            }
+            for (int i = 0; i < field.length(); i++) {
+                if (isWordStart(field, i)) {
+                    trie.remove(field, i, doc.kind, f, id);
+                }
+            }
+        }
+        idsByKey.remove(keyOf(doc.kind, doc.key));
+        if (doc.kind == Kind.BUS) {
+            busDocs.remove(id);
+        }
+        docs.set(id, null);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+    
+    // Order of two docs inside one trie list: shorter field text, then text, then key
+    private int compareInField(int a, int b, int field) {
+        Doc docA = docs.get(a);
+        Doc docB = docs.get(b);
+        String textA = docA.fields[field];
+        String textB = docB.fields[field];
+        if (textA.length() != textB.length()) {
+            return Integer.compare(textA.length(), textB.length());
+        }
+        int byText = textA.compareTo(textB);
+        return byText != 0 ? byText : docA.key.compareTo(docB.key);
+    }
+    
+    private static int matchRank(String text, String needle) {
+        int at = text.indexOf(needle);
+        if (at < 0) {
+            return NO_MATCH;
+        }
+        if (at == 0) {
+            return FIELD_PREFIX;
+        }
+        while (at >= 0) {
+            if (isWordStart(text, at)) {
+                return WORD_PREFIX;
+            }
+            at = text.indexOf(needle, at + 1);
+        }
+        return SUBSTRING;
+    }
+    
+    private static int compareHits(Hit a, Hit b) {
+        if (a.rank != b.rank) {
+            return Integer.compare(a.rank, b.rank);
+        }
+        if (a.field != b.field) {
+            return Integer.compare(a.field, b.field);
+        }
+        String textA = a.doc.fields[a.field];
+        String textB = b.doc.fields[b.field];
+        if (textA.length() != textB.length()) {
+            return Integer.compare(textA.length(), textB.length());
+        }
+        int byText = textA.compareTo(textB);
+        return byText != 0 ? byText : a.doc.key.compareTo(b.doc.key);
+    }
+    
+    // Lower case with runs of whitespace collapsed; punctuation is kept so "AP-16" still
+    // matches bus numbers as typed, but it does start a new word
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+    
+    private static boolean isWordStart(String text, int i) {
+        return Character.isLetterOrDigit(text.charAt(i))
+            && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+    }
+    
+    private static long trigramKey(Kind kind, String text, int i) {
+        long gram = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        return gram << 2 | kind.ordinal();
+    }
+    
+    private static String keyOf(Kind kind, String key) {
+        return kind.ordinal() + ":" + key;
+    }
+    
+    private static final class Doc {
+        private final Kind kind;
+        private final String key;
+        private final String[] fields;
+        private Object payload;
+        
+        private Doc(Kind kind, String key, String[] fields, Object payload) {
+            this.kind = kind;
+            this.key = key;
+            this.fields = fields;
+            this.payload = payload;
+        }
+    }
+    
+    private static final class Hit {
+        private final Doc doc;
+        private final int rank;
+        private final int field;
+        
+        private Hit(Doc doc, int rank, int field) {
+            this.doc = doc;
+            this.rank = rank;
+            this.field = field;
+        }
+    }
+    
+    // Duplicate-free doc ids; sorted by id for trigrams, by field text inside the trie
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private int size;
+        
+        private void add(int id) {
+            insertAt(Arrays.binarySearch(ids, 0, size, id), id);
+        }
+        
+        private void remove(int id) {
+            removeAt(Arrays.binarySearch(ids, 0, size, id));
+        }
+        
+        private boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+        
+        // Binary search result as returned by Arrays.binarySearch; a hit means already present
+        private void insertAt(int at, int id) {
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+        
+        private void removeAt(int at) {
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+    
+    // Each node keeps, per kind, field and whether the word starts the field, the docs
+    // having a word with the node's prefix, in compareInField order
+    private final class TrieNode {
+        private char[] labels = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private Postings[] lists;
+        
+        private void insert(String text, int from, Kind kind, int field, int id) {
+            TrieNode node = this;
+            int end = Math.min(text.length(), from + MAX_PREFIX);
+            for (int i = from; i < end; i++) {
+                node = node.child(text.charAt(i), true);
+                Postings list = node.listFor(kind, from == 0, field);
+                list.insertAt(node.search(list, id, field), id);
+            }
+        }
+        
+        private void remove(String text, int from, Kind kind, int field, int id) {
+            TrieNode node = this;
+            int end = Math.min(text.length(), from + MAX_PREFIX);
+            for (int i = from; i < end && node != null; i++) {
+                node = node.child(text.charAt(i), false);
+                Postings list = node != null ? node.list(kind, from == 0, field) : null;
+                if (list != null) {
+                    list.removeAt(node.search(list, id, field));
+                }
+            }
+        }
+        
+        private TrieNode find(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i), false);
+            }
+            return node;
+        }
+        
+        private Postings list(Kind kind, boolean fieldStart, int field) {
+            return lists != null ? lists[slot(kind, fieldStart, field)] : null;
+        }
+        
+        private Postings listFor(Kind kind, boolean fieldStart, int field) {
+            if (lists == null) {
+                lists = new Postings[Kind.values().length * 2 * MAX_FIELDS];
+            }
+            int slot = slot(kind, fieldStart, field);
+            if (lists[slot] == null) {
+                lists[slot] = new Postings();
+            }
+            return lists[slot];
+        }
+        
+        private int slot(Kind kind, boolean fieldStart, int field) {
+            return (kind.ordinal() * 2 + (fieldStart ? 0 : 1)) * MAX_FIELDS + field;
+        }
+        
+        private int search(Postings list, int id, int field) {
+            int low = 0;
+            int high = list.size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int order = list.ids[mid] == id ? 0 : compareInField(list.ids[mid], id, field);
+                if (order < 0) {
+                    low = mid + 1;
+                } else if (order > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+        
+        private TrieNode child(char label, boolean create) {
+            int at = Arrays.binarySearch(labels, label);
+            if (at >= 0) {
+                return children[at];
+            }
+            if (!create) {
+                return null;
+            }
+            at = -at - 1;
+            char[] newLabels = new char[labels.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(labels, at, newLabels, at + 1, labels.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            newLabels[at] = label;
+            newChildren[at] = new TrieNode();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[at];
+        }
+    }
+    
+    public static class RouteMatch {
+        private String routeNumber;
+        private String routeName;
+        
+        public RouteMatch() {}
+        
+        public RouteMatch(String routeNumber, String routeName) {
+            this.routeNumber = routeNumber;
+            this.routeName = routeName;
+        }
+        
+        public String getRouteNumber() { return routeNumber; }
+        public void setRouteNumber(String routeNumber) { this.routeNumber = routeNumber; }
+        
+        public String getRouteName() { return routeName; }
+        public void setRouteName(String routeName) { this.routeName = routeName; }
+    }
+    
+    public static class SearchResults {
+        private List<Bus> buses = new ArrayList<>();
+        private List<RouteMatch> routes = new ArrayList<>();
+        private List<BusStop> stops = new ArrayList<>();
+        
+        public List<Bus> getBuses() { return buses; }
+        public void setBuses(List<Bus> buses) { this.buses = buses; }
+        
+        public List<RouteMatch> getRoutes() { return routes; }
+        public void setRoutes(List<RouteMatch> routes) { this.routes = routes; }
+        
+        public List<BusStop> getStops() { return stops; }
+        public void setStops(List<BusStop> stops) { this.stops = stops; }
+    }
+}
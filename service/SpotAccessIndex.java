@@ -0,0 +1,174 @@
+// service/SpotAccessIndex.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import com.citybusapp.model.TouristSpotSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Precomputed walking access between bus stops and tourist spots: for every stop of the
+// planner's network the spots within walking distance, and the inverse list per spot.
+// Both are flat offset arrays (CSR). The table is rebuilt on first use after the network
+// or the spot index changed, so spot edits never wait on a rebuild.
+@Component
+public class SpotAccessIndex {
+    
+    public static final double WALK_SPEED_KMH = 5.0;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private TouristSpotIndex touristSpotIndex;
+    
+    @Value("${spot-access.radius-km:0.8}")
+    private double radiusKm;
+    
+    @Value("${spot-access.max-spots-per-stop:50}")
+    private int maxSpotsPerStop;
+    
+    private volatile Table table;
+    
+    public Table current() {
+        TransitNetwork network = journeyPlanner.getNetwork();
+        long spotVersion = touristSpotIndex.getVersion();
+        Table current = table;
+        if (current != null && current.network == network && current.spotVersion == spotVersion) {
+            return current;
+        }
+        synchronized (this) {
+            current = table;
+            if (current == null || current.network != network || current.spotVersion != spotVersion) {
+                current = build(network, spotVersion);
+                table = current;
+            }
+            return current;
+        }
+    }
+    
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+    
+    public static int walkSeconds(double distanceKm) {
+        return (int) Math.round(distanceKm / WALK_SPEED_KMH * 3600);
+    }
+    
+    private Table build(TransitNetwork network, long spotVersion) {
+        int stopCount = network.stopCount();
+        Map<String, Integer> spotIndexes = new HashMap<>();
+        List<TouristSpotSummary>[] perStop = newListArray(stopCount);
+        int pairs = 0;
+        for (int stop = 0; stop < stopCount; stop++) {
+            BusStop busStop = network.stop(stop);
+            perStop[stop] = touristSpotIndex.findWithinRadius(busStop.getLatitude(), busStop.getLongitude(),
+                                                              radiusKm, null, null, -1, null, maxSpotsPerStop);
+            for (TouristSpotSummary spot : perStop[stop]) {
+                spotIndexes.putIfAbsent(spot.getId(), spotIndexes.size());
+            }
+            pairs += perStop[stop].size();
+        }
+        
+        TouristSpotSummary[] spots = new TouristSpotSummary[spotIndexes.size()];
+        int[] stopOffsets = new int[stopCount + 1];
+        int[] stopSpots = new int[pairs];
+        int[] stopWalkSeconds = new int[pairs];
+        int[] spotOffsets = new int[spots.length + 1];
+        int at = 0;
+        for (int stop = 0; stop < stopCount; stop++) {
+            stopOffsets[stop] = at;
+            for (TouristSpotSummary spot : perStop[stop]) {
+                int index = spotIndexes.get(spot.getId());
+                if (spots[index] == null) {
+                    spots[index] = new TouristSpotSummary(spot.getId(), spot.getName(), spot.getLatitude(),
+                                                          spot.getLongitude(), spot.getCategory(),
+                                                          spot.getRating(), null);
+                }
+                stopSpots[at] = index;
+                stopWalkSeconds[at] = walkSeconds(spot.getDistanceKm());
+                spotOffsets[index + 1]++;
+                at++;
+            }
+        }
+        stopOffsets[stopCount] = at;
+        
+        // Inverse lists by counting sort over the spot index
+        for (int spot = 0; spot < spots.length; spot++) {
+            spotOffsets[spot + 1] += spotOffsets[spot];
+        }
+        int[] fill = spotOffsets.clone();
+        int[] spotStops = new int[pairs];
+        int[] spotWalkSeconds = new int[pairs];
+        for (int stop = 0; stop < stopCount; stop++) {
+            for (int i = stopOffsets[stop]; i < stopOffsets[stop + 1]; i++) {
+                int slot = fill[stopSpots[i]]++;
+                spotStops[slot] = stop;
+                spotWalkSeconds[slot] = stopWalkSeconds[i];
+            }
+        }
+        return new Table(network, spotVersion, spots, stopOffsets, stopSpots, stopWalkSeconds,
+                         spotOffsets, spotStops, spotWalkSeconds);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<TouristSpotSummary>[] newListArray(int size) {
+        return (List<TouristSpotSummary>[]) new List[size];
+    }
+    
+    // Immutable; spot indexes are only meaningful within one table
+    public static final class Table {
+        private final TransitNetwork network;
+        private final long spotVersion;
+        private final TouristSpotSummary[] spots;
+        private final int[] stopOffsets;
+        private final int[] stopSpots;
+        private final int[] stopWalkSeconds;
+        private final int[] spotOffsets;
+        private final int[] spotStops;
+        private final int[] spotWalkSeconds;
+        
+        private Table(TransitNetwork network, long spotVersion, TouristSpotSummary[] spots,
+                      int[] stopOffsets, int[] stopSpots, int[] stopWalkSeconds,
+                      int[] spotOffsets, int[] spotStops, int[] spotWalkSeconds) {
+            this.network = network;
+            this.spotVersion = spotVersion;
+            this.spots = spots;
+            this.stopOffsets = stopOffsets;
+            this.stopSpots = stopSpots;
+            this.stopWalkSeconds = stopWalkSeconds;
+            this.spotOffsets = spotOffsets;
+            this.spotStops = spotStops;
+            this.spotWalkSeconds = spotWalkSeconds;
+        }
+        
+        public TransitNetwork network() { return network; }
+        
+        public int spotCount() { return spots.length; }
+        
+        // Shared instance without distance; callers copy it before filling one in
+        public TouristSpotSummary spot(int spot) { return spots[spot]; }
+        
+        // Spots reachable on foot from a network stop: entries [firstSpotSlot, endSpotSlot)
+        public int firstSpotSlot(int stop) { return stopOffsets[stop]; }
+        
+        public int endSpotSlot(int stop) { return stopOffsets[stop + 1]; }
+        
+        public int slotSpot(int slot) { return stopSpots[slot]; }
+        
+        public int slotSpotWalkSeconds(int slot) { return stopWalkSeconds[slot]; }
+        
+        // Stops within walking distance of a spot: entries [firstStopSlot, endStopSlot)
+        public int firstStopSlot(int spot) { return spotOffsets[spot]; }
+        
+        public int endStopSlot(int spot) { return spotOffsets[spot + 1]; }
+        
+        public int slotStop(int slot) { return spotStops[slot]; }
+        
+        public int slotStopWalkSeconds(int slot) { return spotWalkSeconds[slot]; }
+    }
+}
@@ -0,0 +1,110 @@
+// service/SseSendPool.java
+package com.citybusapp.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs Server-Sent Events writes on a few shared threads. A servlet write blocks while
+// the client's socket is full, so each send has a deadline: checkDeadlines() abandons a
+// send still running past it, tells its owner to drop the subscriber, interrupts the
+// stuck thread and starts a spare one in its place, so stalled clients never hold the
+// threads other subscribers are served from. At most maxStalled spares are started.
+public final class SseSendPool {
+    
+    private static final long ABANDONED = -1L;
+    
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final int maxStalled;
+    private final long sendTimeoutMs;
+    private final Set<Send> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger stalled = new AtomicInteger();
+    private final AtomicLong abandoned = new AtomicLong();
+    
+    public SseSendPool(String threadName, int threads, int maxStalled, long sendTimeoutMs) {
+        this.threads = threads;
+        this.maxStalled = maxStalled;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.executor = new ThreadPoolExecutor(threads, threads + maxStalled, 60, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // onStalled runs on the caller of checkDeadlines and must not touch the emitter: its
+    // methods lock on the send that is stuck
+    public void execute(Runnable send, Runnable onStalled) {
+        executor.execute(new Send(send, onStalled));
+    }
+    
+    public void checkDeadlines() {
+        long now = System.currentTimeMillis();
+        for (Send send : inFlight) {
+            long started = send.startedAt.get();
+            if (started <= 0 || now - started <= sendTimeoutMs) {
+                continue;
+            }
+            synchronized (send) {
+                if (!send.startedAt.compareAndSet(started, ABANDONED)) {
+                    continue;
+                }
+                inFlight.remove(send);
+                abandoned.incrementAndGet();
+                resize(stalled.incrementAndGet());
+                send.onStalled.run();
+                send.thread.interrupt();
+            }
+        }
+    }
+    
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+    
+    // Sends abandoned at their deadline since startup
+    public long getAbandonedCount() {
+        return abandoned.get();
+    }
+    
+    private void resize(int stalledNow) {
+        executor.setCorePoolSize(threads + Math.min(stalledNow, maxStalled));
+    }
+    
+    private final class Send implements Runnable {
+        private final Runnable task;
+        private final Runnable onStalled;
+        private final AtomicLong startedAt = new AtomicLong();
+        private volatile Thread thread;
+        
+        private Send(Runnable task, Runnable onStalled) {
+            this.task = task;
+            this.onStalled = onStalled;
+        }
+        
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            startedAt.set(System.currentTimeMillis());
+            inFlight.add(this);
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(this);
+                synchronized (this) {
+                    if (startedAt.getAndSet(0) == ABANDONED) {
+                        // The thread is back: drop its spare and the interrupt meant for the stuck write
+                        resize(stalled.decrementAndGet());
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+    }
+}
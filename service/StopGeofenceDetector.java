@@ -0,0 +1,251 @@
+// service/StopGeofenceDetector.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Turns live positions into stop arrivals and departures. Every stop of the planner's
+// network has a circular geofence; the fences sit in a uniform grid of cells one exit
+// radius wide, hashed into flat arrays, so a ping is checked against the stops of its
+// own and the eight neighbouring cells only. A bus arrives when it comes within the
+// entry radius of a stop its route serves and departs once it is beyond the (larger)
+// exit radius, so GPS jitter at the edge does not flap. Per-bus state is kept in
+// primitive arrays indexed by a BusSlots slot; only arrivals and departures allocate.
+@Component
+public class StopGeofenceDetector {
+    
+    private static final int UNKNOWN = -1;
+    private static final double METERS_PER_DEGREE = GeoUtils.KM_PER_DEGREE * 1000;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Value("${geofence.radius-meters:35}")
+    private double radiusMeters;
+    
+    @Value("${geofence.exit-radius-meters:50}")
+    private double exitRadiusMeters;
+    
+    // A visit without a ping inside the fence for this long is closed at its last ping
+    @Value("${geofence.visit-timeout-seconds:300}")
+    private long visitTimeoutSeconds;
+    
+    @Value("${geofence.max-buses:100000}")
+    private int maxBuses;
+    
+    private final AtomicLong arrivals = new AtomicLong();
+    private final AtomicLong departures = new AtomicLong();
+    private final AtomicLong dwellMillis = new AtomicLong();
+    
+    private volatile Model model;
+    
+    // Called for every applied location update
+    public void observe(Bus bus) {
+        if (bus.getLatitude() == null || bus.getLongitude() == null) {
+            return;
+        }
+        Model m = currentModel();
+        double latitude = bus.getLatitude();
+        double longitude = bus.getLongitude();
+        // Buses on routes outside the network may stop anywhere
+        int route = bus.getNumber() != null ? m.network.indexOfRoute(bus.getNumber()) : UNKNOWN;
+        long now = System.currentTimeMillis();
+        
+        int departedStop = UNKNOWN;
+        long departedArrivedAt = 0;
+        long departedAt = 0;
+        int arrivedStop;
+        int slot = m.slots.lock(bus.getId(), now);
+        if (slot == BusSlots.NONE) {
+            return;
+        }
+        try {
+            int current = m.busStop[slot];
+            if (current != UNKNOWN) {
+                boolean stale = now - m.busLastInsideAt[slot] > visitTimeoutSeconds * 1000;
+                if (!stale && m.distanceMeters(current, latitude, longitude) <= exitRadiusMeters) {
+                    m.busLastInsideAt[slot] = now;
+                    return;
+                }
+                departedStop = current;
+                departedArrivedAt = m.busArrivedAt[slot];
+                departedAt = m.busLastInsideAt[slot];
+                m.busStop[slot] = UNKNOWN;
+            }
+            arrivedStop = m.nearestFence(latitude, longitude, route, radiusMeters);
+            if (arrivedStop != UNKNOWN) {
+                m.busStop[slot] = arrivedStop;
+                m.busArrivedAt[slot] = now;
+                m.busLastInsideAt[slot] = now;
+            }
+        } finally {
+            m.slots.unlock(slot);
+        }
+        
+        if (departedStop != UNKNOWN) {
+            long dwell = departedAt - departedArrivedAt;
+            departures.incrementAndGet();
+            dwellMillis.addAndGet(dwell);
+            eventPublisher.publishEvent(new StopVisitEvent(StopVisitEvent.Type.DEPARTURE, bus.getId(),
+                    bus.getNumber(), m.network.stop(departedStop).getId(), departedAt, dwell));
+        }
+        if (arrivedStop != UNKNOWN) {
+            arrivals.incrementAndGet();
+            eventPublisher.publishEvent(new StopVisitEvent(StopVisitEvent.Type.ARRIVAL, bus.getId(),
+                    bus.getNumber(), m.network.stop(arrivedStop).getId(), now, 0));
+        }
+    }
+    
+    public GeofenceStats getStats() {
+        GeofenceStats stats = new GeofenceStats();
+        Model m = model;
+        stats.setFences(m != null ? m.network.stopCount() : 0);
+        stats.setTrackedBuses(m != null ? m.slots.size() : 0);
+        stats.setArrivals(arrivals.get());
+        stats.setDepartures(departures.get());
+        long departed = departures.get();
+        stats.setAverageDwellSeconds(departed > 0 ? dwellMillis.get() / 1000.0 / departed : 0);
+        return stats;
+    }
+    
+    // Fences follow the planner's network; visits in progress are dropped on a swap,
+    // since stop indexes are only meaningful within one network
+    private Model currentModel() {
+        TransitNetwork network = journeyPlanner.getNetwork();
+        Model m = model;
+        if (m != null && m.network == network) {
+            return m;
+        }
+        synchronized (this) {
+            m = model;
+            if (m == null || m.network != network) {
+                model = m = new Model(network, Math.max(radiusMeters, exitRadiusMeters), maxBuses,
+                                      visitTimeoutSeconds * 1000);
+            }
+            return m;
+        }
+    }
+    
+    private static final class Model {
+        private final TransitNetwork network;
+        private final double[] stopLatitudes;
+        private final double[] stopLongitudes;
+        // Equirectangular projection around the network's mean latitude, fine at city scale
+        private final double metersPerLngDegree;
+        private final double cellLatDegrees;
+        private final double cellLngDegrees;
+        private final CellTable cells;
+        
+        // Per tracked bus: stop it is at (UNKNOWN when between stops), when it arrived there
+        // and when it was last seen inside the fence
+        private final int[] busStop;
+        private final long[] busArrivedAt;
+        private final long[] busLastInsideAt;
+        // With the arena full, a bus silent for longer than a visit can last gives up its slot
+        private final BusSlots slots;
+        
+        private Model(TransitNetwork network, double cellMeters, int capacity, long idleMillis) {
+            this.network = network;
+            int stopCount = network.stopCount();
+            stopLatitudes = new double[stopCount];
+            stopLongitudes = new double[stopCount];
+            double latitudeSum = 0;
+            for (int stop = 0; stop < stopCount; stop++) {
+                BusStop busStop = network.stop(stop);
+                stopLatitudes[stop] = busStop.getLatitude();
+                stopLongitudes[stop] = busStop.getLongitude();
+                latitudeSum += stopLatitudes[stop];
+            }
+            double cos = Math.max(0.01, Math.cos(Math.toRadians(stopCount > 0 ? latitudeSum / stopCount : 0)));
+            metersPerLngDegree = METERS_PER_DEGREE * cos;
+            cellLatDegrees = cellMeters / METERS_PER_DEGREE;
+            cellLngDegrees = cellMeters / metersPerLngDegree;
+            
+            long[] keys = new long[stopCount];
+            int[] stops = new int[stopCount];
+            for (int stop = 0; stop < stopCount; stop++) {
+                keys[stop] = CellTable.cellKey((long) Math.floor(stopLatitudes[stop] / cellLatDegrees),
+                                               (long) Math.floor(stopLongitudes[stop] / cellLngDegrees));
+                stops[stop] = stop;
+            }
+            cells = new CellTable(keys, stops, stopCount);
+            
+            busStop = new int[capacity];
+            busArrivedAt = new long[capacity];
+            busLastInsideAt = new long[capacity];
+            slots = new BusSlots(capacity, idleMillis, slot -> busStop[slot] = UNKNOWN);
+        }
+        
+        private double distanceMeters(int stop, double latitude, double longitude) {
+            double dy = (latitude - stopLatitudes[stop]) * METERS_PER_DEGREE;
+            double dx = (longitude - stopLongitudes[stop]) * metersPerLngDegree;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+        
+        // Nearest stop within the radius that the route serves (any stop for UNKNOWN)
+        private int nearestFence(double latitude, double longitude, int route, double radius) {
+            long row = (long) Math.floor(latitude / cellLatDegrees);
+            long column = (long) Math.floor(longitude / cellLngDegrees);
+            int nearest = UNKNOWN;
+            double nearestMeters = radius;
+            for (long r = row - 1; r <= row + 1; r++) {
+                for (long c = column - 1; c <= column + 1; c++) {
+                    int cell = cells.cellOf(CellTable.cellKey(r, c));
+                    if (cell == CellTable.NONE) {
+                        continue;
+                    }
+                    for (int i = cells.start(cell); i < cells.end(cell); i++) {
+                        int stop = cells.item(i);
+                        double meters = distanceMeters(stop, latitude, longitude);
+                        if (meters <= nearestMeters && (route == UNKNOWN || serves(stop, route))) {
+                            nearestMeters = meters;
+                            nearest = stop;
+                        }
+                    }
+                }
+            }
+            return nearest;
+        }
+        
+        private boolean serves(int stop, int route) {
+            for (int slot = network.firstRouteSlot(stop); slot < network.endRouteSlot(stop); slot++) {
+                if (network.slotRoute(slot) == route) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    public static class GeofenceStats {
+        private int fences;
+        private int trackedBuses;
+        private long arrivals;
+        private long departures;
+        private double averageDwellSeconds;
+        
+        public int getFences() { return fences; }
+        public void setFences(int fences) { this.fences = fences; }
+        
+        public int getTrackedBuses() { return trackedBuses; }
+        public void setTrackedBuses(int trackedBuses) { this.trackedBuses = trackedBuses; }
+        
+        public long getArrivals() { return arrivals; }
+        public void setArrivals(long arrivals) { this.arrivals = arrivals; }
+        
+        public long getDepartures() { return departures; }
+        public void setDepartures(long departures) { this.departures = departures; }
+        
+        public double getAverageDwellSeconds() { return averageDwellSeconds; }
+        public void setAverageDwellSeconds(double averageDwellSeconds) { this.averageDwellSeconds = averageDwellSeconds; }
+    }
+}
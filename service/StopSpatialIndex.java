@@ -0,0 +1,316 @@
+// service/StopSpatialIndex.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Uniform lat/lng grid over all bus stops, kept in memory so that nearby-stop lookups
+// never touch the database. A grid is built whole and then swapped in, so readers never
+// lock. Each stop's routes are also kept as a bitset over the grid's route dictionary,
+// so route matching between two stops is a word-wise AND. The grid is rebuilt from each
+// network snapshot the journey planner swaps in, so both see the same stops without a
+// second database read.
+@Component
+public class StopSpatialIndex {
+    
+    // ~1.1 km per cell; the default 0.5 km query touches at most 3x3 cells
+    private static final double CELL_DEGREES = 0.01;
+    
+    // Past this many rings a k-nearest search falls back to a scan of every stop
+    private static final int MAX_RINGS = 64;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    private volatile Grid grid = new Grid();
+    
+    public void rebuild() {
+        TransitNetwork network = journeyPlanner.getNetwork();
+        List<BusStop> stops = new ArrayList<>(network.stops());
+        stops.sort(Comparator.comparing(BusStop::getId));
+        // Route ids in route number order, so common routes come out sorted
+        Grid fresh = new Grid(stops);
+        long ordinal = 0;
+        // Id order is kept as the tie-break for equal distances
+        for (BusStop stop : stops) {
+            fresh.put(new Entry(copyOf(stop), fresh.routeBitsOf(stop), ordinal++));
+        }
+        grid = fresh;
+        eventPublisher.publishEvent(new NetworkTopologyChangedEvent("stop-index"));
+    }
+    
+    @EventListener
+    public void onTopologyChanged(NetworkTopologyChangedEvent event) {
+        if ("journey-planner".equals(event.getSource())) {
+            rebuild();
+        }
+    }
+    
+    public int size() {
+        return grid.byId.size();
+    }
+    
+    public BusStop getStop(String stopId) {
+        Entry entry = grid.byId.get(stopId);
+        return entry != null ? entry.stop : null;
+    }
+    
+    // Routes serving both stops, in route number order
+    public List<String> findCommonRoutes(String stopId1, String stopId2) {
+        Grid current = grid;
+        Entry first = current.byId.get(stopId1);
+        Entry second = current.byId.get(stopId2);
+        List<String> common = new ArrayList<>();
+        if (first == null || second == null) {
+            return common;
+        }
+        String[] routeNumbers = current.routeNumbers;
+        int words = Math.min(first.routeBits.length, second.routeBits.length);
+        for (int w = 0; w < words; w++) {
+            long both = first.routeBits[w] & second.routeBits[w];
+            while (both != 0) {
+                common.add(routeNumbers[w * 64 + Long.numberOfTrailingZeros(both)]);
+                both &= both - 1;
+            }
+        }
+        return common;
+    }
+    
+    // Same stops as filtering every stop by distanceKm <= radiusKm, in load order
+    public List<BusStop> findWithinRadius(double latitude, double longitude, double radiusKm) {
+        Grid current = grid;
+        List<Entry> matches = new ArrayList<>();
+        
+        double latSpan = GeoUtils.latitudeSpanDegrees(radiusKm);
+        double lngSpan = GeoUtils.longitudeSpanDegrees(latitude, radiusKm);
+        int minLat = cellOf(latitude - latSpan);
+        int maxLat = cellOf(latitude + latSpan);
+        int minLng = cellOf(longitude - lngSpan);
+        int maxLng = cellOf(longitude + lngSpan);
+        
+        long cellsInBox = (long) (maxLat - minLat + 1) * (maxLng - minLng + 1);
+        boolean wrapsAntimeridian = longitude - lngSpan < -180 || longitude + lngSpan > 180;
+        
+        if (wrapsAntimeridian || cellsInBox > current.cells.size()) {
+            for (Entry[] cell : current.cells.values()) {
+                collectWithin(cell, latitude, longitude, radiusKm, matches);
+            }
+        } else {
+            for (int latCell = minLat; latCell <= maxLat; latCell++) {
+                for (int lngCell = minLng; lngCell <= maxLng; lngCell++) {
+                    Entry[] cell = current.cells.get(key(latCell, lngCell));
+                    if (cell != null) {
+                        collectWithin(cell, latitude, longitude, radiusKm, matches);
+                    }
+                }
+            }
+        }
+        
+        matches.sort(Comparator.comparingLong(entry -> entry.ordinal));
+        List<BusStop> stops = new ArrayList<>(matches.size());
+        for (Entry entry : matches) {
+            stops.add(entry.stop);
+        }
+        return stops;
+    }
+    
+    // The k stops closest to the point, nearest first
+    public List<BusStop> findNearest(double latitude, double longitude, int k) {
+        Grid current = grid;
+        if (k <= 0 || current.byId.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        // Max-heap on distance holding the best k candidates seen so far; there are never
+        // more than the index holds
+        int total = current.byId.size();
+        k = Math.min(k, total);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1,
+                (c1, c2) -> Double.compare(c2.distanceKm, c1.distanceKm));
+        int centerLat = cellOf(latitude);
+        int centerLng = cellOf(longitude);
+        int visited = 0;
+        
+        for (int ring = 0; visited < total; ring++) {
+            if (best.size() == k && ringLowerBoundKm(latitude, ring) > best.peek().distanceKm) {
+                break;
+            }
+            if (ring > MAX_RINGS) {
+                best.clear();
+                for (Entry entry : current.byId.values()) {
+                    offer(best, k, entry, GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude));
+                }
+                break;
+            }
+            for (int latCell = centerLat - ring; latCell <= centerLat + ring; latCell++) {
+                boolean edgeRow = latCell == centerLat - ring || latCell == centerLat + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int lngCell = centerLng - ring; lngCell <= centerLng + ring; lngCell += Math.max(step, 1)) {
+                    Entry[] cell = current.cells.get(key(latCell, lngCell));
+                    if (cell == null) {
+                        continue;
+                    }
+                    visited += cell.length;
+                    for (Entry entry : cell) {
+                        offer(best, k, entry, GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude));
+                    }
+                }
+            }
+        }
+        
+        Candidate[] ordered = best.toArray(new Candidate[0]);
+        Arrays.sort(ordered, Comparator.<Candidate>comparingDouble(c -> c.distanceKm)
+                .thenComparingLong(c -> c.entry.ordinal));
+        List<BusStop> stops = new ArrayList<>(ordered.length);
+        for (Candidate candidate : ordered) {
+            stops.add(candidate.entry.stop);
+        }
+        return stops;
+    }
+    
+    private static void offer(PriorityQueue<Candidate> best, int k, Entry entry, double distance) {
+        if (best.size() < k) {
+            best.add(new Candidate(entry, distance));
+        } else if (distance < best.peek().distanceKm) {
+            best.poll();
+            best.add(new Candidate(entry, distance));
+        }
+    }
+    
+    // Any stop outside rings 0..ring-1 is at least this far from the query point
+    private static double ringLowerBoundKm(double latitude, int ring) {
+        if (ring == 0) {
+            return 0;
+        }
+        double cellsAway = ring - 1;
+        double farLatitude = Math.min(89.9, Math.abs(latitude) + (ring + 1) * CELL_DEGREES);
+        double lngKm = cellsAway * CELL_DEGREES * GeoUtils.KM_PER_DEGREE * Math.cos(Math.toRadians(farLatitude));
+        double latKm = cellsAway * CELL_DEGREES * GeoUtils.KM_PER_DEGREE;
+        // Small margin for the arc vs. chord difference at city scale
+        return Math.min(lngKm, latKm) * 0.99;
+    }
+    
+    private static void collectWithin(Entry[] cell, double latitude, double longitude,
+                                      double radiusKm, List<Entry> matches) {
+        for (Entry entry : cell) {
+            if (GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude) <= radiusKm) {
+                matches.add(entry);
+            }
+        }
+    }
+    
+    // Detached copy with its routes materialized, safe to hand out after the session closes
+    private static BusStop copyOf(BusStop stop) {
+        List<String> routes = stop.getBusRoutes() != null
+                ? new ArrayList<>(stop.getBusRoutes())
+                : new ArrayList<>();
+        return new BusStop(stop.getId(), stop.getName(), stop.getLatitude(), stop.getLongitude(), routes);
+    }
+    
+    private static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+    
+    private static long key(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xffffffffL);
+    }
+    
+    private static final class Grid {
+        private final Map<Long, Entry[]> cells = new ConcurrentHashMap<>();
+        private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+        
+        // Route ids of every route serving a stop in the grid, fixed when it is built
+        private final Map<String, Integer> routeIds = new HashMap<>();
+        private final String[] routeNumbers;
+        
+        private Grid() {
+            routeNumbers = new String[0];
+        }
+        
+        private Grid(List<BusStop> stops) {
+            TreeSet<String> numbers = new TreeSet<>();
+            for (BusStop stop : stops) {
+                if (stop.getBusRoutes() != null) {
+                    numbers.addAll(stop.getBusRoutes());
+                }
+            }
+            for (String number : numbers) {
+                routeIds.put(number, routeIds.size());
+            }
+            routeNumbers = numbers.toArray(new String[0]);
+        }
+        
+        // Only for stops the grid was built from, whose routes all have ids
+        private long[] routeBitsOf(BusStop stop) {
+            List<Integer> ids = new ArrayList<>();
+            int maxId = -1;
+            if (stop.getBusRoutes() != null) {
+                for (String number : stop.getBusRoutes()) {
+                    int id = routeIds.get(number);
+                    ids.add(id);
+                    maxId = Math.max(maxId, id);
+                }
+            }
+            long[] bits = new long[(maxId + 64) / 64];
+            for (int id : ids) {
+                bits[id >>> 6] |= 1L << id;
+            }
+            return bits;
+        }
+        
+        private void put(Entry entry) {
+            long cellKey = key(cellOf(entry.latitude), cellOf(entry.longitude));
+            cells.compute(cellKey, (k, cell) -> {
+                if (cell == null) {
+                    return new Entry[] { entry };
+                }
+                Entry[] grown = Arrays.copyOf(cell, cell.length + 1);
+                grown[cell.length] = entry;
+                return grown;
+            });
+            byId.put(entry.stop.getId(), entry);
+        }
+    }
+    
+    private static final class Entry {
+        private final BusStop stop;
+        private final long[] routeBits;
+        private final double latitude;
+        private final double longitude;
+        private final long ordinal;
+        
+        private Entry(BusStop stop, long[] routeBits, long ordinal) {
+            this.stop = stop;
+            this.routeBits = routeBits;
+            this.latitude = stop.getLatitude();
+            this.longitude = stop.getLongitude();
+            this.ordinal = ordinal;
+        }
+    }
+    
+    private static final class Candidate {
+        private final Entry entry;
+        private final double distanceKm;
+        
+        private Candidate(Entry entry, double distanceKm) {
+            this.entry = entry;
+            this.distanceKm = distanceKm;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+// service/StopVisitEvent.java
+package com.citybusapp.service;
+
+// Published by StopGeofenceDetector when a bus enters or leaves a stop's geofence.
+// Times are epoch milliseconds; dwell is only set on departures.
+public class StopVisitEvent {
+    
+    public enum Type { ARRIVAL, DEPARTURE }
+    
+    private final Type type;
+    private final String busId;
+    private final String routeNumber;
+    private final String stopId;
+    private final long atMillis;
+    private final long dwellMillis;
+    
+    public StopVisitEvent(Type type, String busId, String routeNumber, String stopId,
+                          long atMillis, long dwellMillis) {
+        this.type = type;
+        this.busId = busId;
+        this.routeNumber = routeNumber;
+        this.stopId = stopId;
+        this.atMillis = atMillis;
+        this.dwellMillis = dwellMillis;
+    }
+    
+    public Type getType() { return type; }
+    
+    public String getBusId() { return busId; }
+    
+    public String getRouteNumber() { return routeNumber; }
+    
+    public String getStopId() { return stopId; }
+    
+    public long getAtMillis() { return atMillis; }
+    
+    public long getDwellMillis() { return dwellMillis; }
+}
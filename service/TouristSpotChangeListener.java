@@ -0,0 +1,28 @@
+// service/TouristSpotChangeListener.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.TouristSpot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+// JPA entity listener, see BusStopChangeListener
+public class TouristSpotChangeListener {
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @PostPersist
+    @PostUpdate
+    public void onSaved(TouristSpot spot) {
+        eventPublisher.publishEvent(new TouristSpotChangedEvent(spot.getId(), false));
+    }
+    
+    @PostRemove
+    public void onRemoved(TouristSpot spot) {
+        eventPublisher.publishEvent(new TouristSpotChangedEvent(spot.getId(), true));
+    }
+}
@@ -0,0 +1,17 @@
+// service/TouristSpotChangedEvent.java
+package com.citybusapp.service;
+
+public class TouristSpotChangedEvent {
+    
+    private final String spotId;
+    private final boolean removed;
+    
+    public TouristSpotChangedEvent(String spotId, boolean removed) {
+        this.spotId = spotId;
+        this.removed = removed;
+    }
+    
+    public String getSpotId() { return spotId; }
+    
+    public boolean isRemoved() { return removed; }
+}
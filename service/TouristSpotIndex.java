@@ -0,0 +1,277 @@
+// service/TouristSpotIndex.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.TouristSpot;
+import com.citybusapp.model.TouristSpotSummary;
+import com.citybusapp.repository.TouristSpotRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tourist spots on the same kind of lat/lng grid as StopSpatialIndex. Only the list view
+// of each spot is kept; descriptions and images stay in the database until a client
+// asks for one spot. Results are ordered by (distance, id) or by id so that callers can
+// page through them with a position instead of an offset.
+@Component
+public class TouristSpotIndex {
+    
+    // ~1.1 km per cell
+    private static final double CELL_DEGREES = 0.01;
+    
+    // k-nearest searches start at this radius and widen by NEAREST_GROWTH until k match
+    private static final double NEAREST_START_KM = 1.0;
+    private static final double NEAREST_GROWTH = 4.0;
+    
+    private static final Comparator<Hit> BY_DISTANCE =
+            Comparator.<Hit>comparingDouble(hit -> hit.distanceKm).thenComparing(hit -> hit.entry.id);
+    
+    @Autowired
+    private TouristSpotRepository touristSpotRepository;
+    
+    private volatile Grid grid = new Grid();
+    
+    // Bumped on every change so derived tables (SpotAccessIndex) know when to rebuild
+    private final AtomicLong version = new AtomicLong();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        Grid fresh = new Grid();
+        for (TouristSpot spot : touristSpotRepository.findAll()) {
+            if (spot.getLatitude() != null && spot.getLongitude() != null) {
+                fresh.put(new Entry(spot));
+            }
+        }
+        synchronized (this) {
+            grid = fresh;
+            version.incrementAndGet();
+        }
+    }
+    
+    @TransactionalEventListener
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onTouristSpotChanged(TouristSpotChangedEvent event) {
+        if (event.isRemoved()) {
+            remove(event.getSpotId());
+        } else {
+            touristSpotRepository.findById(event.getSpotId()).ifPresent(this::upsert);
+        }
+    }
+    
+    public synchronized void upsert(TouristSpot spot) {
+        remove(spot.getId());
+        if (spot.getLatitude() != null && spot.getLongitude() != null) {
+            grid.put(new Entry(spot));
+        }
+        version.incrementAndGet();
+    }
+    
+    public synchronized void remove(String spotId) {
+        Entry previous = grid.byId.get(spotId);
+        if (previous != null) {
+            grid.delete(previous);
+            version.incrementAndGet();
+        }
+    }
+    
+    public int size() {
+        return grid.byId.size();
+    }
+    
+    public long getVersion() {
+        return version.get();
+    }
+    
+    // Matching spots in id order, starting after afterId (null for the first page)
+    public List<TouristSpotSummary> list(String category, Double minRating, String afterId, int limit) {
+        Collection<Entry> entries = afterId == null
+                ? grid.byId.values()
+                : grid.byId.tailMap(afterId, false).values();
+        List<TouristSpotSummary> spots = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (spots.size() >= limit) {
+                break;
+            }
+            if (entry.matches(category, minRating)) {
+                spots.add(entry.summary(null));
+            }
+        }
+        return spots;
+    }
+    
+    // Matching spots within radiusKm, nearest first, starting after the given position
+    // (afterId null for the first page)
+    public List<TouristSpotSummary> findWithinRadius(double latitude, double longitude, double radiusKm,
+                                                     String category, Double minRating,
+                                                     double afterDistanceKm, String afterId, int limit) {
+        Grid current = grid;
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        // Max-heap holding the best `limit` hits seen so far
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, BY_DISTANCE.reversed());
+        
+        double latSpan = GeoUtils.latitudeSpanDegrees(radiusKm);
+        double lngSpan = GeoUtils.longitudeSpanDegrees(latitude, radiusKm);
+        int minLat = cellOf(latitude - latSpan);
+        int maxLat = cellOf(latitude + latSpan);
+        int minLng = cellOf(longitude - lngSpan);
+        int maxLng = cellOf(longitude + lngSpan);
+        long cellsInBox = (long) (maxLat - minLat + 1) * (maxLng - minLng + 1);
+        boolean wrapsAntimeridian = longitude - lngSpan < -180 || longitude + lngSpan > 180;
+        
+        if (wrapsAntimeridian || cellsInBox > current.cells.size()) {
+            for (Entry[] cell : current.cells.values()) {
+                collect(cell, latitude, longitude, radiusKm, category, minRating,
+                        afterDistanceKm, afterId, limit, best);
+            }
+        } else {
+            for (int latCell = minLat; latCell <= maxLat; latCell++) {
+                for (int lngCell = minLng; lngCell <= maxLng; lngCell++) {
+                    Entry[] cell = current.cells.get(key(latCell, lngCell));
+                    if (cell != null) {
+                        collect(cell, latitude, longitude, radiusKm, category, minRating,
+                                afterDistanceKm, afterId, limit, best);
+                    }
+                }
+            }
+        }
+        
+        Hit[] ordered = best.toArray(new Hit[0]);
+        Arrays.sort(ordered, BY_DISTANCE);
+        List<TouristSpotSummary> spots = new ArrayList<>(ordered.length);
+        for (Hit hit : ordered) {
+            spots.add(hit.entry.summary(hit.distanceKm));
+        }
+        return spots;
+    }
+    
+    // The k matching spots closest to the point, nearest first. Widens a radius search
+    // until it holds k matches; nothing outside that radius can be closer.
+    public List<TouristSpotSummary> findNearest(double latitude, double longitude, int k,
+                                                String category, Double minRating) {
+        double maxKm = Math.PI * GeoUtils.EARTH_RADIUS_KM;
+        for (double radiusKm = NEAREST_START_KM; ; radiusKm *= NEAREST_GROWTH) {
+            double searchKm = Math.min(radiusKm, maxKm);
+            List<TouristSpotSummary> spots = findWithinRadius(latitude, longitude, searchKm,
+                                                              category, minRating, -1, null, k);
+            if (spots.size() >= k || searchKm >= maxKm) {
+                return spots;
+            }
+        }
+    }
+    
+    private static void collect(Entry[] cell, double latitude, double longitude, double radiusKm,
+                                String category, Double minRating, double afterDistanceKm, String afterId,
+                                int limit, PriorityQueue<Hit> best) {
+        for (Entry entry : cell) {
+            if (!entry.matches(category, minRating)) {
+                continue;
+            }
+            double distance = GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude);
+            if (distance > radiusKm) {
+                continue;
+            }
+            if (afterId != null && (distance < afterDistanceKm
+                    || (distance == afterDistanceKm && entry.id.compareTo(afterId) <= 0))) {
+                continue;
+            }
+            Hit hit = new Hit(entry, distance);
+            if (best.size() < limit) {
+                best.add(hit);
+            } else if (BY_DISTANCE.compare(hit, best.peek()) < 0) {
+                best.poll();
+                best.add(hit);
+            }
+        }
+    }
+    
+    private static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+    
+    private static long key(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xffffffffL);
+    }
+    
+    private static final class Grid {
+        private final Map<Long, Entry[]> cells = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<String, Entry> byId = new ConcurrentSkipListMap<>();
+        
+        private void put(Entry entry) {
+            long cellKey = key(cellOf(entry.latitude), cellOf(entry.longitude));
+            cells.compute(cellKey, (k, cell) -> {
+                if (cell == null) {
+                    return new Entry[] { entry };
+                }
+                Entry[] grown = Arrays.copyOf(cell, cell.length + 1);
+                grown[cell.length] = entry;
+                return grown;
+            });
+            byId.put(entry.id, entry);
+        }
+        
+        private void delete(Entry entry) {
+            long cellKey = key(cellOf(entry.latitude), cellOf(entry.longitude));
+            cells.computeIfPresent(cellKey, (k, cell) -> {
+                Entry[] shrunk = Arrays.stream(cell)
+                        .filter(e -> e != entry)
+                        .toArray(Entry[]::new);
+                return shrunk.length == 0 ? null : shrunk;
+            });
+            byId.remove(entry.id, entry);
+        }
+    }
+    
+    private static final class Entry {
+        private final String id;
+        private final String name;
+        private final double latitude;
+        private final double longitude;
+        private final String category;
+        private final Double rating;
+        
+        private Entry(TouristSpot spot) {
+            this.id = spot.getId();
+            this.name = spot.getName();
+            this.latitude = spot.getLatitude();
+            this.longitude = spot.getLongitude();
+            this.category = spot.getCategory();
+            this.rating = spot.getRating();
+        }
+        
+        private boolean matches(String category, Double minRating) {
+            return (category == null || category.equalsIgnoreCase(this.category))
+                && (minRating == null || (rating != null && rating >= minRating));
+        }
+        
+        private TouristSpotSummary summary(Double distanceKm) {
+            return new TouristSpotSummary(id, name, latitude, longitude, category, rating, distanceKm);
+        }
+    }
+    
+    private static final class Hit {
+        private final Entry entry;
+        private final double distanceKm;
+        
+        private Hit(Entry entry, double distanceKm) {
+            this.entry = entry;
+            this.distanceKm = distanceKm;
+        }
+    }
+}
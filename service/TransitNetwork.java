@@ -0,0 +1,481 @@
+// service/TransitNetwork.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Immutable, integer-indexed view of the bus network used by the journey planner.
+// Every route is expanded into two patterns (outbound and return), each an ordered
+// stop sequence; all adjacency is stored as flat CSR arrays. Each loaded network is a
+// numbered snapshot: readers take one reference and see a single consistent version.
+public final class TransitNetwork {
+    
+    // Same city-traffic assumption RouteService has always used
+    public static final double BUS_SPEED_KMH = 25.0;
+    
+    private final long version;
+    private final String fingerprint;
+    private final LocalDateTime loadedAt = LocalDateTime.now();
+    
+    private final BusStop[] stops;
+    private final Map<String, Integer> stopIndex;
+    
+    private final String[] routeNumbers;
+    private final String[] routeNames;
+    private final Map<String, Integer> routeIndex;
+    
+    // Pattern p covers patternStops[patternOffsets[p] .. patternOffsets[p + 1])
+    private final int[] patternRoute;
+    private final int[] patternOffsets;
+    private final int[] patternStops;
+    // Seconds and km from the previous stop of the pattern; 0 at the first stop
+    private final int[] hopSeconds;
+    private final double[] hopKm;
+    
+    // Stop s is served by stopPatterns[stopOffsets[s] .. stopOffsets[s + 1]),
+    // at position stopPositions[...] within each of those patterns
+    private final int[] stopOffsets;
+    private final int[] stopPatterns;
+    private final int[] stopPositions;
+    
+    // Stop s is served by the distinct routes stopRoutes[stopRouteOffsets[s] .. stopRouteOffsets[s + 1]),
+    // in route index (route number) order
+    private final int[] stopRouteOffsets;
+    private final int[] stopRoutes;
+    
+    private TransitNetwork(long version, String fingerprint,
+                           BusStop[] stops, String[] routeNumbers, String[] routeNames,
+                           int[] patternRoute, int[] patternOffsets, int[] patternStops,
+                           int[] hopSeconds, double[] hopKm,
+                           int[] stopOffsets, int[] stopPatterns, int[] stopPositions,
+                           int[] stopRouteOffsets, int[] stopRoutes) {
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.stops = stops;
+        this.routeNumbers = routeNumbers;
+        this.routeNames = routeNames;
+        this.patternRoute = patternRoute;
+        this.patternOffsets = patternOffsets;
+        this.patternStops = patternStops;
+        this.hopSeconds = hopSeconds;
+        this.hopKm = hopKm;
+        this.stopOffsets = stopOffsets;
+        this.stopPatterns = stopPatterns;
+        this.stopPositions = stopPositions;
+        this.stopRouteOffsets = stopRouteOffsets;
+        this.stopRoutes = stopRoutes;
+        
+        this.stopIndex = new HashMap<>(stops.length * 2);
+        for (int s = 0; s < stops.length; s++) {
+            stopIndex.put(stops[s].getId(), s);
+        }
+        this.routeIndex = new HashMap<>(routeNumbers.length * 2);
+        for (int r = 0; r < routeNumbers.length; r++) {
+            routeIndex.put(routeNumbers[r], r);
+        }
+    }
+    
+    // Derives the per-stop indexes from the patterns
+    private static TransitNetwork index(long version, String fingerprint,
+                                        BusStop[] stops, String[] routeNumbers, String[] routeNames,
+                                        int[] patternRoute, int[] patternOffsets, int[] patternStops,
+                                        int[] hopSeconds, double[] hopKm) {
+        int[] stopOffsets = new int[stops.length + 1];
+        for (int i = 0; i < patternStops.length; i++) {
+            stopOffsets[patternStops[i] + 1]++;
+        }
+        for (int s = 0; s < stops.length; s++) {
+            stopOffsets[s + 1] += stopOffsets[s];
+        }
+        int[] stopPatterns = new int[patternStops.length];
+        int[] stopPositions = new int[patternStops.length];
+        int[] fill = Arrays.copyOf(stopOffsets, stops.length);
+        for (int p = 0; p < patternRoute.length; p++) {
+            for (int i = patternOffsets[p]; i < patternOffsets[p + 1]; i++) {
+                int slot = fill[patternStops[i]]++;
+                stopPatterns[slot] = p;
+                stopPositions[slot] = i - patternOffsets[p];
+            }
+        }
+        
+        // Patterns are numbered route by route, so each stop's pattern list is already in
+        // route order and the two directions of a route are adjacent
+        int[] stopRouteOffsets = new int[stops.length + 1];
+        int[] routesOfStops = new int[stopPatterns.length];
+        int distinct = 0;
+        for (int s = 0; s < stops.length; s++) {
+            stopRouteOffsets[s] = distinct;
+            for (int slot = stopOffsets[s]; slot < stopOffsets[s + 1]; slot++) {
+                int route = patternRoute[stopPatterns[slot]];
+                if (distinct == stopRouteOffsets[s] || routesOfStops[distinct - 1] != route) {
+                    routesOfStops[distinct++] = route;
+                }
+            }
+        }
+        stopRouteOffsets[stops.length] = distinct;
+        
+        return new TransitNetwork(version, fingerprint, stops, routeNumbers, routeNames,
+                                  patternRoute, patternOffsets, patternStops, hopSeconds, hopKm,
+                                  stopOffsets, stopPatterns, stopPositions,
+                                  stopRouteOffsets, Arrays.copyOf(routesOfStops, distinct));
+    }
+    
+    public static TransitNetwork build(List<BusStop> stops, Map<String, RouteInfo> routes) {
+        return build(stops, routes, 0, null);
+    }
+    
+    public static TransitNetwork build(List<BusStop> stops, Map<String, RouteInfo> routes,
+                                       long version, String fingerprint) {
+        BusStop[] stopArray = stops.toArray(new BusStop[0]);
+        
+        // Route -> member stops, in a stable order so rebuilds are deterministic
+        Map<String, List<Integer>> members = new TreeMap<>();
+        for (int s = 0; s < stopArray.length; s++) {
+            List<String> busRoutes = stopArray[s].getBusRoutes();
+            if (busRoutes == null) {
+                continue;
+            }
+            for (String routeNumber : busRoutes) {
+                List<Integer> list = members.computeIfAbsent(routeNumber, k -> new ArrayList<>());
+                if (!list.contains(s)) {
+                    list.add(s);
+                }
+            }
+        }
+        
+        String[] routeNumbers = members.keySet().toArray(new String[0]);
+        String[] routeNames = new String[routeNumbers.length];
+        int patternCount = 0;
+        int stopSlots = 0;
+        List<int[]> sequences = new ArrayList<>();
+        for (int r = 0; r < routeNumbers.length; r++) {
+            RouteInfo info = routes.get(routeNumbers[r]);
+            routeNames[r] = info != null && info.getRouteName() != null
+                    ? info.getRouteName()
+                    : "Route " + routeNumbers[r];
+            int[] sequence = orderStops(stopArray, members.get(routeNumbers[r]), info);
+            sequences.add(sequence);
+            patternCount += 2;
+            stopSlots += sequence.length * 2;
+        }
+        
+        int[] patternRoute = new int[patternCount];
+        int[] patternOffsets = new int[patternCount + 1];
+        int[] patternStops = new int[stopSlots];
+        int[] hopSeconds = new int[stopSlots];
+        double[] hopKm = new double[stopSlots];
+        int p = 0;
+        int cursor = 0;
+        for (int r = 0; r < routeNumbers.length; r++) {
+            int[] sequence = sequences.get(r);
+            for (int direction = 0; direction < 2; direction++) {
+                patternRoute[p] = r;
+                patternOffsets[p] = cursor;
+                for (int i = 0; i < sequence.length; i++) {
+                    int stop = direction == 0 ? sequence[i] : sequence[sequence.length - 1 - i];
+                    patternStops[cursor] = stop;
+                    if (i > 0) {
+                        BusStop previous = stopArray[patternStops[cursor - 1]];
+                        BusStop current = stopArray[stop];
+                        double km = GeoUtils.distanceKm(previous.getLatitude(), previous.getLongitude(),
+                                                        current.getLatitude(), current.getLongitude());
+                        hopKm[cursor] = km;
+                        hopSeconds[cursor] = (int) Math.round(km / BUS_SPEED_KMH * 3600);
+                    }
+                    cursor++;
+                }
+                p++;
+            }
+        }
+        patternOffsets[patternCount] = cursor;
+        
+        return index(version, fingerprint, stopArray, routeNumbers, routeNames,
+                     patternRoute, patternOffsets, patternStops, hopSeconds, hopKm);
+    }
+    
+    // bus_stop_routes carries no sequence number, so the stop order is derived from
+    // geometry: start at the stop named as the route's start location (or the stop
+    // furthest from the centroid) and chain nearest neighbours from there.
+    private static int[] orderStops(BusStop[] stops, List<Integer> members, RouteInfo info) {
+        int n = members.size();
+        int[] sequence = new int[n];
+        boolean[] used = new boolean[n];
+        
+        int start = -1;
+        if (info != null && info.getStartLocation() != null) {
+            for (int i = 0; i < n; i++) {
+                if (info.getStartLocation().equalsIgnoreCase(stops[members.get(i)].getName())) {
+                    start = i;
+                    break;
+                }
+            }
+        }
+        if (start < 0) {
+            double centroidLat = 0;
+            double centroidLng = 0;
+            for (int member : members) {
+                centroidLat += stops[member].getLatitude();
+                centroidLng += stops[member].getLongitude();
+            }
+            centroidLat /= n;
+            centroidLng /= n;
+            double furthest = -1;
+            for (int i = 0; i < n; i++) {
+                BusStop stop = stops[members.get(i)];
+                double distance = GeoUtils.distanceKm(centroidLat, centroidLng, stop.getLatitude(), stop.getLongitude());
+                if (distance > furthest) {
+                    furthest = distance;
+                    start = i;
+                }
+            }
+        }
+        
+        int current = start;
+        for (int position = 0; position < n; position++) {
+            sequence[position] = members.get(current);
+            used[current] = true;
+            BusStop from = stops[members.get(current)];
+            int next = -1;
+            double nearest = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                BusStop to = stops[members.get(i)];
+                double distance = GeoUtils.distanceKm(from.getLatitude(), from.getLongitude(),
+                                                      to.getLatitude(), to.getLongitude());
+                if (distance < nearest) {
+                    nearest = distance;
+                    next = i;
+                }
+            }
+            current = next;
+        }
+        return sequence;
+    }
+    
+    // Increases with every reload; 0 for networks built outside the loader
+    public long getVersion() { return version; }
+    
+    // Digest of the source tables the snapshot was read from, or null if unknown
+    public String getFingerprint() { return fingerprint; }
+    
+    public LocalDateTime getLoadedAt() { return loadedAt; }
+    
+    public int stopCount() { return stops.length; }
+    
+    public int routeCount() { return routeNumbers.length; }
+    
+    public int patternCount() { return patternRoute.length; }
+    
+    public BusStop stop(int stop) { return stops[stop]; }
+    
+    public int indexOfStop(String stopId) {
+        Integer index = stopIndex.get(stopId);
+        return index != null ? index : -1;
+    }
+    
+    public int indexOfRoute(String routeNumber) {
+        Integer index = routeIndex.get(routeNumber);
+        return index != null ? index : -1;
+    }
+    
+    public String routeNumber(int route) { return routeNumbers[route]; }
+    
+    public String routeName(int route) { return routeNames[route]; }
+    
+    // Name from the routes table, or null for a route number not in this network
+    public String routeName(String routeNumber) {
+        Integer route = routeIndex.get(routeNumber);
+        return route != null ? routeNames[route] : null;
+    }
+    
+    // Ordered stops of a route: its outbound pattern
+    public int routeStopCount(int route) { return patternLength(route * 2); }
+    
+    public int routeStop(int route, int position) { return patternStop(route * 2, position); }
+    
+    public int patternRoute(int pattern) { return patternRoute[pattern]; }
+    
+    public int patternLength(int pattern) {
+        return patternOffsets[pattern + 1] - patternOffsets[pattern];
+    }
+    
+    public int patternStop(int pattern, int position) {
+        return patternStops[patternOffsets[pattern] + position];
+    }
+    
+    // Seconds to ride from position - 1 to position
+    public int hopSeconds(int pattern, int position) {
+        return hopSeconds[patternOffsets[pattern] + position];
+    }
+    
+    public double hopKm(int pattern, int position) {
+        return hopKm[patternOffsets[pattern] + position];
+    }
+    
+    // Index of (pattern, 0) in the flat per-position arrays; position p is patternOffset + p
+    public int patternOffset(int pattern) { return patternOffsets[pattern]; }
+    
+    public int patternSlotCount() { return patternStops.length; }
+    
+    // Position of a stop in a pattern, or -1 if the pattern does not serve it
+    public int positionInPattern(int pattern, int stop) {
+        for (int slot = stopOffsets[stop]; slot < stopOffsets[stop + 1]; slot++) {
+            if (stopPatterns[slot] == pattern) {
+                return stopPositions[slot];
+            }
+        }
+        return -1;
+    }
+    
+    public int firstPatternSlot(int stop) { return stopOffsets[stop]; }
+    
+    public int endPatternSlot(int stop) { return stopOffsets[stop + 1]; }
+    
+    public int slotPattern(int slot) { return stopPatterns[slot]; }
+    
+    public int slotPosition(int slot) { return stopPositions[slot]; }
+    
+    // Routes serving a stop: entries [firstRouteSlot, endRouteSlot)
+    public int firstRouteSlot(int stop) { return stopRouteOffsets[stop]; }
+    
+    public int endRouteSlot(int stop) { return stopRouteOffsets[stop + 1]; }
+    
+    public int slotRoute(int slot) { return stopRoutes[slot]; }
+    
+    public List<BusStop> stops() {
+        return Collections.unmodifiableList(Arrays.asList(stops));
+    }
+    
+    // Binary form used by NetworkSnapshotFile: every array, derived indexes included, so
+    // reading it back is bulk copies plus the two id maps
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(version);
+        writeString(out, fingerprint);
+        out.writeInt(stops.length);
+        for (BusStop stop : stops) {
+            writeString(out, stop.getId());
+            writeString(out, stop.getName());
+            out.writeDouble(stop.getLatitude());
+            out.writeDouble(stop.getLongitude());
+        }
+        out.writeInt(routeNumbers.length);
+        for (int r = 0; r < routeNumbers.length; r++) {
+            writeString(out, routeNumbers[r]);
+            writeString(out, routeNames[r]);
+        }
+        for (int[] array : new int[][] { patternRoute, patternOffsets, patternStops, hopSeconds,
+                                         stopOffsets, stopPatterns, stopPositions,
+                                         stopRouteOffsets, stopRoutes }) {
+            out.writeInt(array.length);
+            for (int value : array) {
+                out.writeInt(value);
+            }
+        }
+        out.writeInt(hopKm.length);
+        for (double value : hopKm) {
+            out.writeDouble(value);
+        }
+    }
+    
+    static TransitNetwork readFrom(ByteBuffer in) {
+        long version = in.getLong();
+        String fingerprint = readString(in);
+        BusStop[] stops = new BusStop[in.getInt()];
+        for (int s = 0; s < stops.length; s++) {
+            String id = readString(in);
+            String name = readString(in);
+            double latitude = in.getDouble();
+            double longitude = in.getDouble();
+            stops[s] = new BusStop(id, name, latitude, longitude, new ArrayList<>());
+        }
+        String[] routeNumbers = new String[in.getInt()];
+        String[] routeNames = new String[routeNumbers.length];
+        for (int r = 0; r < routeNumbers.length; r++) {
+            routeNumbers[r] = readString(in);
+            routeNames[r] = readString(in);
+        }
+        int[] patternRoute = readInts(in);
+        int[] patternOffsets = readInts(in);
+        int[] patternStops = readInts(in);
+        int[] hopSeconds = readInts(in);
+        int[] stopOffsets = readInts(in);
+        int[] stopPatterns = readInts(in);
+        int[] stopPositions = readInts(in);
+        int[] stopRouteOffsets = readInts(in);
+        int[] stopRoutes = readInts(in);
+        double[] hopKm = new double[in.getInt()];
+        in.asDoubleBuffer().get(hopKm);
+        in.position(in.position() + hopKm.length * Double.BYTES);
+        
+        if (stopRouteOffsets.length != stops.length + 1 || patternOffsets.length != patternRoute.length + 1) {
+            throw new IllegalArgumentException("inconsistent network snapshot");
+        }
+        for (int s = 0; s < stops.length; s++) {
+            for (int slot = stopRouteOffsets[s]; slot < stopRouteOffsets[s + 1]; slot++) {
+                stops[s].getBusRoutes().add(routeNumbers[stopRoutes[slot]]);
+            }
+        }
+        return new TransitNetwork(version, fingerprint, stops, routeNumbers, routeNames,
+                                  patternRoute, patternOffsets, patternStops, hopSeconds, hopKm,
+                                  stopOffsets, stopPatterns, stopPositions, stopRouteOffsets, stopRoutes);
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+    
+    public static class RouteInfo {
+        private final String routeName;
+        private final String startLocation;
+        private final String endLocation;
+        
+        public RouteInfo(String routeName, String startLocation, String endLocation) {
+            this.routeName = routeName;
+            this.startLocation = startLocation;
+            this.endLocation = endLocation;
+        }
+        
+        public String getRouteName() { return routeName; }
+        
+        public String getStartLocation() { return startLocation; }
+        
+        public String getEndLocation() { return endLocation; }
+    }
+}
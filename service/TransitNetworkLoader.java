@@ -0,0 +1,83 @@
+// service/TransitNetworkLoader.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read-side loader for stops and routes, bypassing the per-stop @ElementCollection loads
+// of the JPA entities: stops come with their routes from a single join.
+@Component
+public class TransitNetworkLoader {
+    
+    private static final String STOPS_WITH_ROUTES =
+        "SELECT s.id, s.name, s.latitude, s.longitude, r.route_number " +
+        "FROM bus_stops s LEFT JOIN bus_stop_routes r ON r.stop_id = s.id " +
+        "WHERE s.latitude IS NOT NULL AND s.longitude IS NOT NULL";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    // Reads a full snapshot. The fingerprint is taken first, so a change made while
+    // loading shows up as a different fingerprint on the next poll.
+    public TransitNetwork load(long version) {
+        String fingerprint = fingerprint();
+        return TransitNetwork.build(loadStops(), loadRoutes(), version, fingerprint);
+    }
+    
+    // Cheap digest of the three source tables: row counts and an order-independent sum
+    // of row hashes. Changes whenever a row is added, removed or edited.
+    public String fingerprint() {
+        return jdbcTemplate.queryForObject(
+            "SELECT concat_ws(':', " +
+            "(SELECT count(*) FROM bus_stops), (SELECT sum(hashtext(s::text)) FROM bus_stops s), " +
+            "(SELECT count(*) FROM bus_stop_routes), (SELECT sum(hashtext(r::text)) FROM bus_stop_routes r), " +
+            "(SELECT count(*) FROM routes), (SELECT sum(hashtext(t::text)) FROM routes t))",
+            String.class);
+    }
+    
+    public Map<String, TransitNetwork.RouteInfo> loadRoutes() {
+        Map<String, TransitNetwork.RouteInfo> routes = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT route_number, route_name, start_location, end_location FROM routes",
+            rs -> {
+                routes.put(rs.getString("route_number"),
+                           new TransitNetwork.RouteInfo(rs.getString("route_name"),
+                                                        rs.getString("start_location"),
+                                                        rs.getString("end_location")));
+            });
+        return routes;
+    }
+    
+    // Every stop with coordinates, in id order, each with its routes
+    public List<BusStop> loadStops() {
+        Map<String, BusStop> stops = new LinkedHashMap<>();
+        jdbcTemplate.query(STOPS_WITH_ROUTES + " ORDER BY s.id, r.route_number",
+                           rs -> addRow(stops, rs));
+        return new ArrayList<>(stops.values());
+    }
+    
+    private static void addRow(Map<String, BusStop> stops, ResultSet rs) throws SQLException {
+        String id = rs.getString("id");
+        BusStop stop = stops.get(id);
+        if (stop == null) {
+            stop = new BusStop(id, rs.getString("name"),
+                               rs.getDouble("latitude"), rs.getDouble("longitude"),
+                               new ArrayList<>());
+            stops.put(id, stop);
+        }
+        String routeNumber = rs.getString("route_number");
+        if (routeNumber != null) {
+            stop.getBusRoutes().add(routeNumber);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+// service/TravelTimeMatrixService.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Travel times from every origin to every destination. Nearby stops are looked up once
+// per distinct point, whether it is an origin, a destination or both, and the
+// destinations become one shared target table. Each origin is then one search to all
+// targets on a bounded fork-join pool; rows are written in origin order as they finish,
+// with at most routing.matrix.rows-in-flight rows held at a time.
+@Service
+public class TravelTimeMatrixService {
+    
+    private static final double ACCESS_RADIUS_KM = 0.5;
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private StopSpatialIndex stopSpatialIndex;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${routing.matrix.max-cells:250000}")
+    private int maxCells;
+    
+    // 0 uses one thread per core
+    @Value("${routing.matrix.parallelism:0}")
+    private int parallelism;
+    
+    @Value("${routing.matrix.rows-in-flight:64}")
+    private int rowsInFlight;
+    
+    private ForkJoinPool pool;
+    
+    @PostConstruct
+    public void start() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+    
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+    
+    // Points are {latitude, longitude}. Throws IllegalArgumentException for an empty or
+    // oversized matrix; the stop lookups run before the response starts
+    public StreamingResponseBody streamMatrix(double[][] origins, double[][] destinations) {
+        if (origins.length == 0 || destinations.length == 0) {
+            throw new IllegalArgumentException("origins and destinations must not be empty");
+        }
+        if ((long) origins.length * destinations.length > maxCells) {
+            throw new IllegalArgumentException("matrix larger than " + maxCells + " cells");
+        }
+        TransitNetwork network = journeyPlanner.getNetwork();
+        PointStops points = new PointStops();
+        int[] originPoints = new int[origins.length];
+        int[] destinationPoints = new int[destinations.length];
+        for (int o = 0; o < origins.length; o++) {
+            originPoints[o] = points.add(network, origins[o][0], origins[o][1]);
+        }
+        for (int d = 0; d < destinations.length; d++) {
+            destinationPoints[d] = points.add(network, destinations[d][0], destinations[d][1]);
+        }
+        Targets targets = new Targets(points, destinationPoints);
+        
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.writeStartArray();
+            ArrayDeque<ForkJoinTask<MatrixRow>> pending = new ArrayDeque<>();
+            int next = 0;
+            try {
+                while (next < origins.length || !pending.isEmpty()) {
+                    while (next < origins.length && pending.size() < Math.max(1, rowsInFlight)) {
+                        int origin = next++;
+                        pending.add(pool.submit(() -> computeRow(network, points, targets, origin,
+                                                                 originPoints[origin], origins, destinations)));
+                    }
+                    generator.writeObject(pending.poll().join());
+                }
+            } finally {
+                // Client gone or a row failed: rows still queued are not computed
+                for (ForkJoinTask<MatrixRow> task : pending) {
+                    task.cancel(false);
+                }
+            }
+            generator.writeEndArray();
+            generator.close();
+        };
+    }
+    
+    // Fastest of the bus journey and walking straight there when the points are close
+    private MatrixRow computeRow(TransitNetwork network, PointStops points, Targets targets, int origin,
+                                 int point, double[][] origins, double[][] destinations) {
+        int[] seconds = new int[destinations.length];
+        int[] legs = new int[destinations.length];
+        journeyPlanner.travelTimes(network,
+                Arrays.copyOfRange(points.stops, points.offsets[point], points.offsets[point + 1]),
+                Arrays.copyOfRange(points.walkSeconds, points.offsets[point], points.offsets[point + 1]),
+                targets.offsets, targets.stops, targets.walkSeconds, seconds, legs);
+        int[] transfers = new int[destinations.length];
+        for (int d = 0; d < destinations.length; d++) {
+            transfers[d] = legs[d] > 0 ? legs[d] - 1 : -1;
+            double km = GeoUtils.distanceKm(origins[origin][0], origins[origin][1],
+                                            destinations[d][0], destinations[d][1]);
+            if (km <= ACCESS_RADIUS_KM) {
+                int walkSeconds = SpotAccessIndex.walkSeconds(km);
+                if (seconds[d] < 0 || walkSeconds <= seconds[d]) {
+                    seconds[d] = walkSeconds;
+                    transfers[d] = 0;
+                }
+            }
+        }
+        return new MatrixRow(origin, seconds, transfers);
+    }
+    
+    // Stops near each distinct point as flat offset arrays, with the walk to each stop;
+    // points are matched to about 0.1 m
+    private final class PointStops {
+        private final Map<Long, Integer> indexByKey = new HashMap<>();
+        private int[] offsets = new int[16];
+        private int[] stops = new int[64];
+        private int[] walkSeconds = new int[64];
+        private int count;
+        
+        private int add(TransitNetwork network, double latitude, double longitude) {
+            long key = Math.round(latitude * 1e6) << 32 ^ (Math.round(longitude * 1e6) & 0xffffffffL);
+            Integer known = indexByKey.get(key);
+            if (known != null) {
+                return known;
+            }
+            List<BusStop> near = stopSpatialIndex.findWithinRadius(latitude, longitude, ACCESS_RADIUS_KM);
+            int at = offsets[count];
+            if (at + near.size() > stops.length) {
+                stops = Arrays.copyOf(stops, Math.max(stops.length * 2, at + near.size()));
+                walkSeconds = Arrays.copyOf(walkSeconds, stops.length);
+            }
+            for (BusStop stop : near) {
+                int index = network.indexOfStop(stop.getId());
+                if (index >= 0) {
+                    stops[at] = index;
+                    walkSeconds[at++] = SpotAccessIndex.walkSeconds(GeoUtils.distanceKm(
+                            latitude, longitude, stop.getLatitude(), stop.getLongitude()));
+                }
+            }
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[++count] = at;
+            indexByKey.put(key, count - 1);
+            return count - 1;
+        }
+    }
+    
+    // The destinations' stops laid out as planner targets, shared by every row
+    private static final class Targets {
+        private final int[] offsets;
+        private final int[] stops;
+        private final int[] walkSeconds;
+        
+        private Targets(PointStops points, int[] destinationPoints) {
+            offsets = new int[destinationPoints.length + 1];
+            for (int d = 0; d < destinationPoints.length; d++) {
+                int point = destinationPoints[d];
+                offsets[d + 1] = offsets[d] + points.offsets[point + 1] - points.offsets[point];
+            }
+            stops = new int[offsets[destinationPoints.length]];
+            walkSeconds = new int[stops.length];
+            for (int d = 0; d < destinationPoints.length; d++) {
+                int point = destinationPoints[d];
+                int length = offsets[d + 1] - offsets[d];
+                System.arraycopy(points.stops, points.offsets[point], stops, offsets[d], length);
+                System.arraycopy(points.walkSeconds, points.offsets[point], walkSeconds, offsets[d], length);
+            }
+        }
+    }
+    
+    // One origin's row; -1 marks a destination that cannot be reached
+    public static class MatrixRow {
+        private int origin;
+        private int[] durationSeconds;
+        private int[] transfers;
+        
+        public MatrixRow() {}
+        
+        public MatrixRow(int origin, int[] durationSeconds, int[] transfers) {
+            this.origin = origin;
+            this.durationSeconds = durationSeconds;
+            this.transfers = transfers;
+        }
+        
+        public int getOrigin() { return origin; }
+        public void setOrigin(int origin) { this.origin = origin; }
+        
+        public int[] getDurationSeconds() { return durationSeconds; }
+        public void setDurationSeconds(int[] durationSeconds) { this.durationSeconds = durationSeconds; }
+        
+        public int[] getTransfers() { return transfers; }
+        public void setTransfers(int[] transfers) { this.transfers = transfers; }
+    }
+}
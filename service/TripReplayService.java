@@ -0,0 +1,297 @@
+// service/TripReplayService.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.Bus;
+import com.citybusapp.model.BusDelta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Replays recorded positions over Server-Sent Events in the live stream's format: an
+// (empty) "snapshot" event, then "delta" batches conflated per bus each tick, then "end".
+// Every session advances a virtual clock at speed times wall time and reads history a
+// page at a time just ahead of it, so memory per session is one page plus one delta
+// per bus whatever the length of the window. Ticks run on an SseSendPool like the live
+// stream's writes: a session whose tick is still blocked after replay.send-timeout-ms
+// is dropped, so a stalled client cannot hold the threads other replays run on.
+@Component
+public class TripReplayService {
+    
+    @Autowired
+    private PositionHistoryStore positionHistoryStore;
+    
+    @Autowired
+    private LiveBusStore liveBusStore;
+    
+    @Value("${replay.tick-ms:500}")
+    private long tickMs;
+    
+    @Value("${replay.heartbeat-ms:15000}")
+    private long heartbeatMs;
+    
+    @Value("${replay.page-size:2000}")
+    private int pageSize;
+    
+    @Value("${replay.threads:2}")
+    private int threads;
+    
+    @Value("${replay.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+    
+    @Value("${replay.max-stalled-senders:20}")
+    private int maxStalledSenders;
+    
+    // Connections are closed this long after the replay should have ended
+    @Value("${replay.emitter-timeout-ms:60000}")
+    private long emitterTimeoutMs;
+    
+    @Value("${replay.max-sessions:20}")
+    private int maxSessions;
+    
+    @Value("${replay.max-window-hours:24}")
+    private long maxWindowHours;
+    
+    @Value("${replay.max-speed:3600}")
+    private double maxSpeed;
+    
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    
+    private ScheduledExecutorService ticker;
+    private SseSendPool senders;
+    
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trip-replay-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        senders = new SseSendPool("trip-replay", threads, maxStalledSenders, sendTimeoutMs);
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        for (Session session : sessions) {
+            session.emitter.complete();
+        }
+    }
+    
+    // Throws IllegalArgumentException for a bad window or speed, IllegalStateException
+    // when the maximum number of replays is already running
+    public SseEmitter replay(LocalDateTime from, LocalDateTime to, BusStreamFilter filter, double speed) {
+        if (!to.isAfter(from)) {
+            throw new IllegalArgumentException("to must be after from");
+        }
+        if (Duration.between(from, to).toHours() >= maxWindowHours) {
+            throw new IllegalArgumentException("window longer than " + maxWindowHours + " hours");
+        }
+        if (!(speed > 0 && speed <= maxSpeed)) {
+            throw new IllegalArgumentException("speed must be in (0, " + maxSpeed + "]");
+        }
+        
+        // History rows only carry the bus id; numbers come from the current fleet
+        Map<String, String> numbers = new HashMap<>();
+        List<String> busIds = filter.hasRoute() ? new ArrayList<>() : null;
+        for (Bus bus : liveBusStore.getAll()) {
+            numbers.put(bus.getId(), bus.getNumber());
+            if (busIds != null && filter.getRoute().equalsIgnoreCase(bus.getNumber())) {
+                busIds.add(bus.getId());
+            }
+        }
+        
+        long replayMillis = (long) (Duration.between(from, to).toMillis() / speed);
+        SseEmitter emitter = new SseEmitter(replayMillis + emitterTimeoutMs);
+        Session session = new Session(from, to, filter, speed, busIds, numbers, emitter);
+        synchronized (sessions) {
+            if (sessions.size() >= maxSessions) {
+                throw new IllegalStateException("too many replays running");
+            }
+            sessions.add(session);
+        }
+        emitter.onCompletion(session::close);
+        emitter.onTimeout(session::close);
+        emitter.onError(error -> session.close());
+        
+        try {
+            emitter.send(SseEmitter.event().name("snapshot").data(Collections.emptyList()));
+        } catch (IOException e) {
+            session.close();
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        session.startedNanos = System.nanoTime();
+        session.ticking.set(false);
+        return emitter;
+    }
+    
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    public long getSlowSessionDrops() {
+        return senders.getAbandonedCount();
+    }
+    
+    private void tick() {
+        try {
+            senders.checkDeadlines();
+            for (Session session : sessions) {
+                if (session.ticking.compareAndSet(false, true)) {
+                    senders.execute(session::tick, session::drop);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking; one session must not stop the others
+        }
+    }
+    
+    private final class Session {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final BusStreamFilter filter;
+        private final double speed;
+        private final List<String> busIds;
+        private final Map<String, String> numbers;
+        private final SseEmitter emitter;
+        private final Set<String> visible = new HashSet<>();
+        private final ArrayDeque<LocationPing> buffer = new ArrayDeque<>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Held until the snapshot is sent, then while a tick is queued or running
+        private final AtomicBoolean ticking = new AtomicBoolean(true);
+        
+        // Keyset position of the last row read; only touched by the session's ticks
+        private LocalDateTime afterTime;
+        private String afterBusId = "";
+        private boolean exhausted;
+        private long lastSent = System.currentTimeMillis();
+        
+        private volatile long startedNanos;
+        private volatile boolean dropped;
+        
+        private Session(LocalDateTime from, LocalDateTime to, BusStreamFilter filter, double speed,
+                        List<String> busIds, Map<String, String> numbers, SseEmitter emitter) {
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            this.speed = speed;
+            this.busIds = busIds;
+            this.numbers = numbers;
+            this.emitter = emitter;
+            this.afterTime = from;
+            // A route no bus currently runs has nothing to replay
+            this.exhausted = busIds != null && busIds.isEmpty();
+        }
+        
+        private void tick() {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                LocalDateTime replayTime = from.plusNanos((long) ((System.nanoTime() - startedNanos) * speed));
+                Map<String, BusDelta> pending = new LinkedHashMap<>();
+                while (true) {
+                    if (buffer.isEmpty()) {
+                        if (exhausted) {
+                            break;
+                        }
+                        fill();
+                        if (buffer.isEmpty()) {
+                            break;
+                        }
+                    }
+                    if (buffer.peek().getRecordedAt().isAfter(replayTime)) {
+                        break;
+                    }
+                    offer(buffer.poll(), pending);
+                }
+                
+                long now = System.currentTimeMillis();
+                if (!pending.isEmpty()) {
+                    emitter.send(SseEmitter.event().name("delta").data(new ArrayList<>(pending.values())));
+                    lastSent = now;
+                } else if (now - lastSent >= heartbeatMs) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                    lastSent = now;
+                }
+                if (dropped) {
+                    // The write outlived its deadline; the client is gone even though it returned
+                    emitter.complete();
+                } else if (exhausted && buffer.isEmpty()) {
+                    emitter.send(SseEmitter.event().name("end").data(
+                            replayTime.isBefore(to) ? replayTime.toString() : to.toString()));
+                    close();
+                    emitter.complete();
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                emitter.completeWithError(e);
+            } finally {
+                ticking.set(false);
+            }
+        }
+        
+        // Send deadline passed: stop ticking this session. The emitter is completed by
+        // the stuck tick once its write returns or fails
+        private void drop() {
+            dropped = true;
+            close();
+        }
+        
+        private void fill() {
+            List<LocationPing> page = positionHistoryStore.readFleetPage(busIds, afterTime, afterBusId, to, pageSize);
+            if (page.size() < pageSize) {
+                exhausted = true;
+            }
+            if (!page.isEmpty()) {
+                LocationPing last = page.get(page.size() - 1);
+                afterTime = last.getRecordedAt();
+                afterBusId = last.getBusId();
+                buffer.addAll(page);
+            }
+        }
+        
+        // Same rules as the live stream: an update while the bus matches the filter, one
+        // removal when it stops matching
+        private void offer(LocationPing ping, Map<String, BusDelta> pending) {
+            Bus bus = new Bus(ping.getBusId(), numbers.get(ping.getBusId()), null,
+                              ping.getLatitude(), ping.getLongitude(), ping.getSpeed(),
+                              null, ping.getRecordedAt());
+            if (filter.matches(bus)) {
+                visible.add(bus.getId());
+                pending.put(bus.getId(), BusDelta.update(bus));
+            } else if (visible.remove(bus.getId())) {
+                pending.put(bus.getId(), BusDelta.remove(bus.getId()));
+            }
+        }
+        
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                sessions.remove(this);
+            }
+        }
+    }
+}
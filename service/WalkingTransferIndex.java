@@ -0,0 +1,220 @@
+// service/WalkingTransferIndex.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.BusStop;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+// Walking links between stops within walking-transfers.radius-km of each other, so the
+// planner can change buses between neighbouring stops and not only at the same stop.
+// Links are found with the stop index and kept as flat offset arrays (CSR) with a walk
+// time per link. Each new network is compared with the previous one by stop id and
+// position; only stops near a stop that was added, moved or removed are searched
+// again, the rest of the lists are carried over.
+@Component
+public class WalkingTransferIndex {
+    
+    @Autowired
+    private JourneyPlanner journeyPlanner;
+    
+    @Autowired
+    private StopSpatialIndex stopSpatialIndex;
+    
+    @Value("${walking-transfers.radius-km:0.4}")
+    private double radiusKm;
+    
+    @Value("${walking-transfers.max-per-stop:20}")
+    private int maxPerStop;
+    
+    private volatile Table table;
+    private volatile int lastSearchedStops;
+    private volatile long lastBuildMillis;
+    
+    // The stop index is rebuilt from each network the planner swaps in, then announces it
+    @EventListener
+    public void onTopologyChanged(NetworkTopologyChangedEvent event) {
+        if ("stop-index".equals(event.getSource())) {
+            rebuild();
+        }
+    }
+    
+    public synchronized void rebuild() {
+        long started = System.currentTimeMillis();
+        TransitNetwork network = journeyPlanner.getNetwork();
+        Table previous = table;
+        if (previous != null && previous.network == network) {
+            return;
+        }
+        int stopCount = network.stopCount();
+        int[][] targets = new int[stopCount][];
+        int[][] seconds = new int[stopCount][];
+        boolean[] search = new boolean[stopCount];
+        
+        if (previous == null) {
+            Arrays.fill(search, true);
+        } else {
+            // Old index of every stop, -1 for new ones; changed positions are
+            // searched again along with every stop near their old and new positions
+            TransitNetwork old = previous.network;
+            int[] oldIndex = new int[stopCount];
+            int[] newIndex = new int[old.stopCount()];
+            Arrays.fill(newIndex, -1);
+            List<BusStop> changed = new ArrayList<>();
+            for (int stop = 0; stop < stopCount; stop++) {
+                BusStop current = network.stop(stop);
+                oldIndex[stop] = old.indexOfStop(current.getId());
+                if (oldIndex[stop] >= 0) {
+                    newIndex[oldIndex[stop]] = stop;
+                    BusStop before = old.stop(oldIndex[stop]);
+                    if (Objects.equals(before.getLatitude(), current.getLatitude())
+                            && Objects.equals(before.getLongitude(), current.getLongitude())) {
+                        continue;
+                    }
+                    changed.add(before);
+                }
+                changed.add(current);
+                search[stop] = true;
+            }
+            for (int stop = 0; stop < old.stopCount(); stop++) {
+                if (newIndex[stop] < 0) {
+                    changed.add(old.stop(stop));
+                }
+            }
+            for (BusStop stop : changed) {
+                for (BusStop near : stopSpatialIndex.findWithinRadius(stop.getLatitude(), stop.getLongitude(), radiusKm)) {
+                    int index = network.indexOfStop(near.getId());
+                    if (index >= 0) {
+                        search[index] = true;
+                    }
+                }
+            }
+            for (int stop = 0; stop < stopCount; stop++) {
+                if (!search[stop]) {
+                    int from = oldIndex[stop];
+                    int length = previous.offsets[from + 1] - previous.offsets[from];
+                    targets[stop] = new int[length];
+                    seconds[stop] = Arrays.copyOfRange(previous.walkSeconds, previous.offsets[from],
+                                                       previous.offsets[from + 1]);
+                    for (int i = 0; i < length; i++) {
+                        targets[stop][i] = newIndex[previous.targets[previous.offsets[from] + i]];
+                    }
+                }
+            }
+        }
+        
+        int searched = 0;
+        for (int stop = 0; stop < stopCount; stop++) {
+            if (search[stop]) {
+                searchStop(network, stop, targets, seconds);
+                searched++;
+            }
+        }
+        
+        int[] offsets = new int[stopCount + 1];
+        for (int stop = 0; stop < stopCount; stop++) {
+            offsets[stop + 1] = offsets[stop] + targets[stop].length;
+        }
+        int[] flatTargets = new int[offsets[stopCount]];
+        int[] flatSeconds = new int[offsets[stopCount]];
+        for (int stop = 0; stop < stopCount; stop++) {
+            System.arraycopy(targets[stop], 0, flatTargets, offsets[stop], targets[stop].length);
+            System.arraycopy(seconds[stop], 0, flatSeconds, offsets[stop], seconds[stop].length);
+        }
+        Table fresh = new Table(network, offsets, flatTargets, flatSeconds);
+        table = fresh;
+        lastSearchedStops = searched;
+        lastBuildMillis = System.currentTimeMillis() - started;
+        journeyPlanner.useWalkingTransfers(fresh);
+    }
+    
+    // Nearest stops first, capped at maxPerStop
+    private void searchStop(TransitNetwork network, int stop, int[][] targets, int[][] seconds) {
+        BusStop from = network.stop(stop);
+        List<BusStop> near = stopSpatialIndex.findWithinRadius(from.getLatitude(), from.getLongitude(), radiusKm);
+        int[] found = new int[near.size()];
+        double[] distances = new double[near.size()];
+        int count = 0;
+        for (BusStop to : near) {
+            int index = network.indexOfStop(to.getId());
+            if (index >= 0 && index != stop) {
+                found[count] = index;
+                distances[count++] = GeoUtils.distanceKm(from.getLatitude(), from.getLongitude(),
+                                                         to.getLatitude(), to.getLongitude());
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+        int kept = Math.min(count, maxPerStop);
+        targets[stop] = new int[kept];
+        seconds[stop] = new int[kept];
+        for (int i = 0; i < kept; i++) {
+            targets[stop][i] = found[order[i]];
+            seconds[stop][i] = SpotAccessIndex.walkSeconds(distances[order[i]]);
+        }
+    }
+    
+    public TransferStats getStats() {
+        Table current = table;
+        TransferStats stats = new TransferStats();
+        stats.setNetworkVersion(current != null ? current.network.getVersion() : 0);
+        stats.setLinks(current != null ? current.targets.length : 0);
+        stats.setLastSearchedStops(lastSearchedStops);
+        stats.setLastBuildMillis(lastBuildMillis);
+        return stats;
+    }
+    
+    // Immutable; stop indexes are those of the table's network
+    public static final class Table {
+        private final TransitNetwork network;
+        private final int[] offsets;
+        private final int[] targets;
+        private final int[] walkSeconds;
+        
+        private Table(TransitNetwork network, int[] offsets, int[] targets, int[] walkSeconds) {
+            this.network = network;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.walkSeconds = walkSeconds;
+        }
+        
+        public TransitNetwork network() { return network; }
+        
+        // Stops within walking distance of a stop: entries [firstSlot, endSlot)
+        public int firstSlot(int stop) { return offsets[stop]; }
+        
+        public int endSlot(int stop) { return offsets[stop + 1]; }
+        
+        public int slotStop(int slot) { return targets[slot]; }
+        
+        public int slotWalkSeconds(int slot) { return walkSeconds[slot]; }
+    }
+    
+    public static class TransferStats {
+        private long networkVersion;
+        private int links;
+        private int lastSearchedStops;
+        private long lastBuildMillis;
+        
+        public long getNetworkVersion() { return networkVersion; }
+        public void setNetworkVersion(long networkVersion) { this.networkVersion = networkVersion; }
+        
+        public int getLinks() { return links; }
+        public void setLinks(int links) { this.links = links; }
+        
+        public int getLastSearchedStops() { return lastSearchedStops; }
+        public void setLastSearchedStops(int lastSearchedStops) { this.lastSearchedStops = lastSearchedStops; }
+        
+        public long getLastBuildMillis() { return lastBuildMillis; }
+        public void setLastBuildMillis(long lastBuildMillis) { this.lastBuildMillis = lastBuildMillis; }
+    }
+}
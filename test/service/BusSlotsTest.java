@@ -0,0 +1,45 @@
+// test/service/BusSlotsTest.java
+package com.citybusapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class BusSlotsTest {
+    
+    private final List<Integer> resets = new ArrayList<>();
+    
+    @Test
+    void idleSlotsAreReclaimedOnceTheArenaIsFull() throws InterruptedException {
+        BusSlots slots = new BusSlots(2, 0, resets::add);
+        slots.unlock(slots.lock("a", System.currentTimeMillis()));
+        slots.unlock(slots.lock("b", System.currentTimeMillis()));
+        Thread.sleep(5);
+        
+        int slot = slots.lock("c", System.currentTimeMillis());
+        assertNotEquals(BusSlots.NONE, slot);
+        slots.unlock(slot);
+        
+        assertEquals(slot, (int) resets.get(resets.size() - 1));
+        assertEquals(BusSlots.NONE, slots.lockIfTracked("a", System.currentTimeMillis()));
+        assertEquals(2, slots.used());
+    }
+    
+    @Test
+    void aBusTurnedAwayGetsASlotOnceOneIsFree() throws InterruptedException {
+        BusSlots slots = new BusSlots(1, 100, resets::add);
+        slots.unlock(slots.lock("a", System.currentTimeMillis()));
+        assertEquals(BusSlots.NONE, slots.lock("b", System.currentTimeMillis()));
+        
+        // Past both the idle time and the interval between sweeps
+        Thread.sleep(1100);
+        int slot = slots.lock("b", System.currentTimeMillis());
+        assertEquals(0, slot);
+        slots.unlock(slot);
+        assertEquals(1, slots.size());
+    }
+}
@@ -0,0 +1,61 @@
+// test/service/RoutePlanCacheTest.java
+package com.citybusapp.service;
+
+import com.citybusapp.model.RoutePlan;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoutePlanCacheTest {
+    
+    private static final List<RoutePlan> NO_PLANS = Collections.emptyList();
+    
+    private RoutePlanCache cache;
+    
+    @BeforeEach
+    void setUp() {
+        cache = new RoutePlanCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "cellMeters", 100.0);
+        // Every entry is already expired on its next read
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+    }
+    
+    @Test
+    void expiredEntriesAreRefilledWithoutQueueingTheirKeyAgain() {
+        for (int round = 0; round < 1000; round++) {
+            for (int query = 0; query < 10; query++) {
+                cache.get(RoutePlanCache.QueryType.DIRECT, 12.97 + query * 0.01, 77.59,
+                          12.93, 77.62, () -> NO_PLANS);
+            }
+        }
+        
+        assertEquals(10, cache.getStats().getSize());
+        assertEquals(10 * 999, cache.getStats().getExpirations());
+        assertEquals(10, clockSize());
+    }
+    
+    @Test
+    void keysEvictedAtCapacityAreQueuedAgainWhenRefilled() {
+        ReflectionTestUtils.setField(cache, "maxEntries", 5);
+        for (int round = 0; round < 100; round++) {
+            for (int query = 0; query < 10; query++) {
+                cache.get(RoutePlanCache.QueryType.TRANSFER, 12.97 + query * 0.01, 77.59,
+                          12.93, 77.62, () -> NO_PLANS);
+            }
+        }
+        
+        assertEquals(5, cache.getStats().getSize());
+        assertEquals(5, clockSize());
+    }
+    
+    private int clockSize() {
+        return ((Collection<?>) ReflectionTestUtils.getField(cache, "clock")).size();
+    }
+}